@@ -2,10 +2,13 @@ package org.stjs.command.line;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -20,6 +23,7 @@ import org.stjs.generator.Generator;
 import org.stjs.generator.GeneratorConfiguration;
 import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.STJSRuntimeException;
+import org.stjs.generator.plugin.GenerationPlugins;
 
 import com.google.common.base.Throwables;
 
@@ -38,41 +42,106 @@ public class CommandLine {
 	}
 
 	static void generate(final String path, final String className, List<File> dependencies, String outputDir) {
+		generate(path, Collections.singletonList(className), dependencies, outputDir, 1);
+	}
+
+	static void generate(final String path, final Collection<String> classNames, List<File> dependencies, String outputDir, int threads) {
+		generate(path, classNames, newDependenciesClassLoader(dependencies), outputDir, threads, null);
+	}
+
+	/**
+	 * generates the given classes, compiled in the given path. The dependencies of the classes are loaded by the given class loader.
+	 * @param plugins
+	 *            if not null, the generator uses these plugins instead of loading them for this call
+	 */
+	static void generate(final String path, final Collection<String> classNames, ClassLoader dependenciesClassLoader, String outputDir,
+			int threads, GenerationPlugins<Object> plugins) {
 		Generator gen = null;
+		URLClassLoader builtProjectClassLoader = null;
+		Exception failure = null;
 		try {
-			List<URL> classpathElements = new ArrayList<URL>();
-			classpathElements.add(new File(path).toURI().toURL());
-			for (File dep : dependencies) {
-				classpathElements.add(dep.toURI().toURL());
-			}
-
-			ClassLoader builtProjectClassLoader = new URLClassLoader(classpathElements.toArray(new URL[classpathElements.size()]), Thread
-					.currentThread().getContextClassLoader());
+			builtProjectClassLoader = new URLClassLoader(new URL[] { new File(path).toURI().toURL() }, dependenciesClassLoader);
 			File sourceFolder = new File(path);
 
 			GenerationDirectory generationFolder = new GenerationDirectory(new File(outputDir), null, null);
 
 			GeneratorConfigurationBuilder configBuilder = new GeneratorConfigurationBuilder();
-			configBuilder.allowedPackage(builtProjectClassLoader.loadClass(className).getPackage().getName());
+			for (String className : classNames) {
+				configBuilder.allowedPackage(builtProjectClassLoader.loadClass(className).getPackage().getName());
+			}
 			configBuilder.generationFolder(generationFolder);
 			configBuilder.targetFolder(generationFolder.getGeneratedSourcesAbsolutePath());
 			configBuilder.stjsClassLoader(builtProjectClassLoader);
+			configBuilder.threads(threads);
 
 			GeneratorConfiguration configuration = configBuilder.build();
-			gen = new Generator(configuration);
-			gen.generateJavascript(className, sourceFolder);
+			gen = plugins == null ? new Generator(configuration) : new Generator(configuration, plugins);
+			gen.generateJavascript(classNames, sourceFolder);
 		}
 		catch (Exception e) {
+			failure = e;
 			throw Throwables.propagate(e);
 		}
 		finally {
-			if(gen != null) {
-				gen.close();
+			try {
+				close(gen, failure);
+			}
+			finally {
+				closeQuietly(builtProjectClassLoader);
+			}
+		}
+	}
+
+	/**
+	 * closes the generator. If the generation already failed, the error thrown while closing is attached to the original failure
+	 * instead of replacing it.
+	 */
+	static void close(Generator gen, Exception failure) {
+		if (gen == null) {
+			return;
+		}
+		try {
+			gen.close();
+		}
+		catch (RuntimeException e) {
+			if (failure == null) {
+				throw e;
+			}
+			failure.addSuppressed(e);
+		}
+	}
+
+	static ClassLoader newDependenciesClassLoader(List<File> dependencies) {
+		try {
+			List<URL> classpathElements = new ArrayList<URL>();
+			for (File dep : dependencies) {
+				classpathElements.add(dep.toURI().toURL());
 			}
+			return new URLClassLoader(classpathElements.toArray(new URL[classpathElements.size()]), Thread.currentThread()
+					.getContextClassLoader());
+		}
+		catch (MalformedURLException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	static void closeQuietly(URLClassLoader classLoader) {
+		if (classLoader == null) {
+			return;
+		}
+		try {
+			// release the jars, the generation may run in a long-lived daemon
+			classLoader.close();
+		}
+		catch (IOException e) {
+			// ignore
 		}
 	}
 
-	static void compile(final String path, final List<File> sourceFiles, List<File> dependencies) {
+	/**
+	 * @return true if the sources were compiled without errors
+	 */
+	static boolean compile(final String path, final List<File> sourceFiles, List<File> dependencies) {
 		try {
 			JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
 			if (compiler == null) {
@@ -83,9 +152,12 @@ public class CommandLine {
 			fileManager.setLocation(StandardLocation.CLASS_PATH, dependencies);
 
 			Iterable<? extends JavaFileObject> compilationUnits1 = fileManager.getJavaFileObjectsFromFiles(sourceFiles);
-			compiler.getTask(null, fileManager, null, null, null, compilationUnits1).call();
+			// the annotation processors found in the dependencies are not run, as the generator does when it parses the sources
+			List<String> options = Arrays.asList("-proc:none");
+			boolean success = compiler.getTask(null, fileManager, null, options, null, compilationUnits1).call();
 
 			fileManager.close();
+			return success;
 		}
 		catch (Exception e) {
 			throw Throwables.propagate(e);
@@ -0,0 +1,85 @@
+package org.stjs.command.line;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is the client of the {@link GeneratorDaemon}. It accepts the same arguments as the {@link ProjectCommandLine} and sends them to the
+ * daemon. If no daemon is running, the generation is done by this process. The daemon is stopped by calling the client with the --stop
+ * argument. Each request carries the token that the daemon wrote in its token file, so only the user running the daemon can use it.
+ */
+public class GeneratorClient {
+	private static final String STOP_ARG = "--stop";
+
+	private final int port;
+	private final File tokenFile;
+
+	public GeneratorClient(int port, File tokenFile) {
+		this.port = port;
+		this.tokenFile = tokenFile;
+	}
+
+	/**
+	 * sends the request to the daemon
+	 * @return the message of the daemon
+	 * @throws IOException
+	 *             if the daemon cannot be reached or its token cannot be read
+	 * @throws IllegalStateException
+	 *             if the daemon failed to process the request
+	 */
+	public String send(List<String> request) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			GeneratorDaemon.writeRequest(new DataOutputStream(socket.getOutputStream()), GeneratorDaemon.readToken(tokenFile), request);
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			int status = in.readInt();
+			String message = in.readUTF();
+			if (status != GeneratorDaemon.OK) {
+				throw new IllegalStateException(message);
+			}
+			return message;
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	public void generate(String srcDir, String libDir, String outputDir, int threads) throws IOException {
+		// the daemon may run in another folder
+		send(Arrays.asList(GeneratorDaemon.GENERATE, new File(srcDir).getAbsolutePath(), new File(libDir).getAbsolutePath(),
+				new File(outputDir).getAbsolutePath(), Integer.toString(threads)));
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = Integer.getInteger(GeneratorDaemon.PORT_PROPERTY, GeneratorDaemon.DEFAULT_PORT);
+		GeneratorClient client = new GeneratorClient(port, GeneratorDaemon.getDefaultTokenFile(port));
+		if (args.length == 1 && STOP_ARG.equals(args[0])) {
+			System.out.println(client.send(Arrays.asList(GeneratorDaemon.STOP)));
+			return;
+		}
+		if (args.length != 3 && args.length != 4) {
+			System.err.println("Usage: st-js-client <srcDir> <libDir> <outputDir> [threads] | --stop");
+			return;
+		}
+
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		try {
+			client.generate(args[0], args[1], args[2], threads);
+		}
+		catch (ConnectException e) {
+			System.err.println("No ST-JS daemon is running on port " + client.port + ". Generating the files in this process");
+			ProjectCommandLine.generateProject(args[0], args[1], args[2], threads, null, null);
+		}
+		catch (IllegalStateException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package org.stjs.command.line;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.stjs.generator.ClasspathCache;
+import org.stjs.generator.plugin.GenerationPlugins;
+
+import com.google.common.base.Throwables;
+
+/**
+ * This class keeps a JVM running with the generator and javac loaded, to avoid paying their start for each generation. It accepts the
+ * requests of the {@link GeneratorClient} on a local socket and processes them one at a time.
+ * <p>
+ * As the compiled classes of the project change between two requests, each request uses a new class loader for them, and thus a new
+ * generator. The class loaders of the libraries are kept as long as their jars do not change, and the generation plugins are loaded once
+ * for all the requests.
+ * <p>
+ * The daemon runs the generation, and thus the code of the libraries, as the user that started it. So when it starts, it writes a random
+ * token in a file that only this user can read, and it rejects the requests that do not begin with this token.
+ */
+public class GeneratorDaemon implements Closeable {
+	static final int DEFAULT_PORT = 5799;
+	static final String PORT_PROPERTY = "stjs.daemon.port";
+
+	static final String GENERATE = "generate";
+	static final String STOP = "stop";
+
+	static final int OK = 0;
+	static final int ERROR = 1;
+
+	// writeUTF accepts at most 64k bytes, i.e. ~21k chars in the worst case
+	private static final int MAX_MESSAGE_LENGTH = 20000;
+	// the longest request is a generation request: the token, the command and its four arguments
+	private static final int MAX_REQUEST_SIZE = 16;
+	private static final int TOKEN_BITS = 160;
+	private static final int TOKEN_RADIX = 32;
+
+	private final ServerSocket serverSocket;
+	private final File tokenFile;
+	private final String token;
+	private final GenerationPlugins<Object> plugins = new GenerationPlugins<Object>();
+
+	/**
+	 * @param tokenFile
+	 *            the file where the token expected from the clients is written. It is deleted when the daemon is closed.
+	 */
+	public GeneratorDaemon(int port, File tokenFile) throws IOException {
+		// only the local clients are accepted
+		serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		this.tokenFile = tokenFile;
+		this.token = new BigInteger(TOKEN_BITS, new SecureRandom()).toString(TOKEN_RADIX);
+		try {
+			writeToken(tokenFile, token);
+		}
+		catch (IOException e) {
+			serverSocket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the file of the token of the daemon listening on the given port, in the home folder of the current user
+	 */
+	static File getDefaultTokenFile(int port) {
+		return new File(System.getProperty("user.home"), ".stjs" + File.separator + "daemon-" + port + ".token");
+	}
+
+	private static void writeToken(File tokenFile, String token) throws IOException {
+		Path path = tokenFile.toPath();
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		// a file left by a daemon that was killed may have other permissions
+		Files.deleteIfExists(path);
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+					PosixFilePermission.OWNER_WRITE)));
+		}
+		catch (UnsupportedOperationException e) {
+			// not a POSIX file system (i.e. Windows), where the home folder is already private to its user
+			Files.createFile(path);
+			File file = path.toFile();
+			if (!file.setReadable(false, false) || !file.setReadable(true, true)) {
+				throw new IOException("Cannot restrict the access to the token file " + tokenFile, e);
+			}
+		}
+		Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static String readToken(File tokenFile) throws IOException {
+		return new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private boolean isAuthorized(String requestToken) {
+		// compare in constant time, not to give hints about the token
+		return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * serves the requests until a stop request is received or the daemon is closed. A client that fails, or sends a malformed request,
+	 * does not stop the daemon.
+	 */
+	public void run() throws IOException {
+		while (!serverSocket.isClosed()) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (SocketException e) {
+				if (serverSocket.isClosed()) {
+					return;
+				}
+				throw e;
+			}
+			serveSafely(socket);
+		}
+	}
+
+	@SuppressWarnings("PMD.AvoidCatchingThrowable")
+	private void serveSafely(Socket socket) {
+		try {
+			serve(socket);
+		}
+		catch (IOException e) {
+			System.err.println("Cannot serve the request of " + socket.getRemoteSocketAddress() + ":" + e);
+		}
+		catch (Throwable e) {
+			System.err.println("Failed to serve the request of " + socket.getRemoteSocketAddress() + ":" + Throwables.getStackTraceAsString(e));
+		}
+		finally {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				// the client is gone already
+			}
+		}
+	}
+
+	private void serve(Socket socket) throws IOException {
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		List<String> request = readRequest(new DataInputStream(socket.getInputStream()));
+		if (request.isEmpty() || !isAuthorized(request.get(0))) {
+			writeReply(out, ERROR, "The request does not have the token of the ST-JS daemon");
+			return;
+		}
+		if (request.size() == 1) {
+			writeReply(out, ERROR, "Empty request");
+			return;
+		}
+
+		String command = request.get(1);
+		if (STOP.equals(command)) {
+			writeReply(out, OK, "The ST-JS daemon stopped");
+			close();
+		} else if (GENERATE.equals(command) && request.size() == 6) {
+			try {
+				ProjectCommandLine.generateProject(request.get(2), request.get(3), request.get(4), Integer.parseInt(request.get(5)),
+						ClasspathCache.getShared(), plugins);
+				writeReply(out, OK, "");
+			}
+			catch (RuntimeException e) {
+				writeReply(out, ERROR, Throwables.getStackTraceAsString(e));
+			}
+			catch (Error e) {
+				// e.g. a class missing from the libraries. The daemon is kept for the next requests
+				writeReply(out, ERROR, Throwables.getStackTraceAsString(e));
+			}
+		} else {
+			writeReply(out, ERROR, "Unknown request:" + request.subList(1, request.size()));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			serverSocket.close();
+		}
+		finally {
+			Files.deleteIfExists(tokenFile.toPath());
+		}
+	}
+
+	static void writeRequest(DataOutputStream out, String token, List<String> request) throws IOException {
+		out.writeInt(request.size() + 1);
+		out.writeUTF(token);
+		for (String item : request) {
+			out.writeUTF(item);
+		}
+		out.flush();
+	}
+
+	static List<String> readRequest(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > MAX_REQUEST_SIZE) {
+			throw new IOException("Malformed request of size " + size);
+		}
+		List<String> request = new ArrayList<String>(size);
+		for (int i = 0; i < size; ++i) {
+			request.add(in.readUTF());
+		}
+		return request;
+	}
+
+	static void writeReply(DataOutputStream out, int status, String message) throws IOException {
+		out.writeInt(status);
+		out.writeUTF(message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message);
+		out.flush();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+		GeneratorDaemon daemon = new GeneratorDaemon(port, getDefaultTokenFile(port));
+		System.out.println("The ST-JS daemon is listening on port " + daemon.getPort());
+		daemon.run();
+	}
+}
@@ -3,39 +3,162 @@ package org.stjs.command.line;
 import static com.google.common.collect.Lists.newArrayList;
 
 import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
+import org.stjs.generator.ClasspathCache;
+import org.stjs.generator.plugin.GenerationPlugins;
+import org.stjs.generator.utils.SourceWatcher;
+
 public class ProjectCommandLine {
+	private static final String WATCH_ARG = "--watch";
+	private static final long WATCH_DEBOUNCE_MILLIS = 100;
+	private static final String[] GENERATED_EXTENSIONS = { ".js", ".map", ".stjs" };
 
-	public static void main(String[] args) {
-		if (args.length != 3) {
-			System.err.println("Usage: st-js <srcDir> <libDir> <outputDir>");
+	public static void main(String[] args) throws IOException, InterruptedException {
+		List<String> argList = newArrayList(args);
+		boolean watch = argList.remove(WATCH_ARG);
+		if (argList.size() != 3 && argList.size() != 4) {
+			System.err.println("Usage: st-js <srcDir> <libDir> <outputDir> [threads] [--watch]");
 			return;
 		}
-		String path = args[0];
-		if (!path.endsWith(File.separator)) {
-			path += File.separator;
+		int threads = argList.size() > 3 ? Integer.parseInt(argList.get(3)) : 1;
+		if (watch) {
+			watchProject(argList.get(0), argList.get(1), argList.get(2), threads);
+		} else {
+			generateProject(argList.get(0), argList.get(1), argList.get(2), threads, null, null);
+		}
+	}
+
+	/**
+	 * generates all the sources of the given folder, then watches the folder and generates again the sources changed since. The
+	 * process runs until it is killed.
+	 */
+	static void watchProject(String srcDir, String libDir, String outputDir, int threads) throws IOException, InterruptedException {
+		ClasspathCache classpathCache = ClasspathCache.getShared();
+		GenerationPlugins<Object> plugins = new GenerationPlugins<Object>();
+		generateProject(srcDir, libDir, outputDir, threads, classpathCache, plugins);
+
+		SourceWatcher watcher = new SourceWatcher(Collections.singleton(new File(srcDir)), WATCH_DEBOUNCE_MILLIS);
+		try {
+			System.out.println("Watching " + srcDir + " for changes");
+			while (true) {
+				List<File> changedFiles = newArrayList();
+				for (File file : watcher.awaitChanges()) {
+					if (file.exists()) {
+						changedFiles.add(file);
+					} else {
+						deleteGeneratedFiles(srcDir, outputDir, file);
+					}
+				}
+				if (!changedFiles.isEmpty()) {
+					generateFiles(srcDir, libDir, outputDir, threads, classpathCache, plugins, changedFiles);
+				}
+			}
+		}
+		finally {
+			watcher.close();
 		}
-		String libDir = args[1];
+	}
+
+	private static void generateFiles(String srcDir, String libDir, String outputDir, int threads, ClasspathCache classpathCache,
+			GenerationPlugins<Object> plugins, List<File> files) {
+		long start = System.currentTimeMillis();
+		String path = getPath(srcDir);
 		List<File> dependencies = listFiles(new File(libDir), ".jar");
+		// the other classes of the project are taken from the previous compilation
+		List<File> classpath = newArrayList(dependencies);
+		classpath.add(new File(path));
+		if (!CommandLine.compile(path, files, classpath)) {
+			// the errors were printed by the compiler
+			return;
+		}
+		try {
+			generate(path, files, getDependenciesClassLoader(dependencies, classpathCache), outputDir, threads, plugins);
+			System.out.println("Generated " + files.size() + " files in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		catch (RuntimeException e) {
+			// keep watching, the error is probably fixed by the next change
+			System.err.println("Cannot generate " + files + ":" + e);
+		}
+	}
 
-		String outputDir = args[2];
+	/**
+	 * deletes the files generated from a deleted source: the JavaScript, its source map and its properties in the output folder, and the
+	 * classes compiled next to the source, so that the other classes of the project can no longer use them.
+	 */
+	static void deleteGeneratedFiles(String srcDir, String outputDir, File source) {
+		String className = getClassName(new File(getPath(srcDir)), source);
+		for (String extension : GENERATED_EXTENSIONS) {
+			delete(new File(outputDir, className.replace('.', File.separatorChar) + extension));
+		}
+
+		final String simpleName = source.getName().replace(".java", "");
+		File[] classFiles = source.getParentFile().listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				// the class and its nested classes
+				return name.endsWith(".class") && (name.equals(simpleName + ".class") || name.startsWith(simpleName + "$"));
+			}
+		});
+		if (classFiles != null) {
+			for (File classFile : classFiles) {
+				delete(classFile);
+			}
+		}
+	}
+
+	private static void delete(File file) {
+		if (file.exists() && !file.delete()) {
+			System.err.println("Cannot delete " + file);
+		}
+	}
+
+	/**
+	 * compiles and generates all the sources of the given folder.
+	 * @param classpathCache
+	 *            if not null, the class loader of the libraries is taken from this cache instead of being created for this call
+	 * @param plugins
+	 *            if not null, the generation plugins to use instead of loading them for this call
+	 */
+	static void generateProject(String srcDir, String libDir, String outputDir, int threads, ClasspathCache classpathCache,
+			GenerationPlugins<Object> plugins) {
+		String path = getPath(srcDir);
+		List<File> dependencies = listFiles(new File(libDir), ".jar");
 		List<File> classNames = listFiles(new File(path), ".java");
 
 		CommandLine.compile(path, classNames, dependencies);
-		generate(path, classNames, dependencies, outputDir);
+		generate(path, classNames, getDependenciesClassLoader(dependencies, classpathCache), outputDir, threads, plugins);
+	}
+
+	private static ClassLoader getDependenciesClassLoader(List<File> dependencies, ClasspathCache classpathCache) {
+		if (classpathCache == null) {
+			return CommandLine.newDependenciesClassLoader(dependencies);
+		}
+		return classpathCache.getClassLoader(dependencies, Thread.currentThread().getContextClassLoader());
+	}
 
+	private static String getPath(String srcDir) {
+		return srcDir.endsWith(File.separator) ? srcDir : srcDir + File.separator;
 	}
 
-	private static void generate(String path, List<File> files, List<File> dependencies, String outputDir) {
+	private static void generate(String path, List<File> files, ClassLoader dependenciesClassLoader, String outputDir, int threads,
+			GenerationPlugins<Object> plugins) {
 		File srcPath = new File(path);
+		List<String> classNames = newArrayList();
 		for (File file : files) {
-			// remove the leading srcPath from each file to get the source name
-			CommandLine.generate(
-					path,
-					file.getAbsolutePath().substring(srcPath.getAbsolutePath().length() + 1).replace(".java", "")
-							.replace(File.separatorChar, '.'), dependencies, outputDir);
+			classNames.add(getClassName(srcPath, file));
 		}
+		// a single generator for all the files, to parse and analyze them in one javac task
+		CommandLine.generate(path, classNames, dependenciesClassLoader, outputDir, threads, plugins);
+	}
+
+	private static String getClassName(File srcPath, File file) {
+		// remove the leading srcPath from the file to get the source name
+		return file.getAbsolutePath().substring(srcPath.getAbsolutePath().length() + 1).replace(".java", "")
+				.replace(File.separatorChar, '.');
 	}
 
 	private static List<File> listFiles(File srcDir, String suffix) {
@@ -8,6 +8,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.Collections;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -18,6 +19,8 @@ public class CommandLineIntegrationTest {
 	private static final String WINDOWS_PATH = "target\\appassembler\\bin\\st-js.bat";
 	private static final String UNIX_PATH = "target/appassembler/bin/st-js";
 	private static final String OUTPUT_DIR = "target/test1-out";
+	private static final String DAEMON_OUTPUT_DIR = "target/daemon-out";
+	private static final File DAEMON_TOKEN_FILE = new File("target/daemon.token");
 	private static boolean windows;
 
 	@BeforeClass
@@ -49,4 +52,39 @@ public class CommandLineIntegrationTest {
 			throw e;
 		}
 	}
+
+	@Test
+	public void testDaemon() throws Exception {
+		URL projectUrl = Thread.currentThread().getContextClassLoader().getResource("test-project");
+		assertNotNull(projectUrl);
+
+		final GeneratorDaemon daemon = new GeneratorDaemon(0, DAEMON_TOKEN_FILE);
+		Thread daemonThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					daemon.run();
+				}
+				catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		daemonThread.start();
+
+		GeneratorClient client = new GeneratorClient(daemon.getPort(), DAEMON_TOKEN_FILE);
+		try {
+			// the second request reuses the class loader of the libraries
+			for (int i = 0; i < 2; ++i) {
+				File outputDir = new File(DAEMON_OUTPUT_DIR + i);
+				client.generate(new File(projectUrl.getPath(), "src").getPath(), new File(projectUrl.getPath(), "lib").getPath(),
+						outputDir.getPath(), 2);
+				assertTrue(new File(outputDir, "org/stjs/hello/HelloWorld.js").exists());
+			}
+		}
+		finally {
+			client.send(Collections.singletonList(GeneratorDaemon.STOP));
+		}
+		daemonThread.join();
+	}
 }
@@ -0,0 +1,114 @@
+package org.stjs.command.line;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class GeneratorDaemonTest {
+	private static final File TOKEN_FILE = new File("target/daemon-test.token");
+	private static final File WRONG_TOKEN_FILE = new File("target/daemon-test-wrong.token");
+
+	private static Thread start(final GeneratorDaemon daemon) {
+		Thread daemonThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					daemon.run();
+				}
+				catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		daemonThread.start();
+		return daemonThread;
+	}
+
+	private static void sendRaw(int port, int size, String... items) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeInt(size);
+			for (String item : items) {
+				out.writeUTF(item);
+			}
+			out.flush();
+		}
+		finally {
+			// the client leaves without reading the reply
+			socket.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testBadClientsDoNotStopTheDaemon() throws Exception {
+		GeneratorDaemon daemon = new GeneratorDaemon(0, TOKEN_FILE);
+		Thread daemonThread = start(daemon);
+
+		GeneratorClient client = new GeneratorClient(daemon.getPort(), TOKEN_FILE);
+		try {
+			// negative size, huge size and a request shorter than announced
+			sendRaw(daemon.getPort(), -1);
+			sendRaw(daemon.getPort(), Integer.MAX_VALUE);
+			sendRaw(daemon.getPort(), 3, GeneratorDaemon.readToken(TOKEN_FILE), GeneratorDaemon.GENERATE);
+
+			try {
+				client.send(Arrays.asList(GeneratorDaemon.GENERATE, "src", "lib", "out", "not-a-number"));
+				fail("The generation should fail");
+			}
+			catch (IllegalStateException e) {
+				// the failure is sent back to the client
+			}
+		}
+		finally {
+			assertEquals("The ST-JS daemon stopped", client.send(Collections.singletonList(GeneratorDaemon.STOP)));
+		}
+		daemonThread.join();
+	}
+
+	@Test(timeout = 30000)
+	public void testRequestsWithoutTheTokenAreRejected() throws Exception {
+		GeneratorDaemon daemon = new GeneratorDaemon(0, TOKEN_FILE);
+		Thread daemonThread = start(daemon);
+
+		Files.write(WRONG_TOKEN_FILE.toPath(), "wrong".getBytes(Charsets.UTF_8));
+		GeneratorClient client = new GeneratorClient(daemon.getPort(), TOKEN_FILE);
+		try {
+			try {
+				new GeneratorClient(daemon.getPort(), WRONG_TOKEN_FILE).send(Collections.singletonList(GeneratorDaemon.STOP));
+				fail("The request should be rejected");
+			}
+			catch (IllegalStateException e) {
+				// the daemon keeps running
+			}
+			// the token is not sent at all
+			sendRaw(daemon.getPort(), 1, GeneratorDaemon.STOP);
+
+			if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+				assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+						Files.getPosixFilePermissions(TOKEN_FILE.toPath()));
+			}
+		}
+		finally {
+			assertEquals("The ST-JS daemon stopped", client.send(Collections.singletonList(GeneratorDaemon.STOP)));
+		}
+		daemonThread.join();
+		assertFalse(TOKEN_FILE.exists());
+	}
+}
@@ -0,0 +1,47 @@
+package org.stjs.command.line;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class ProjectCommandLineTest {
+	private static final File SRC_DIR = new File("target/deleted-src");
+	private static final File OUTPUT_DIR = new File("target/deleted-out");
+
+	private static File create(File folder, String path) throws IOException {
+		File file = new File(folder, path);
+		Files.createParentDirs(file);
+		Files.touch(file);
+		return file;
+	}
+
+	@Test
+	public void testDeletedSourceRemovesGeneratedFiles() throws IOException {
+		File source = create(SRC_DIR, "org/stjs/deleted/Deleted.java");
+		File classFile = create(SRC_DIR, "org/stjs/deleted/Deleted.class");
+		File nestedClassFile = create(SRC_DIR, "org/stjs/deleted/Deleted$Nested.class");
+		File otherClassFile = create(SRC_DIR, "org/stjs/deleted/DeletedOther.class");
+		File js = create(OUTPUT_DIR, "org/stjs/deleted/Deleted.js");
+		File map = create(OUTPUT_DIR, "org/stjs/deleted/Deleted.map");
+		File properties = create(OUTPUT_DIR, "org/stjs/deleted/Deleted.stjs");
+		File otherJs = create(OUTPUT_DIR, "org/stjs/deleted/DeletedOther.js");
+		assertTrue(source.delete());
+
+		ProjectCommandLine.deleteGeneratedFiles(SRC_DIR.getPath(), OUTPUT_DIR.getPath(), source);
+
+		assertFalse(classFile.exists());
+		assertFalse(nestedClassFile.exists());
+		assertFalse(js.exists());
+		assertFalse(map.exists());
+		assertFalse(properties.exists());
+		// the files of the other classes are kept
+		assertTrue(otherClassFile.exists());
+		assertTrue(otherJs.exists());
+	}
+}
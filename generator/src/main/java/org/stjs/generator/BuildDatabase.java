@@ -0,0 +1,284 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.stjs.generator.name.DependencyType;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * This class keeps between two builds the information needed to find the classes to regenerate. For each generated class it stores:
+ * <ul>
+ * <li>the hash of its source file - a class whose source did not change does not need to be generated again, even if its timestamp
+ * changed</li>
+ * <li>its dependencies, as computed by the generator</li>
+ * <li>a fingerprint of the part of the class that the other classes see when they are generated: namespace, members, templates. When the
+ * fingerprint of a class changes, the classes depending on it must be generated again.</li>
+ * <li>if it has a main method, so it can be an entry point of the pack file</li>
+ * </ul>
+ * The database is stored as a properties file. It is dropped when the configuration of the generator or one of
+ * the jars of the classpath changes.
+ */
+public final class BuildDatabase {
+	private static final Logger LOG = Logger.getLogger(BuildDatabase.class.getName());
+
+	private static final String CONFIGURATION_PROP = "configuration";
+	private static final String SOURCE_SUFFIX = ".source";
+	private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+	private static final String DEPENDENCIES_SUFFIX = ".dependencies";
+	private static final String MAIN_METHOD_SUFFIX = ".main";
+	// changed when the database stores more information, so the older databases are dropped
+	private static final int FORMAT_VERSION = 2;
+
+	private final File file;
+	private final String configuration;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private BuildDatabase(File file, String configuration) {
+		this.file = file;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * loads the database from the given file. An empty database is returned if the database does not exist, if it cannot be
+	 * read or if it was built with a different configuration or classpath.
+	 */
+	public static BuildDatabase load(File file, GeneratorConfiguration config, Collection<File> classpath) {
+		BuildDatabase db = new BuildDatabase(file, configurationFingerprint(config, classpath));
+		if (!db.file.exists()) {
+			return db;
+		}
+
+		Properties props = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(db.file);
+			props.load(in);
+		}
+		catch (IOException e) {
+			LOG.log(Level.WARNING, "Cannot read the build database " + db.file + ". All the classes will be generated again", e);
+			return db;
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+
+		if (db.configuration.equals(props.getProperty(CONFIGURATION_PROP))) {
+			db.readEntries(props);
+		}
+		return db;
+	}
+
+	private void readEntries(Properties props) {
+		for (String key : props.stringPropertyNames()) {
+			if (!key.endsWith(SOURCE_SUFFIX)) {
+				continue;
+			}
+			String className = key.substring(0, key.length() - SOURCE_SUFFIX.length());
+			String fingerprint = props.getProperty(className + FINGERPRINT_SUFFIX);
+			String dependencies = props.getProperty(className + DEPENDENCIES_SUFFIX);
+			if (fingerprint != null && dependencies != null) {
+				boolean mainMethod = Boolean.parseBoolean(props.getProperty(className + MAIN_METHOD_SUFFIX));
+				entries.put(className, new Entry(props.getProperty(key), fingerprint, readDependencies(dependencies), mainMethod));
+			}
+		}
+	}
+
+	/**
+	 * writes the database to its file
+	 */
+	public void save() throws IOException {
+		Properties props = new Properties();
+		props.setProperty(CONFIGURATION_PROP, configuration);
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			props.setProperty(e.getKey() + SOURCE_SUFFIX, e.getValue().sourceHash);
+			props.setProperty(e.getKey() + FINGERPRINT_SUFFIX, e.getValue().fingerprint);
+			props.setProperty(e.getKey() + DEPENDENCIES_SUFFIX, writeDependencies(e.getValue().dependencies));
+			if (e.getValue().mainMethod) {
+				props.setProperty(e.getKey() + MAIN_METHOD_SUFFIX, Boolean.TRUE.toString());
+			}
+		}
+
+		// write a temporary file first, to never leave a half written database behind
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		OutputStream out = null;
+		try {
+			Files.createParentDirs(file);
+			out = new FileOutputStream(tempFile);
+			props.store(out, "Generated by STJS");
+		}
+		finally {
+			Closeables.close(out, true);
+		}
+		java.nio.file.Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	public Set<String> getClassNames() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	/**
+	 * @return true if the class was generated from a source file with the same content as the given one
+	 */
+	public boolean isUpToDate(String className, File sourceFile) throws IOException {
+		Entry entry = entries.get(className);
+		return entry != null && entry.sourceHash.equals(hash(sourceFile));
+	}
+
+	/**
+	 * stores the information about a class that was just generated.
+	 *
+	 * @return true if the fingerprint of the class changed, i.e. if the classes depending on it must be generated again
+	 */
+	public boolean update(STJSClass stjsClass, File sourceFile) throws IOException {
+		String fingerprint = ClassFingerprint.of(stjsClass);
+		Entry old =
+				entries.put(stjsClass.getJavaClassName(), new Entry(hash(sourceFile), fingerprint, stjsClass.getDependencies(),
+						stjsClass.hasMainMethod()));
+		return old == null || !old.fingerprint.equals(fingerprint);
+	}
+
+	/**
+	 * @return the names of the classes the given class depends on, with the type of each dependency, or null if the class is not known
+	 */
+	public Map<String, DependencyType> getDependencies(String className) {
+		Entry entry = entries.get(className);
+		return entry == null ? null : Collections.unmodifiableMap(entry.dependencies);
+	}
+
+	/**
+	 * @return true if the given class, or one of its inner classes, has a main method
+	 */
+	public boolean hasMainMethod(String className) {
+		Entry entry = entries.get(className);
+		return entry != null && entry.mainMethod;
+	}
+
+	public void remove(String className) {
+		entries.remove(className);
+	}
+
+	/**
+	 * @return the classes that depend on the given class or on one of its inner classes
+	 */
+	public Set<String> getDependents(String className) {
+		String innerClassPrefix = className + "$";
+		Set<String> dependents = new LinkedHashSet<String>();
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			for (String dep : e.getValue().dependencies.keySet()) {
+				if (dep.equals(className) || dep.startsWith(innerClassPrefix)) {
+					dependents.add(e.getKey());
+					break;
+				}
+			}
+		}
+		dependents.remove(className);
+		return dependents;
+	}
+
+	private static String hash(File sourceFile) throws IOException {
+		return Files.hash(sourceFile, Hashing.sha1()).toString();
+	}
+
+	private static String hash(String content) {
+		return Hashing.sha1().hashString(content, Charsets.UTF_8).toString();
+	}
+
+	private static String writeDependencies(Map<String, DependencyType> deps) {
+		List<String> items = new ArrayList<String>(deps.size());
+		for (Map.Entry<String, DependencyType> dep : deps.entrySet()) {
+			items.add(DependencyType.getTypeWithPrefix(dep.getKey(), dep.getValue()));
+		}
+		return Joiner.on(',').join(items);
+	}
+
+	private static Map<String, DependencyType> readDependencies(String deps) {
+		Map<String, DependencyType> depMap = new HashMap<String, DependencyType>();
+		for (String dep : deps.split(",")) {
+			if (!dep.isEmpty()) {
+				depMap.put(DependencyType.getTypeName(dep), DependencyType.getDependencyType(dep));
+			}
+		}
+		return depMap;
+	}
+
+	/**
+	 * @return a fingerprint of the options and the libraries that change the generated code
+	 */
+	private static String configurationFingerprint(GeneratorConfiguration config, Collection<File> classpath) {
+		StringBuilder s = new StringBuilder();
+		s.append(FORMAT_VERSION).append(':').append(Generator.class.getPackage().getImplementationVersion()).append('\n');
+		s.append(new TreeSet<String>(config.getAllowedPackages())).append('\n');
+		s.append(new TreeSet<String>(config.getAllowedJavaLangClasses())).append('\n');
+		s.append(new TreeSet<String>(config.getAnnotations())).append('\n');
+		s.append(config.isGenerateArrayHasOwnProperty()).append('\n');
+		s.append(config.isGenerateArrayIndexedLoops()).append('\n');
+		s.append(config.isHoistAnonymousClasses()).append('\n');
+		s.append(config.isIntPrecise()).append('\n');
+		s.append(config.isInitializeFieldsInConstructor()).append('\n');
+		s.append(config.isInlineConstants()).append('\n');
+		s.append(config.isGenerateSourceMap()).append('\n');
+		s.append(config.getSourceEncoding()).append('\n');
+		for (File element : classpath) {
+			// the folders contain the classes of the project itself, that are checked by the source hashes
+			s.append(element.getAbsolutePath());
+			if (element.isFile()) {
+				s.append(':').append(element.length()).append(':').append(element.lastModified());
+			}
+			s.append('\n');
+		}
+		return hash(s.toString());
+	}
+
+	private static final class Entry {
+		private final String sourceHash;
+		private final String fingerprint;
+		private final Map<String, DependencyType> dependencies;
+		private final boolean mainMethod;
+
+		public Entry(String sourceHash, String fingerprint, Map<String, DependencyType> dependencies, boolean mainMethod) {
+			this.sourceHash = sourceHash;
+			this.fingerprint = fingerprint;
+			this.dependencies = dependencies;
+			this.mainMethod = mainMethod;
+		}
+	}
+}
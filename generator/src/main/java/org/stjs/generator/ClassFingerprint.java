@@ -0,0 +1,101 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.generator;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * This class computes the fingerprint of the ABI of a class, as seen by the {@link BuildDatabase}.
+ */
+final class ClassFingerprint {
+	private ClassFingerprint() {
+		//
+	}
+
+	/**
+	 * @return a fingerprint of what the other classes can see from the given class: its namespace, its super types and its non-private
+	 *         members (including their annotations, like the templates) and inner classes. The values of the constants are part of it
+	 *         when they are inlined in the other classes.
+	 */
+	public static String of(STJSClass stjsClass) {
+		StringBuilder s = new StringBuilder();
+		s.append(stjsClass.getJavascriptNamespace()).append('\n');
+		s.append(stjsClass.getConstants()).append('\n');
+		appendClass(s, stjsClass.getJavaClass());
+		return Hashing.sha1().hashString(s.toString(), Charsets.UTF_8).toString();
+	}
+
+	private static void appendClass(StringBuilder s, Class<?> clazz) {
+		s.append(Modifier.toString(clazz.getModifiers())).append(' ').append(clazz.getName()).append('\n');
+		s.append(clazz.getGenericSuperclass()).append('\n');
+		s.append(Arrays.toString(clazz.getGenericInterfaces())).append('\n');
+		s.append(Arrays.toString(clazz.getAnnotations())).append('\n');
+		appendMembers(s, clazz);
+		appendInnerClasses(s, clazz);
+	}
+
+	private static void appendMembers(StringBuilder s, Class<?> clazz) {
+		// the order of the members returned by reflection is not specified
+		Set<String> members = new TreeSet<String>();
+		for (Field field : clazz.getDeclaredFields()) {
+			addMember(members, field, Modifier.toString(field.getModifiers()) + " " + field.getGenericType() + " " + field.getName() + " "
+					+ Arrays.toString(field.getAnnotations()));
+		}
+		for (Method method : clazz.getDeclaredMethods()) {
+			addMember(members, method, method.toGenericString() + " " + Arrays.toString(method.getAnnotations()) + " "
+					+ Arrays.deepToString(method.getParameterAnnotations()));
+		}
+		for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+			addMember(members, constructor, constructor.toGenericString() + " " + Arrays.toString(constructor.getAnnotations()));
+		}
+		for (String member : members) {
+			s.append(member).append('\n');
+		}
+	}
+
+	private static void addMember(Set<String> members, Member member, String description) {
+		if (isVisible(member.getModifiers(), member.isSynthetic())) {
+			members.add(description);
+		}
+	}
+
+	private static void appendInnerClasses(StringBuilder s, Class<?> clazz) {
+		Class<?>[] innerClasses = clazz.getDeclaredClasses();
+		Arrays.sort(innerClasses, new Comparator<Class<?>>() {
+			@Override
+			public int compare(Class<?> c1, Class<?> c2) {
+				return c1.getName().compareTo(c2.getName());
+			}
+		});
+		for (Class<?> innerClass : innerClasses) {
+			if (isVisible(innerClass.getModifiers(), innerClass.isSynthetic())) {
+				appendClass(s, innerClass);
+			}
+		}
+	}
+
+	private static boolean isVisible(int modifiers, boolean synthetic) {
+		return !synthetic && !Modifier.isPrivate(modifiers);
+	}
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.generator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.stjs.generator.javac.JarIndex;
+import org.stjs.generator.utils.ClassUtils;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+/**
+ * This class keeps the jars of the classpath between the generations done in the same JVM: the modules of a Maven build, the requests of
+ * the generator daemon, the rounds of the watch mode. Each jar is kept with its path, size and modification date, and it is opened,
+ * indexed by package and its .stjs files are read only once, even if the modules using it have different classpaths. The class loader
+ * of a list of jars is built from the cached jars, and it is itself reused for the same list of jars.
+ * <p>
+ * The size of the jars is used as an estimation of the memory they keep: when the total goes over the limit, the least recently used jars
+ * are dropped, together with the class loaders using them. They are not closed, as a generation running in another thread (e.g. a
+ * parallel Maven build) may still use them, so their files are released by the garbage collector.
+ */
+@edu.umd.cs.findbugs.annotations.SuppressWarnings(value = "DP_CREATE_CLASSLOADER_INSIDE_DO_PRIVILEGED", justification = "harmless")
+public final class ClasspathCache {
+	/**
+	 * the system property giving the limit of the shared cache, in megabytes
+	 */
+	public static final String MAX_SIZE_PROPERTY = "stjs.classpathCache.maxMegabytes";
+
+	private static final long DEFAULT_MAX_MEGABYTES = 512;
+	private static final long MEGABYTE = 1024 * 1024;
+
+	private static final ClasspathCache SHARED = new ClasspathCache(Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_MEGABYTES) * MEGABYTE);
+
+	private final long maxSize;
+	private long size;
+	private final Map<String, CachedJar> jars = new LinkedHashMap<String, CachedJar>(16, 0.75f, true);
+	private final Map<List<Object>, LibrariesClassLoader> classLoaders = new HashMap<List<Object>, LibrariesClassLoader>();
+
+	public ClasspathCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the cache shared by all the generations of this JVM
+	 */
+	public static ClasspathCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return a class loader for the given jars
+	 */
+	public synchronized ClassLoader getClassLoader(List<File> jarFiles, ClassLoader parent) {
+		List<CachedJar> cachedJars = new ArrayList<CachedJar>(jarFiles.size());
+		for (File jarFile : jarFiles) {
+			cachedJars.add(getJar(jarFile));
+		}
+		// a jar that changed is a new CachedJar, so the key changes as well
+		List<Object> key = new ArrayList<Object>(jarFiles.size() + 1);
+		key.add(parent);
+		key.addAll(cachedJars);
+
+		LibrariesClassLoader classLoader = classLoaders.get(key);
+		if (classLoader == null) {
+			classLoader = new LibrariesClassLoader(cachedJars, parent);
+			classLoaders.put(key, classLoader);
+		}
+		evict(cachedJars);
+		return classLoader;
+	}
+
+	/**
+	 * @return the package index of the given jar
+	 */
+	public JarIndex getPackageIndex(File jarFile) {
+		CachedJar jar;
+		synchronized (this) {
+			jar = getJar(jarFile);
+			evict(Collections.singletonList(jar));
+		}
+		// the jar is indexed without blocking the other users of the cache
+		return jar.getPackageIndex();
+	}
+
+	/**
+	 * creates the class loader of a project whose classpath is given. The jars are loaded by a cached class loader, while the folders,
+	 * whose classes usually change from one generation to the next, are loaded by a new class loader. The classes of the folders take
+	 * precedence over the ones of the jars, as if the folders were at the start of the classpath.
+	 */
+	public URLClassLoader newProjectClassLoader(List<File> classpath, ClassLoader parent) {
+		List<File> jarFiles = new ArrayList<File>();
+		List<File> folders = new ArrayList<File>();
+		for (File element : classpath) {
+			if (element.isDirectory()) {
+				folders.add(element);
+			} else {
+				jarFiles.add(element);
+			}
+		}
+		return new ProjectClassLoader(toURLs(folders), getClassLoader(jarFiles, parent));
+	}
+
+	/**
+	 * @return the cached jar, if it did not change since it was cached, or a new one
+	 */
+	CachedJar getJar(File file) {
+		String path = file.getAbsolutePath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		CachedJar jar = jars.get(path);
+		if (jar != null && jar.length == length && jar.lastModified == lastModified) {
+			return jar;
+		}
+		if (jar != null) {
+			remove(path);
+		}
+		jar = new CachedJar(file, length, lastModified);
+		jars.put(path, jar);
+		size += length;
+		return jar;
+	}
+
+	/**
+	 * drops the least recently used jars, but not the given ones that are just being used, even if they are alone over the limit.
+	 */
+	private void evict(List<CachedJar> usedJars) {
+		Set<CachedJar> kept = Collections.newSetFromMap(new IdentityHashMap<CachedJar, Boolean>());
+		kept.addAll(usedJars);
+		Iterator<Map.Entry<String, CachedJar>> it = jars.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<String, CachedJar> eldest = it.next();
+			if (kept.contains(eldest.getValue())) {
+				// the jars are sorted by their last use, so only the used jars are left
+				return;
+			}
+			it.remove();
+			dropJar(eldest.getValue());
+		}
+	}
+
+	private void remove(String path) {
+		dropJar(jars.remove(path));
+	}
+
+	private void dropJar(CachedJar jar) {
+		size -= jar.length;
+		for (Iterator<LibrariesClassLoader> it = classLoaders.values().iterator(); it.hasNext();) {
+			if (it.next().jars.contains(jar)) {
+				it.remove();
+			}
+		}
+	}
+
+	private static URL[] toURLs(List<File> files) {
+		URL[] urls = new URL[files.size()];
+		for (int i = 0; i < urls.length; ++i) {
+			urls[i] = toURL(files.get(i));
+		}
+		return urls;
+	}
+
+	private static URL toURL(File file) {
+		try {
+			return file.toURI().toURL();
+		}
+		catch (MalformedURLException e) {
+			throw new STJSRuntimeException(e);
+		}
+	}
+
+	/**
+	 * a jar of the classpath, opened once. It also keeps the index of its packages and the content of its .stjs files. A file of the
+	 * classpath that is not a jar is kept as an empty jar.
+	 */
+	static final class CachedJar {
+		private final File file;
+		private final long length;
+		private final long lastModified;
+		private final JarFile jarFile;
+		private final ProtectionDomain protectionDomain;
+		private final ConcurrentMap<String, Properties> stjsProperties = new ConcurrentHashMap<String, Properties>();
+		private JarIndex packageIndex;
+
+		CachedJar(File file, long length, long lastModified) {
+			this.file = file;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.jarFile = open(file);
+			this.protectionDomain = new ProtectionDomain(new CodeSource(toURL(file), (Certificate[]) null), null);
+		}
+
+		private static JarFile open(File file) {
+			try {
+				return file.isFile() ? new JarFile(file) : null;
+			}
+			catch (IOException e) {
+				// like for a class loader, the elements of the classpath that cannot be read are ignored
+				return null;
+			}
+		}
+
+		public JarEntry getEntry(String name) {
+			return jarFile == null ? null : jarFile.getJarEntry(name);
+		}
+
+		public byte[] read(JarEntry entry) throws IOException {
+			InputStream input = jarFile.getInputStream(entry);
+			try {
+				return ByteStreams.toByteArray(input);
+			}
+			finally {
+				Closeables.closeQuietly(input);
+			}
+		}
+
+		public URL getURL(String name) {
+			try {
+				return new URL("jar:" + file.toURI() + "!/" + name);
+			}
+			catch (MalformedURLException e) {
+				throw new STJSRuntimeException(e);
+			}
+		}
+
+		public synchronized JarIndex getPackageIndex() {
+			if (packageIndex == null) {
+				packageIndex = new JarIndex("jar:" + file.toURI(), jarFile);
+			}
+			return packageIndex;
+		}
+
+		/**
+		 * @return the properties of the given .stjs file, read once. They must not be modified.
+		 */
+		public Properties getStjsProperties(String className, JarEntry entry) {
+			Properties props = stjsProperties.get(entry.getName());
+			if (props == null) {
+				Properties loaded = new Properties();
+				try {
+					loaded.load(new ByteArrayInputStream(read(entry)));
+				}
+				catch (IOException e) {
+					throw new JavascriptClassGenerationException(className, e);
+				}
+				props = stjsProperties.putIfAbsent(entry.getName(), loaded);
+				if (props == null) {
+					props = loaded;
+				}
+			}
+			return props;
+		}
+	}
+
+	/**
+	 * the class loader of the jars. Its classes and resources are read from the cached jars.
+	 */
+	static final class LibrariesClassLoader extends ClassLoader {
+		static {
+			registerAsParallelCapable();
+		}
+
+		private final List<CachedJar> jars;
+
+		public LibrariesClassLoader(List<CachedJar> jars, ClassLoader parent) {
+			super(parent);
+			this.jars = jars;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			String entryName = name.replace('.', '/') + ".class";
+			for (CachedJar jar : jars) {
+				JarEntry entry = jar.getEntry(entryName);
+				if (entry != null) {
+					try {
+						byte[] bytes = jar.read(entry);
+						definePackageOf(name);
+						return defineClass(name, bytes, 0, bytes.length, jar.protectionDomain);
+					}
+					catch (IOException e) {
+						throw new ClassNotFoundException(name, e);
+					}
+				}
+			}
+			throw new ClassNotFoundException(name);
+		}
+
+		private void definePackageOf(String className) {
+			int lastDot = className.lastIndexOf('.');
+			if (lastDot < 0) {
+				return;
+			}
+			String packageName = className.substring(0, lastDot);
+			if (getPackage(packageName) == null) {
+				try {
+					definePackage(packageName, null, null, null, null, null, null, null);
+				}
+				catch (IllegalArgumentException e) {
+					// defined by another thread in the meantime
+				}
+			}
+		}
+
+		@Override
+		protected URL findResource(String name) {
+			for (CachedJar jar : jars) {
+				if (jar.getEntry(name) != null) {
+					return jar.getURL(name);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		protected Enumeration<URL> findResources(String name) {
+			List<URL> urls = new ArrayList<URL>();
+			for (CachedJar jar : jars) {
+				if (jar.getEntry(name) != null) {
+					urls.add(jar.getURL(name));
+				}
+			}
+			return Collections.enumeration(urls);
+		}
+
+		/**
+		 * @return a copy of the .stjs properties of the given class, that can be modified by the caller
+		 */
+		public Properties getStjsProperties(String className) {
+			String entryName = ClassUtils.getPropertiesFileName(className);
+			for (CachedJar jar : jars) {
+				JarEntry entry = jar.getEntry(entryName);
+				if (entry != null) {
+					Properties copy = new Properties();
+					copy.putAll(jar.getStjsProperties(className, entry));
+					return copy;
+				}
+			}
+			// not in the jars, let the usual lookup report it
+			return STJSClass.loadProperties(this, className);
+		}
+	}
+
+	/**
+	 * looks for the classes and the resources in its own folders before asking its parent.
+	 */
+	private static final class ProjectClassLoader extends URLClassLoader {
+		public ProjectClassLoader(URL[] urls, ClassLoader parent) {
+			super(urls, parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> clazz = findLoadedClass(name);
+				if (clazz == null) {
+					clazz = findOwnClass(name);
+				}
+				if (clazz == null) {
+					return super.loadClass(name, resolve);
+				}
+				if (resolve) {
+					resolveClass(clazz);
+				}
+				return clazz;
+			}
+		}
+
+		private Class<?> findOwnClass(String name) {
+			try {
+				return findClass(name);
+			}
+			catch (ClassNotFoundException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public URL getResource(String name) {
+			URL url = findResource(name);
+			return url == null ? super.getResource(name) : url;
+		}
+	}
+}
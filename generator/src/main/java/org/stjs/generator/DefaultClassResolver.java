@@ -1,7 +1,7 @@
 package org.stjs.generator;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.stjs.generator.utils.ClassUtils;
 
@@ -11,7 +11,7 @@ import org.stjs.generator.utils.ClassUtils;
 public class DefaultClassResolver implements ClassResolver {
 
 	private final ClassLoader classLoader;
-	private final Map<String, ClassWithJavascript> cache = new HashMap<>();
+	private final ConcurrentMap<String, ClassWithJavascript> cache = new ConcurrentHashMap<>();
 
 	public DefaultClassResolver(ClassLoader classLoader) {
 		this.classLoader = classLoader;
@@ -20,13 +20,16 @@ public class DefaultClassResolver implements ClassResolver {
 	@Override
 	public ClassWithJavascript resolve(String className) {
 		ClassWithJavascript clazz = this.cache.get(className);
+		if (clazz != null) {
+			return clazz;
+		}
+		clazz = doResolve(className);
 		if (clazz == null) {
-			clazz = doResolve(className);
-			if (clazz != null) {
-				cache.put(className, clazz);
-			}
+			return null;
 		}
-		return clazz;
+		// another thread may have resolved the same class in the meantime. Keep the first one to return always the same instance
+		ClassWithJavascript existing = cache.putIfAbsent(className, clazz);
+		return existing == null ? clazz : existing;
 	}
 
 	public Class<?> resolveJavaClass(String className) {
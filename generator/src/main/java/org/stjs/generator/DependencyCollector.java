@@ -12,12 +12,17 @@
  */
 package org.stjs.generator;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -32,21 +37,6 @@ import edu.umd.cs.findbugs.annotations.SuppressWarnings;
  */
 public class DependencyCollector {
 
-	private final DependencyComparator dependencyComparator = new DependencyComparator();
-	private final ClassWithJavascriptComparator classWithJsComparator = new ClassWithJavascriptComparator(dependencyComparator);
-
-	private int compareDeps(int withIndex, List<ClassWithJavascript> deps, Comparator<ClassWithJavascript> comparator) {
-		for (int j = 0; j < deps.size(); ++j) {
-			if (withIndex != j) {
-				int cmp = comparator.compare(deps.get(withIndex), deps.get(j));
-				if (cmp > 0) {
-					return cmp;
-				}
-			}
-		}
-		return -1;
-	}
-
 	public List<ClassWithJavascript> orderAllDependencies(ClassWithJavascript root) {
 		return orderAllDependencies(Collections.singletonList(root));
 	}
@@ -55,44 +45,38 @@ public class DependencyCollector {
 		List<ClassWithJavascript> deps = new ArrayList<>();
 		Set<ClassWithJavascript> visited = new HashSet<>();
 		for (ClassWithJavascript root : roots) {
-			visit(visited, new LinkedHashSet<ClassWithJavascript>(), deps, root);
+			visit(visited, deps, root);
 		}
 
-		List<ClassWithJavascript> orderedDeps = new ArrayList<>();
-		while (!deps.isEmpty()) {
-			// add to orderedDeps only the classes that have no "extends" dependency to any of the other from the
-			// remaining list.
-			// i.e. the result of the comparison is <= 0
-			for (int i = 0; i < deps.size(); ++i) {
-				if (compareDeps(i, deps, classWithJsComparator) <= 0) {
-					orderedDeps.add(deps.remove(i));
-					i--;
-				}
-			}
-		}
-
-		return orderedDeps;
+		return new InheritanceOrder(deps).sort();
 	}
 
 	/**
-	 * use topological sort to find the order of processing cells
+	 * use topological sort to find the order of processing cells. A class is added after its dependencies, unless they depend on it
+	 * (cyclic dependency). The graph is walked with an explicit stack, as the chains of dependencies of large projects are too long for
+	 * recursive calls.
 	 */
-	private void visit(Set<ClassWithJavascript> visited, Set<ClassWithJavascript> path, List<ClassWithJavascript> deps, ClassWithJavascript cj) {
-		if (path.contains(cj)) {
-			// cyclic dependency here
+	private void visit(Set<ClassWithJavascript> visited, List<ClassWithJavascript> deps, ClassWithJavascript root) {
+		if (!visited.add(root)) {
 			return;
 		}
-		if (!visited.contains(cj)) {
-			visited.add(cj);
-			path.add(cj);
-
-			for (ClassWithJavascript dep : cj.getDirectDependencies()) {
-				visit(visited, path, deps, dep);
-				path.remove(dep);
+		Deque<ClassWithJavascript> path = new ArrayDeque<>();
+		Deque<Iterator<ClassWithJavascript>> remainingDeps = new ArrayDeque<>();
+		path.push(root);
+		remainingDeps.push(root.getDirectDependencies().iterator());
+		while (!path.isEmpty()) {
+			Iterator<ClassWithJavascript> it = remainingDeps.peek();
+			if (it.hasNext()) {
+				ClassWithJavascript dep = it.next();
+				// the classes of the path are already visited, so the cycles stop here
+				if (visited.add(dep)) {
+					path.push(dep);
+					remainingDeps.push(dep.getDirectDependencies().iterator());
+				}
+			} else {
+				remainingDeps.pop();
+				deps.add(path.pop());
 			}
-
-			deps.add(cj);
-
 		}
 	}
 
@@ -191,21 +175,180 @@ public class DependencyCollector {
 		}
 	}
 
-	@SuppressWarnings(//
-			value = "SE_COMPARATOR_SHOULD_BE_SERIALIZABLE", //
-			justification = "This comparator will not be used with Serializable lists" //
-	)
-	static class ClassWithJavascriptComparator implements Comparator<ClassWithJavascript> {
+	/**
+	 * This class orders the classes such that a class comes after the classes it extends or implements, directly or through its nested
+	 * classes, following the rules of {@link DependencyComparator}. The inheritance graph is built once, from the super types of each
+	 * class and of its nested classes, then it is sorted in linear time.
+	 * <p>
+	 * The result is the one of repeated scans of the list, each scan taking the classes whose super types were already taken. This way the
+	 * order given by the direct dependencies is kept as much as possible.
+	 */
+	private static final class InheritanceOrder {
+		private final List<ClassWithJavascript> deps;
+		private final Map<Class<?>, List<Integer>> indexesByClass = new HashMap<>();
+		private final Map<Class<?>, Set<Class<?>>> superTypesByClass = new HashMap<>();
+		private final List<List<Integer>> predecessors = new ArrayList<>();
+		private final List<List<Integer>> successors = new ArrayList<>();
+
+		InheritanceOrder(List<ClassWithJavascript> deps) {
+			this.deps = deps;
+			for (int i = 0; i < deps.size(); ++i) {
+				addIndex(deps.get(i).getJavaClass(), i);
+				predecessors.add(new ArrayList<Integer>());
+				successors.add(new ArrayList<Integer>());
+			}
+			for (int i = 0; i < deps.size(); ++i) {
+				addEdges(i);
+			}
+		}
 
-		private final DependencyComparator dependencyComparator;
+		private void addIndex(Class<?> clazz, int index) {
+			List<Integer> indexes = indexesByClass.get(clazz);
+			if (indexes == null) {
+				indexes = new ArrayList<>(1);
+				indexesByClass.put(clazz, indexes);
+			}
+			indexes.add(index);
+		}
 
-		ClassWithJavascriptComparator(DependencyComparator dependencyComparator) {
-			this.dependencyComparator = dependencyComparator;
+		/**
+		 * adds the edges from the classes that must come before the class with the given index: the classes that declare one of the super
+		 * types of the class or of its nested classes (at any level), either as the class itself or as one of its direct nested classes.
+		 */
+		private void addEdges(int index) {
+			Set<Integer> before = new LinkedHashSet<>();
+			List<Class<?>> types = new ArrayList<>();
+			addNestedTypes(deps.get(index).getJavaClass(), types);
+			for (Class<?> type : types) {
+				for (Class<?> superType : getSuperTypes(type)) {
+					addIndexes(superType, before);
+					addIndexes(superType.getDeclaringClass(), before);
+				}
+			}
+			before.remove(index);
+			for (Integer b : before) {
+				predecessors.get(index).add(b);
+				successors.get(b).add(index);
+			}
 		}
 
-		@Override
-		public int compare(ClassWithJavascript o1, ClassWithJavascript o2) {
-			return dependencyComparator.compare(o1.getJavaClass(), o2.getJavaClass());
+		private void addIndexes(Class<?> clazz, Set<Integer> indexes) {
+			List<Integer> classIndexes = clazz == null ? null : indexesByClass.get(clazz);
+			if (classIndexes != null) {
+				indexes.addAll(classIndexes);
+			}
+		}
+
+		private static void addNestedTypes(Class<?> clazz, List<Class<?>> types) {
+			types.add(clazz);
+			for (Class<?> nested : clazz.getDeclaredClasses()) {
+				addNestedTypes(nested, types);
+			}
+		}
+
+		/**
+		 * @return the given type and all the classes and the interfaces it extends or implements, at any level
+		 */
+		private Set<Class<?>> getSuperTypes(Class<?> type) {
+			Set<Class<?>> superTypes = superTypesByClass.get(type);
+			if (superTypes == null) {
+				superTypes = new LinkedHashSet<>();
+				superTypes.add(type);
+				if (type.isInterface()) {
+					// like Class.isAssignableFrom, Object is a super type of the interfaces
+					superTypes.add(Object.class);
+				}
+				if (type.getSuperclass() != null) {
+					superTypes.addAll(getSuperTypes(type.getSuperclass()));
+				}
+				for (Class<?> iface : type.getInterfaces()) {
+					superTypes.addAll(getSuperTypes(iface));
+				}
+				superTypesByClass.put(type, superTypes);
+			}
+			return superTypes;
+		}
+
+		public List<ClassWithJavascript> sort() {
+			int size = deps.size();
+			int[] remainingPredecessors = new int[size];
+			Deque<Integer> ready = new ArrayDeque<>();
+			for (int i = 0; i < size; ++i) {
+				remainingPredecessors[i] = predecessors.get(i).size();
+				if (remainingPredecessors[i] == 0) {
+					ready.add(i);
+				}
+			}
+
+			// the scan of the list in which the class is taken
+			int[] scans = new int[size];
+			int sorted = 0;
+			while (!ready.isEmpty()) {
+				takeClass(ready.poll(), scans, remainingPredecessors, ready);
+				sorted++;
+			}
+			if (sorted < size) {
+				throw new IllegalArgumentException("Cannot decide the dependency order between the types, as each type (or one of its "
+						+ "nested types) extends the next type (or one of its nested types):" + findCycle(remainingPredecessors));
+			}
+			return orderByScan(scans);
+		}
+
+		private void takeClass(int current, int[] scans, int[] remainingPredecessors, Deque<Integer> ready) {
+			for (int next : successors.get(current)) {
+				// a class found before its predecessor in the list is taken in the next scan
+				scans[next] = Math.max(scans[next], current > next ? scans[current] + 1 : scans[current]);
+				remainingPredecessors[next]--;
+				if (remainingPredecessors[next] == 0) {
+					ready.add(next);
+				}
+			}
+		}
+
+		private List<ClassWithJavascript> orderByScan(int[] scans) {
+			List<List<ClassWithJavascript>> classesByScan = new ArrayList<>();
+			for (int i = 0; i < scans.length; ++i) {
+				while (classesByScan.size() <= scans[i]) {
+					classesByScan.add(new ArrayList<ClassWithJavascript>());
+				}
+				classesByScan.get(scans[i]).add(deps.get(i));
+			}
+			List<ClassWithJavascript> orderedDeps = new ArrayList<>(deps.size());
+			for (List<ClassWithJavascript> classes : classesByScan) {
+				orderedDeps.addAll(classes);
+			}
+			return orderedDeps;
+		}
+
+		/**
+		 * @return a cycle among the classes that could not be sorted, i.e. that still have predecessors. Each class of the cycle (or one of
+		 *         its nested classes) extends the next class (or one of its nested classes).
+		 */
+		private List<Class<?>> findCycle(int[] remainingPredecessors) {
+			int current = 0;
+			while (remainingPredecessors[current] == 0) {
+				current++;
+			}
+			// go back through the predecessors that are not sorted either, until a class is found twice
+			int[] positionInPath = new int[deps.size()];
+			List<Class<?>> path = new ArrayList<>();
+			while (positionInPath[current] == 0) {
+				path.add(deps.get(current).getJavaClass());
+				positionInPath[current] = path.size();
+				current = getUnsortedPredecessor(current, remainingPredecessors);
+			}
+			List<Class<?>> cycle = new ArrayList<>(path.subList(positionInPath[current] - 1, path.size()));
+			cycle.add(deps.get(current).getJavaClass());
+			return cycle;
+		}
+
+		private int getUnsortedPredecessor(int index, int[] remainingPredecessors) {
+			for (int previous : predecessors.get(index)) {
+				if (remainingPredecessors[previous] > 0) {
+					return previous;
+				}
+			}
+			throw new IllegalStateException("The class " + deps.get(index) + " has no predecessor left");
 		}
 	}
 }
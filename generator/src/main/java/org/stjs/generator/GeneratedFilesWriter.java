@@ -0,0 +1,212 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.stjs.generator.utils.Timers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class writes the generated files on a dedicated thread, so the generation of the next Java file does not wait for the disk. The
+ * content of the files is rendered by the generating thread and queued. When the queue is full, the generating threads wait for the
+ * writer to catch up.
+ * <p>
+ * The failures are kept and thrown by {@link #close()}.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class GeneratedFilesWriter {
+	private static final int QUEUE_CAPACITY = 64;
+	private static final int KEEP_ALIVE_SECONDS = 5;
+
+	private final ThreadPoolExecutor executor;
+	private final List<JavascriptFileGenerationException> failures = new ArrayList<JavascriptFileGenerationException>();
+	private final Object lock = new Object();
+	private int pendingOutputs;
+
+	public GeneratedFilesWriter() {
+		executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+				new ThreadFactoryBuilder().setNameFormat("stjs-output-writer-%d").setDaemon(true).build(), new WaitForSpacePolicy());
+		// the thread stops when there is nothing to write, as the generators are not always closed
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * queues the given output to be written. The call blocks if too many outputs are waiting to be written.
+	 *
+	 * @throws STJSRuntimeException
+	 *             if the writer is already closed
+	 */
+	public void write(final Output output) {
+		if (executor.isShutdown()) {
+			throw closedFailure();
+		}
+		synchronized (lock) {
+			pendingOutputs++;
+		}
+		try {
+			execute(output);
+		}
+		catch (STJSRuntimeException e) {
+			// the output will never be written, so nobody must wait for it
+			outputDone();
+			throw e;
+		}
+	}
+
+	private static STJSRuntimeException closedFailure() {
+		return new STJSRuntimeException("The generated files cannot be written after the writer is closed");
+	}
+
+	private void execute(final Output output) {
+		executor.execute(new Runnable() {
+			@Override
+			@SuppressWarnings("PMD.AvoidCatchingGenericException")
+			// any failure must be reported, otherwise it would be lost with the writer thread
+			public void run() {
+				try {
+					output.write();
+				}
+				catch (IOException e) {
+					addFailure(output.failure(e));
+				}
+				catch (RuntimeException e) {
+					addFailure(output.failure(e));
+				}
+				finally {
+					outputDone();
+				}
+			}
+		});
+	}
+
+	private void outputDone() {
+		synchronized (lock) {
+			pendingOutputs--;
+			lock.notifyAll();
+		}
+	}
+
+	private void addFailure(JavascriptFileGenerationException failure) {
+		synchronized (failures) {
+			failures.add(failure);
+		}
+	}
+
+	/**
+	 * waits until all the queued outputs are written
+	 */
+	public void awaitWritten() {
+		synchronized (lock) {
+			try {
+				while (pendingOutputs > 0) {
+					lock.wait();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new STJSRuntimeException("Interrupted while waiting for the generated files to be written", e);
+			}
+		}
+	}
+
+	/**
+	 * writes all the queued outputs and stops the writer thread.
+	 *
+	 * @throws MultipleFileGenerationException
+	 *             if any of the files could not be written
+	 */
+	public void close() throws MultipleFileGenerationException {
+		awaitWritten();
+		executor.shutdown();
+
+		List<JavascriptFileGenerationException> allFailures;
+		synchronized (failures) {
+			allFailures = new ArrayList<JavascriptFileGenerationException>(failures);
+			failures.clear();
+		}
+		if (!allFailures.isEmpty()) {
+			throw new MultipleFileGenerationException(allFailures);
+		}
+	}
+
+	/**
+	 * blocks the generating thread until there is space in the queue
+	 */
+	private static class WaitForSpacePolicy implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				// nothing would take the task from the queue
+				throw closedFailure();
+			}
+			try {
+				executor.getQueue().put(r);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new STJSRuntimeException("Interrupted while waiting to write the generated files", e);
+			}
+		}
+	}
+
+	/**
+	 * the files generated for a Java source file: the files to be written with their content and the files to be copied.
+	 */
+	public static class Output {
+		private final File inputFile;
+		private final Map<File, byte[]> contents = new LinkedHashMap<File, byte[]>();
+		private final Map<File, File> copies = new LinkedHashMap<File, File>();
+
+		public Output(File inputFile) {
+			this.inputFile = inputFile;
+		}
+
+		public Output content(File file, byte[] content) {
+			contents.put(file, content);
+			return this;
+		}
+
+		public Output copy(File from, File to) {
+			copies.put(to, from);
+			return this;
+		}
+
+		private void write() throws IOException {
+			Timers.start("dump-js");
+			for (Map.Entry<File, byte[]> entry : contents.entrySet()) {
+				Files.write(entry.getKey().toPath(), entry.getValue());
+			}
+			for (Map.Entry<File, File> entry : copies.entrySet()) {
+				Files.copy(entry.getValue().toPath(), entry.getKey().toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			Timers.end("dump-js");
+		}
+
+		private JavascriptFileGenerationException failure(Exception e) {
+			return new JavascriptFileGenerationException(new SourcePosition(inputFile, 0, 0), "Could not write the generated files:" + e, e);
+		}
+	}
+}
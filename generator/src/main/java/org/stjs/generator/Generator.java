@@ -12,20 +12,30 @@
  */
 package org.stjs.generator;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,6 +49,7 @@ import javax.tools.StandardJavaFileManager;
 import org.stjs.generator.GenerationContext.AnnotationCacheKey;
 import org.stjs.generator.javac.CustomClassloaderJavaFileManager;
 import org.stjs.generator.javascript.JavaScriptBuilder;
+import org.stjs.generator.javascript.StringJavaScriptBuilder;
 import org.stjs.generator.javascript.rhino.RhinoJavaScriptBuilder;
 import org.stjs.generator.name.DefaultJavaScriptNameProvider;
 import org.stjs.generator.name.DependencyType;
@@ -46,12 +57,21 @@ import org.stjs.generator.name.JavaScriptNameProvider;
 import org.stjs.generator.plugin.GenerationPlugins;
 import org.stjs.generator.utils.ClassUtils;
 import org.stjs.generator.utils.Timers;
+import org.stjs.generator.writer.CheckingWriterVisitor;
+import org.stjs.generator.writer.declaration.ClassWriter;
+import org.stjs.generator.writer.expression.ConstantFolding;
 
-import com.google.common.collect.Maps;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import com.google.common.io.InputSupplier;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
 import com.sun.source.util.JavacTask;
 import com.sun.source.util.Trees;
 import com.sun.tools.javac.api.JavacTool;
@@ -61,48 +81,69 @@ import com.sun.tools.javac.api.JavacTool;
  *
  * @author acraciun
  */
+@SuppressWarnings("PMD.DoNotUseThreads")
 public class Generator {
 	private static final Logger LOG = Logger.getLogger(Generator.class.getName());
 	private static final int EXECUTOR_TERMINAL_TIMEOUT = 10;
 	private static final String STJS_FILE = "stjs.js";
 	private final GenerationPlugins<Object> plugins;
-	private StandardJavaFileManager fileManager;
-	private JavaFileManager classLoaderFileManager;
-	private final Map<AnnotationCacheKey, Object> cacheAnnotations = Maps.newHashMap();
-	private final Executor taskExecutor;
+	private final Map<AnnotationCacheKey, Object> cacheAnnotations = new ConcurrentHashMap<AnnotationCacheKey, Object>();
+	private final ExecutorService taskExecutor;
 	private final GeneratorConfiguration config;
+	private final GeneratedFilesWriter filesWriter = new GeneratedFilesWriter();
+
+	// the javac objects are not thread-safe, so each thread generating files gets its own
+	private final ThreadLocal<JavacEnvironment> javacEnvironment = new ThreadLocal<JavacEnvironment>();
+	private final List<JavacEnvironment> allJavacEnvironments = new CopyOnWriteArrayList<JavacEnvironment>();
 
-	@SuppressWarnings("PMD.DoNotUseThreads")
 	public Generator(GeneratorConfiguration config) {
-		plugins = new GenerationPlugins<>();
+		this(config, new GenerationPlugins<Object>());
+	}
+
+	/**
+	 * creates a generator that uses the given plugins. The plugins do not depend on the configuration, so a long-lived process can load
+	 * them once and share them between the generators it creates.
+	 */
+	public Generator(GeneratorConfiguration config, GenerationPlugins<Object> plugins) {
+		this.plugins = plugins;
 		this.config = config;
 
-		// taskExecutor = Executors.newFixedThreadPool(4);
-		taskExecutor = new Executor() {
-			@Override
-			public void execute(Runnable command) {
-				command.run();
-			}
-		};
+		if (config.getThreads() > 1) {
+			taskExecutor = Executors.newFixedThreadPool(config.getThreads(),
+					new ThreadFactoryBuilder().setNameFormat("stjs-generator-%d").setDaemon(true).build());
+		} else {
+			taskExecutor = MoreExecutors.sameThreadExecutor();
+		}
 	}
 
-	@edu.umd.cs.findbugs.annotations.SuppressWarnings("BC_UNCONFIRMED_CAST")
-	public void close() {
+	/**
+	 * writes the files that are still waiting to be written and releases the resources used by the generator.
+	 *
+	 * @throws MultipleFileGenerationException
+	 *             if some of the generated files could not be written
+	 */
+	public void close() throws MultipleFileGenerationException {
 		try {
-			Closeables.close(fileManager, true);
+			filesWriter.close();
 		}
-		catch (IOException e) {
-			LOG.log(Level.SEVERE, "IOException should not have been thrown.", e);
+		finally {
+			closeJavacAndWorkers();
 		}
-		if (taskExecutor instanceof ExecutorService) {
-			ExecutorService es = (ExecutorService) taskExecutor;
-			es.shutdown();
-			try {
-				es.awaitTermination(EXECUTOR_TERMINAL_TIMEOUT, TimeUnit.SECONDS);
-			}
-			catch (InterruptedException e) {
-				return;
-			}
+	}
+
+	private void closeJavacAndWorkers() {
+		for (JavacEnvironment env : allJavacEnvironments) {
+			env.release();
+		}
+		allJavacEnvironments.clear();
+		javacEnvironment.remove();
+
+		taskExecutor.shutdown();
+		try {
+			taskExecutor.awaitTermination(EXECUTOR_TERMINAL_TIMEOUT, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -119,7 +160,8 @@ public class Generator {
 
 	public File getOutputFile(File generationFolder, String className, boolean generateDirectory) {
 		File output = new File(generationFolder, className.replace('.', File.separatorChar) + ".js");
-		if (generateDirectory && !output.getParentFile().exists() && !output.getParentFile().mkdirs()) {
+		// the folder may be created in the meantime by another thread, so check its existence after mkdirs
+		if (generateDirectory && !output.getParentFile().mkdirs() && !output.getParentFile().isDirectory()) {
 			throw new STJSRuntimeException("Unable to create parent folder for the output file:" + output);
 		}
 		return output;
@@ -131,14 +173,15 @@ public class Generator {
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private JavaScriptBuilder<Object> getJavaScriptBuilder() {
-		// TODO: here we my return SourceJavaScript builder as well.
+		if (config.isStringJavaScriptBuilder()) {
+			return (JavaScriptBuilder) new StringJavaScriptBuilder();
+		}
 		return (JavaScriptBuilder) new RhinoJavaScriptBuilder();
 	}
 
 	/**
 	 * @return the list of imports needed by the generated class
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public ClassWithJavascript generateJavascript(String className, File sourceFolder) throws JavascriptFileGenerationException {
 
 		Class<?> clazz = ClassUtils.getClazz(config.getStjsClassLoader(), className);
@@ -147,44 +190,179 @@ public class Generator {
 		}
 
 		File inputFile = getInputFile(sourceFolder, className);
-		File outputFile = getOutputFile(config.getGenerationFolder().getGeneratedSourcesAbsolutePath(), className);
-		JavaScriptNameProvider names = new DefaultJavaScriptNameProvider();
-		GenerationPlugins<Object> currentClassPlugins = plugins.forClass(clazz);
+		GenerationContext<Object> context = newContext(inputFile);
 
-		GenerationContext<Object> context =
-				new GenerationContext<Object>(inputFile, config, names, null, cacheAnnotations, getJavaScriptBuilder());
+		CompilationUnitTree cu = parseAndResolve(inputFile, context);
+		ClassWithJavascript stjsClass = generateJavascript(className, clazz, cu, context);
+		// the callers expect to find the generated files on the disk
+		filesWriter.awaitWritten();
+		return stjsClass;
+	}
 
-		CompilationUnitTree cu = parseAndResolve(inputFile, context, config.getStjsClassLoader(), config.getSourceEncoding());
+	/**
+	 * Generates the Javascript code for all the given classes. All the source files are parsed and analyzed by a single javac task, so
+	 * the types shared by the classes are only resolved once. An error in one of the files does not stop the generation of the other
+	 * ones: all the errors are collected and thrown at the end as a {@link MultipleFileGenerationException}, that also gives access to
+	 * the classes that were generated successfully. If the configuration asks for several threads, the classes are split between the
+	 * threads, each of them using its own javac task. The generated files are written in the background, while the next files are
+	 * generated, and they are all on the disk when this method returns. The errors that occur while writing them are thrown by
+	 * {@link #close()}.
+	 * @return the list of the classes (including the bridges) that were generated
+	 */
+	public List<ClassWithJavascript> generateJavascript(Collection<String> classNames, File sourceFolder)
+			throws MultipleFileGenerationException {
+		List<ClassWithJavascript> generatedClasses = new ArrayList<ClassWithJavascript>();
+		List<JavascriptFileGenerationException> errors = new ArrayList<JavascriptFileGenerationException>();
+
+		Map<File, Class<?>> javaClasses = new LinkedHashMap<File, Class<?>>();
+		for (String className : classNames) {
+			File inputFile = getInputFile(sourceFolder, className);
+			try {
+				Class<?> clazz = ClassUtils.getClazz(config.getStjsClassLoader(), className);
+				if (ClassUtils.isBridge(config.getStjsClassLoader(), clazz)) {
+					generatedClasses.add(new BridgeClass(config.getClassResolver(), clazz));
+				} else {
+					javaClasses.put(inputFile, clazz);
+				}
+			}
+			catch (JavascriptClassGenerationException e) {
+				addError(errors, inputFile, e);
+			}
+		}
 
-		// check the code
-		Timers.start("check-java");
-		currentClassPlugins.getCheckVisitor().scan(cu, (GenerationContext) context);
-		context.getChecks().check();
-		Timers.end("check-java");
+		if (!javaClasses.isEmpty()) {
+			generateJavascript(javaClasses, sourceFolder, generatedClasses, errors);
+		}
+		// the write errors are thrown by close
+		filesWriter.awaitWritten();
 
-		// generate the javascript code
-		Timers.start("write-js-ast");
-		Object javascriptRoot = currentClassPlugins.getWriterVisitor().scan(cu, context);
-		// check for any error arriving during writing
-		context.getChecks().check();
-		Timers.end("write-js-ast");
+		if (!errors.isEmpty()) {
+			throw new MultipleFileGenerationException(errors, generatedClasses);
+		}
+		return generatedClasses;
+	}
+
+	@SuppressWarnings("PMD.PreserveStackTrace")
+	// the ExecutionException only wraps the exception thrown by the worker, so the cause is rethrown as is
+	private void generateJavascript(Map<File, Class<?>> javaClasses, File sourceFolder, List<ClassWithJavascript> generatedClasses,
+			List<JavascriptFileGenerationException> errors) {
+		// keep the classes of the same package together, as they are likely to share the same dependencies
+		int workerCount = Math.min(config.getThreads(), javaClasses.size());
+		int workerSize = (javaClasses.size() + workerCount - 1) / workerCount;
+		List<Future<GenerationWorker>> workers = new ArrayList<Future<GenerationWorker>>();
+		for (List<Map.Entry<File, Class<?>>> workerClasses : Iterables.partition(javaClasses.entrySet(), workerSize)) {
+			workers.add(taskExecutor.submit(new GenerationWorker(workerClasses, sourceFolder)));
+		}
+
+		for (Future<GenerationWorker> worker : workers) {
+			try {
+				generatedClasses.addAll(worker.get().generatedClasses);
+				errors.addAll(worker.get().errors);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new STJSRuntimeException("The generation was interrupted", e);
+			}
+			catch (ExecutionException e) {
+				throw Throwables.propagate(e.getCause());
+			}
+		}
+	}
+
+	private void addError(List<JavascriptFileGenerationException> errors, File inputFile, RuntimeException e) {
+		if (e instanceof MultipleFileGenerationException) {
+			errors.addAll(((MultipleFileGenerationException) e).getExceptions());
+		} else if (e instanceof JavascriptFileGenerationException) {
+			errors.add((JavascriptFileGenerationException) e);
+		} else {
+			errors.add(new JavascriptFileGenerationException(new SourcePosition(inputFile, 0, 0), e.toString(), e));
+		}
+	}
+
+	private GenerationContext<Object> newContext(File inputFile) {
+		JavaScriptNameProvider names = new DefaultJavaScriptNameProvider();
+		return new GenerationContext<Object>(inputFile, config, names, null, cacheAnnotations, getJavaScriptBuilder());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private ClassWithJavascript generateJavascript(String className, Class<?> clazz, CompilationUnitTree cu, GenerationContext<Object> context) {
+		File outputFile = getOutputFile(config.getGenerationFolder().getGeneratedSourcesAbsolutePath(), className);
+		GenerationPlugins<Object> currentClassPlugins = plugins.forClass(clazz);
+
+		Object javascriptRoot;
+		if (config.isSinglePass()) {
+			javascriptRoot = checkAndWrite(currentClassPlugins, cu, context);
+		} else {
+			// check the code
+			Timers.start("check-java");
+			currentClassPlugins.getCheckVisitor().scan(cu, (GenerationContext) context);
+			context.getChecks().check();
+			Timers.end("check-java");
+
+			// generate the javascript code
+			Timers.start("write-js-ast");
+			javascriptRoot = currentClassPlugins.getWriterVisitor().scan(cu, context);
+			// check for any error arriving during writing
+			context.getChecks().check();
+			Timers.end("write-js-ast");
+		}
 
 		Class<?> javaClass = config.getClassResolver().resolveJavaClass(className);
 		STJSClass stjsClass = new STJSClass(config.getClassResolver(), config.getTargetFolder(), javaClass);
-		Map<String, DependencyType> resolvedClasses = new LinkedHashMap<String, DependencyType>(names.getResolvedTypes());
+		Map<String, DependencyType> resolvedClasses = new LinkedHashMap<String, DependencyType>(context.getNames().getResolvedTypes());
 		resolvedClasses.remove(className);
 		stjsClass.setDependencies(resolvedClasses);
 		stjsClass.setGeneratedJavascriptFile(relative(className));
 
 		TypeElement classElement = context.getElements().getTypeElement(clazz.getCanonicalName());
 		stjsClass.setJavascriptNamespace(context.wrap(classElement).getNamespace());
+		stjsClass.setMainMethod(hasMainMethod(cu.getTypeDecls()));
+		if (config.isInlineConstants()) {
+			stjsClass.setConstants(ConstantFolding.inlinableConstants(classElement));
+		}
 
 		// dump the ast to a file
-		taskExecutor.execute(new DumpFilesTask<Object>(outputFile, context, javascriptRoot, stjsClass));
+		new DumpFilesTask<Object>(outputFile, context, javascriptRoot, stjsClass).run();
 
 		return stjsClass;
 	}
 
+	/**
+	 * @return true if one of the given classes, or of their inner classes, has a main method
+	 */
+	private static boolean hasMainMethod(List<? extends Tree> trees) {
+		for (Tree tree : trees) {
+			if (tree instanceof ClassTree && (ClassWriter.hasMainMethod((ClassTree) tree) || hasMainMethod(((ClassTree) tree).getMembers()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * checks the code and generates the javascript code in a single traversal of the compilation unit. The errors are thrown before
+	 * anything is written.
+	 */
+	@SuppressWarnings("PMD.AvoidCatchingGenericException")
+	private Object checkAndWrite(GenerationPlugins<Object> currentClassPlugins, CompilationUnitTree cu, GenerationContext<Object> context) {
+		Timers.start("check-write-js-ast");
+		try {
+			Object javascriptRoot =
+					new CheckingWriterVisitor<Object>(currentClassPlugins.getWriterVisitor(), currentClassPlugins.getCheckVisitor()).scan(cu,
+							context);
+			context.getChecks().check();
+			return javascriptRoot;
+		}
+		catch (RuntimeException e) {
+			// the writers expect a checked code, so their failure may come from an error already found by the checks
+			context.getChecks().check();
+			throw e;
+		}
+		finally {
+			Timers.end("check-write-js-ast");
+		}
+	}
+
 	private URI relative(String className) {
 		// FIXME temporary have to remove the full path from the file name.
 		// it should be different depending on whether the final artifact is a war or a jar.
@@ -210,47 +388,21 @@ public class Generator {
 		}
 	}
 
-	private JavaCompiler getCompiler(ClassLoader builtProjectClassLoader, String sourceEncoding) {
-		// create it directly to avoid ClassLoader problems
-		JavaCompiler compiler = JavacTool.create();
-		if (compiler == null) {
-			throw new STJSRuntimeException(
-					"A Java compiler is not available for this project. You may have configured your environment to run with JRE instead of a JDK");
-		}
-		if (fileManager == null) {
-			fileManager = compiler.getStandardFileManager(null, null, Charset.forName(sourceEncoding));
-			classLoaderFileManager = new CustomClassloaderJavaFileManager(builtProjectClassLoader, fileManager);
+	private JavacEnvironment getJavacEnvironment() {
+		JavacEnvironment env = javacEnvironment.get();
+		if (env == null) {
+			env = new JavacEnvironment(config.getStjsClassLoader(), config.getSourceEncoding());
+			javacEnvironment.set(env);
+			allJavacEnvironments.add(env);
 		}
-		return compiler;
+		return env;
 	}
 
 	@SuppressWarnings("PMD.AvoidCatchingThrowable") // JavaCompiler throws an Error, so catching Throwable is intentional
-	private <JS> CompilationUnitTree parseAndResolve(File inputFile, GenerationContext<JS> context, ClassLoader builtProjectClassLoader,
-			String sourceEncoding) {
-		JavaCompiler.CompilationTask task = null;
-		JavacTask javacTask = null;
+	private <JS> CompilationUnitTree parseAndResolve(File inputFile, GenerationContext<JS> context) {
 		try {
-			JavaCompiler compiler = getCompiler(builtProjectClassLoader, sourceEncoding);
-			Iterable<? extends JavaFileObject> fileObjects = fileManager.getJavaFileObjectsFromFiles(Collections.singleton(inputFile));
-			List<String> options = Arrays.asList("-proc:none");
-			task = compiler.getTask(null, classLoaderFileManager, null, options, null, fileObjects);
-			javacTask = (JavacTask) task;
-
-			context.setTrees(Trees.instance(javacTask));
-			context.setElements(javacTask.getElements());
-			context.setTypes(javacTask.getTypes());
-
-			Timers.start("parse-java");
-			CompilationUnitTree cu = javacTask.parse().iterator().next();
-			Timers.end("parse-java");
-
-			Timers.start("analyze-java");
-			javacTask.analyze();
-			Timers.end("analyze-java");
-
-			context.setCompilationUnit(cu);
-
-			return cu;
+			parseAndResolve(Collections.singletonMap(inputFile, context));
+			return context.getCompilationUnit();
 		}
 		catch (Throwable e) {
 			throw new JavascriptFileGenerationException(new SourcePosition(context.getInputFile(), 0, 0), "Cannot parse the Java file:" + e);
@@ -258,6 +410,38 @@ public class Generator {
 
 	}
 
+	/**
+	 * parses and analyzes all the given files in a single javac task. Each context receives its compilation unit.
+	 */
+	private <JS> void parseAndResolve(Map<File, GenerationContext<JS>> contexts) throws IOException {
+		JavacEnvironment env = getJavacEnvironment();
+		Map<JavaFileObject, GenerationContext<JS>> contextsBySource = new LinkedHashMap<JavaFileObject, GenerationContext<JS>>();
+		for (Map.Entry<File, GenerationContext<JS>> entry : contexts.entrySet()) {
+			JavaFileObject fileObject = env.fileManager.getJavaFileObjectsFromFiles(Collections.singleton(entry.getKey())).iterator().next();
+			contextsBySource.put(fileObject, entry.getValue());
+		}
+		List<String> options = Arrays.asList("-proc:none");
+		JavacTask javacTask =
+				(JavacTask) env.compiler.getTask(null, env.classLoaderFileManager, null, options, null, contextsBySource.keySet());
+
+		Timers.start("parse-java");
+		Iterable<? extends CompilationUnitTree> units = javacTask.parse();
+		Timers.end("parse-java");
+
+		Timers.start("analyze-java");
+		javacTask.analyze();
+		Timers.end("analyze-java");
+
+		Trees trees = Trees.instance(javacTask);
+		for (CompilationUnitTree cu : units) {
+			GenerationContext<JS> context = contextsBySource.get(cu.getSourceFile());
+			context.setTrees(trees);
+			context.setElements(javacTask.getElements());
+			context.setTypes(javacTask.getTypes());
+			context.setCompilationUnit(cu);
+		}
+	}
+
 	/**
 	 * This method copies the Javascript support file (stjs.js currently) to the desired folder. This method should be
 	 * called after the processing of all the files.
@@ -300,93 +484,185 @@ public class Generator {
 		return config.getClassResolver().resolve(testClass.getName());
 	}
 
-	@SuppressWarnings("PMD.DoNotUseThreads")
+	/**
+	 * the compiler and the file managers used to parse and analyze the Java sources. The standard file managers can be used by several
+	 * compilation tasks, so they are kept after the generation for the next generators of the JVM: this avoids opening the JDK classes
+	 * for each of them.
+	 */
+	private static final class JavacEnvironment {
+		private static final int MAX_POOLED_FILE_MANAGERS = 8;
+		private static final ConcurrentMap<Charset, Queue<StandardJavaFileManager>> FILE_MANAGERS =
+				new ConcurrentHashMap<Charset, Queue<StandardJavaFileManager>>();
+
+		private final JavaCompiler compiler;
+		private final Charset charset;
+		private final StandardJavaFileManager fileManager;
+		private final JavaFileManager classLoaderFileManager;
+
+		public JavacEnvironment(ClassLoader builtProjectClassLoader, String sourceEncoding) {
+			// create it directly to avoid ClassLoader problems
+			compiler = JavacTool.create();
+			if (compiler == null) {
+				throw new STJSRuntimeException(
+						"A Java compiler is not available for this project. You may have configured your environment to run with JRE instead of a JDK");
+			}
+			charset = Charset.forName(sourceEncoding);
+			StandardJavaFileManager pooled = getPool(charset).poll();
+			fileManager = pooled == null ? compiler.getStandardFileManager(null, null, charset) : pooled;
+			classLoaderFileManager = new CustomClassloaderJavaFileManager(builtProjectClassLoader, fileManager);
+		}
+
+		private static Queue<StandardJavaFileManager> getPool(Charset charset) {
+			Queue<StandardJavaFileManager> pool = FILE_MANAGERS.get(charset);
+			if (pool == null) {
+				FILE_MANAGERS.putIfAbsent(charset, new ConcurrentLinkedQueue<StandardJavaFileManager>());
+				pool = FILE_MANAGERS.get(charset);
+			}
+			return pool;
+		}
+
+		/**
+		 * gives back the file manager to the pool, or closes it if the pool is full
+		 */
+		public void release() {
+			Queue<StandardJavaFileManager> pool = getPool(charset);
+			try {
+				fileManager.flush();
+				if (pool.size() >= MAX_POOLED_FILE_MANAGERS || !pool.offer(fileManager)) {
+					fileManager.close();
+				}
+			}
+			catch (IOException e) {
+				LOG.log(Level.SEVERE, "IOException should not have been thrown.", e);
+			}
+		}
+	}
+
+	/**
+	 * generates a group of classes using a single javac task. An error in one of the files is kept and the generation continues with the
+	 * other files.
+	 */
+	private class GenerationWorker implements Callable<GenerationWorker> {
+		private final List<Map.Entry<File, Class<?>>> javaClasses;
+		private final File sourceFolder;
+		private final List<ClassWithJavascript> generatedClasses = new ArrayList<ClassWithJavascript>();
+		private final List<JavascriptFileGenerationException> errors = new ArrayList<JavascriptFileGenerationException>();
+
+		public GenerationWorker(List<Map.Entry<File, Class<?>>> javaClasses, File sourceFolder) {
+			this.javaClasses = javaClasses;
+			this.sourceFolder = sourceFolder;
+		}
+
+		@Override
+		@SuppressWarnings({ "PMD.AvoidCatchingThrowable", "PMD.AvoidCatchingGenericException" })
+		// a failing file must not stop the generation of the others, so any exception is caught and reported for that file
+		public GenerationWorker call() {
+			Map<File, GenerationContext<Object>> contexts = new LinkedHashMap<File, GenerationContext<Object>>();
+			for (Map.Entry<File, Class<?>> entry : javaClasses) {
+				contexts.put(entry.getKey(), newContext(entry.getKey()));
+			}
+
+			boolean resolved;
+			try {
+				parseAndResolve(contexts);
+				resolved = true;
+			}
+			catch (Throwable e) {
+				LOG.log(Level.FINE, "Cannot parse the Java files in a single task", e);
+				resolved = false;
+			}
+
+			for (Map.Entry<File, Class<?>> entry : javaClasses) {
+				Class<?> clazz = entry.getValue();
+				try {
+					if (resolved) {
+						GenerationContext<Object> context = contexts.get(entry.getKey());
+						generatedClasses.add(generateJavascript(clazz.getName(), clazz, context.getCompilationUnit(), context));
+					} else {
+						// the group could not be analyzed as a whole - process each file on its own to find the faulty ones
+						generatedClasses.add(generateJavascript(clazz.getName(), sourceFolder));
+					}
+				}
+				catch (RuntimeException e) {
+					addError(errors, entry.getKey(), e);
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * renders the generated files in memory and queues them to be written by the {@link GeneratedFilesWriter}.
+	 */
 	private class DumpFilesTask<JS> implements Runnable {
 		private final File outputFile;
 		private final GenerationContext<JS> context;
 		private final JS javascriptRoot;
 		private final STJSClass stjsClass;
+		private final Charset charset;
 
 		public DumpFilesTask(File outputFile, GenerationContext<JS> context, JS javascriptRoot, STJSClass stjsClass) {
 			this.outputFile = outputFile;
 			this.context = context;
 			this.javascriptRoot = javascriptRoot;
 			this.stjsClass = stjsClass;
+			this.charset = Charset.forName(config.getSourceEncoding());
 		}
 
 		@Override
 		public void run() {
-			writeJavaScript();
-			writePropertiesFile();
-			writeSourceMap();
+			GeneratedFilesWriter.Output output = new GeneratedFilesWriter.Output(context.getInputFile());
+			writeJavaScript(output);
+			byte[] properties = writePropertiesFile(output);
+			writeSourceMap(output, properties);
+			filesWriter.write(output);
 		}
 
-		private void writeJavaScript() {
-			BufferedWriter writer = null;
-			try {
-				Timers.start("dump-js");
-				writer = Files.newWriter(outputFile, Charset.forName(config.getSourceEncoding()));
-				context.writeJavaScript(javascriptRoot, writer);
-				writer.flush();
-				Timers.end("dump-js");
-			}
-			catch (IOException e) {
-				throw new STJSRuntimeException("Could not open output file " + outputFile + ":" + e, e);
-			}
-			finally {
-				try {
-					Closeables.close(writer, true);
-				}
-				catch (IOException e) {
-					LOG.log(Level.SEVERE, "IOException should not have been thrown.", e);
-				}
-			}
+		private void writeJavaScript(GeneratedFilesWriter.Output output) {
+			Timers.start("render-js");
+			StringWriter writer = new StringWriter();
+			context.writeJavaScript(javascriptRoot, writer);
+			output.content(outputFile, writer.toString().getBytes(charset));
+			Timers.end("render-js");
 		}
 
 		// write properties
 
-		private void writePropertiesFile() {
-			Timers.start("write-props");
-			stjsClass.store();
-			Timers.end("write-props");
+		private byte[] writePropertiesFile(GeneratedFilesWriter.Output output) {
+			StringWriter writer = new StringWriter();
+			try {
+				stjsClass.store(writer);
+			}
+			catch (IOException e) {
+				throw new JavascriptClassGenerationException(stjsClass.getJavaClassName(), "Could not write the properties file:" + e, e);
+			}
+			byte[] properties = writer.toString().getBytes(Charsets.UTF_8);
+			output.content(stjsClass.getStjsPropertiesFile(), properties);
+			return properties;
 		}
 
-		private void writeSourceMap() {
+		private void writeSourceMap(GeneratedFilesWriter.Output output, byte[] properties) {
 			if (config.isGenerateSourceMap()) {
-				BufferedWriter sourceMapWriter = null;
-
+				StringWriter sourceMapWriter = new StringWriter();
 				try {
 					// write the source map
-					sourceMapWriter = Files.newWriter(getSourceMapFile(stjsClass.getJavaClassName()), Charset.forName(config.getSourceEncoding()));
 					context.writeSourceMap(sourceMapWriter);
-					sourceMapWriter.flush();
-
-					// copy the source aside the generated js to be able to have it delivered to the browser for
-					// debugging
-					Files.copy(context.getInputFile(), new File(outputFile.getParentFile(), context.getInputFile().getName()));
-					// copy the STJS properties file in the same folder as the Javascript file (if this folder is
-					// different
-					// to be
-					// able to do backward analysis: i.e fine the class name corresponding to a JS)
-					File stjsPropFile = stjsClass.getStjsPropertiesFile();
-					File copyStjsPropFile = new File(config.getGenerationFolder().getGeneratedSourcesAbsolutePath(),
-							ClassUtils.getPropertiesFileName(stjsClass.getJavaClassName()));
-					if (!stjsPropFile.equals(copyStjsPropFile)) {
-						Files.copy(stjsPropFile, copyStjsPropFile);
-					}
 				}
 				catch (IOException e) {
 					throw new STJSRuntimeException("Could generate source map:" + e, e);
 				}
-				finally {
-					if (sourceMapWriter != null) {
-						try {
-							Closeables.close(sourceMapWriter, true);
-						}
-						catch (IOException e) {
-							LOG.log(Level.SEVERE, "IOException should not have been thrown.", e);
-						}
-					}
+				output.content(getSourceMapFile(stjsClass.getJavaClassName()), sourceMapWriter.toString().getBytes(charset));
+
+				// copy the source aside the generated js to be able to have it delivered to the browser for
+				// debugging
+				output.copy(context.getInputFile(), new File(outputFile.getParentFile(), context.getInputFile().getName()));
+				// write the STJS properties file also in the same folder as the Javascript file (if this folder is
+				// different to be able to do backward analysis: i.e fine the class name corresponding to a JS)
+				File stjsPropFile = stjsClass.getStjsPropertiesFile();
+				File copyStjsPropFile = new File(config.getGenerationFolder().getGeneratedSourcesAbsolutePath(),
+						ClassUtils.getPropertiesFileName(stjsClass.getJavaClassName()));
+				if (!stjsPropFile.equals(copyStjsPropFile)) {
+					output.content(copyStjsPropFile, properties);
 				}
 			}
 		}
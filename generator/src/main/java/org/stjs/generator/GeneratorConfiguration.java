@@ -20,6 +20,11 @@ public class GeneratorConfiguration {
 	private final Collection<String> allowedPackages;
 	private final Set<String> allowedJavaLangClasses;
 	private final boolean generateArrayHasOwnProperty;
+	private final boolean generateArrayIndexedLoops;
+	private final boolean hoistAnonymousClasses;
+	private final boolean intPrecise;
+	private final boolean initializeFieldsInConstructor;
+	private final boolean inlineConstants;
 	private final boolean generateSourceMap;
 	private final String sourceEncoding;
 	private final Set<String> annotations;
@@ -27,15 +32,21 @@ public class GeneratorConfiguration {
 	private final File targetFolder;
 	private final GenerationDirectory generationFolder;
 	private final ClassResolver classResolver;
+	private final int threads;
+	private final boolean singlePass;
+	private final boolean stringJavaScriptBuilder;
 
 	// We actually have a builder for that, so the number of parameters warning doesn't apply
 	@SuppressWarnings("PMD.ExcessiveParameterList")
 	GeneratorConfiguration(Collection<String> allowedPackages, Set<String> allowedJavaLangClasses, boolean generateArrayHasOwnProperty,
-			boolean generateSourceMap, String sourceEncoding, Set<String> annotations, ClassLoader stjsClassLoader, File targetFolder,
-			GenerationDirectory generationFolder, ClassResolver classResolver) {
+			boolean generateArrayIndexedLoops, boolean generateSourceMap, String sourceEncoding, Set<String> annotations,
+			ClassLoader stjsClassLoader, File targetFolder, GenerationDirectory generationFolder, ClassResolver classResolver, int threads,
+			boolean singlePass, boolean stringJavaScriptBuilder, boolean hoistAnonymousClasses,
+			boolean intPrecise, boolean initializeFieldsInConstructor, boolean inlineConstants) {
 		this.allowedPackages = allowedPackages;
 		this.allowedJavaLangClasses = allowedJavaLangClasses;
 		this.generateArrayHasOwnProperty = generateArrayHasOwnProperty;
+		this.generateArrayIndexedLoops = generateArrayIndexedLoops;
 		this.generateSourceMap = generateSourceMap;
 		this.sourceEncoding = sourceEncoding;
 		this.annotations = annotations;
@@ -43,6 +54,13 @@ public class GeneratorConfiguration {
 		this.targetFolder = targetFolder;
 		this.generationFolder = generationFolder;
 		this.classResolver = classResolver;
+		this.threads = threads;
+		this.singlePass = singlePass;
+		this.stringJavaScriptBuilder = stringJavaScriptBuilder;
+		this.hoistAnonymousClasses = hoistAnonymousClasses;
+		this.intPrecise = intPrecise;
+		this.initializeFieldsInConstructor = initializeFieldsInConstructor;
+		this.inlineConstants = inlineConstants;
 	}
 
 	/**
@@ -61,6 +79,14 @@ public class GeneratorConfiguration {
 		return generateArrayHasOwnProperty;
 	}
 
+	/**
+	 * @return true if the enhanced for loops on an Array are generated as loops on the indexes, with the length read once, instead of
+	 *         for-in loops. Unlike the for-in loops, they visit the holes of the sparse arrays.
+	 */
+	public boolean isGenerateArrayIndexedLoops() {
+		return generateArrayIndexedLoops;
+	}
+
 	public boolean isGenerateSourceMap() {
 		return generateSourceMap;
 	}
@@ -92,4 +118,61 @@ public class GeneratorConfiguration {
 	public ClassResolver getClassResolver() {
 		return classResolver;
 	}
+
+	/**
+	 * @return the number of threads used to generate the Javascript files of a batch
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return true if the Java code is checked while the JavaScript code is written, in a single traversal of each file, instead of
+	 *         being checked before
+	 */
+	public boolean isSinglePass() {
+		return singlePass;
+	}
+
+	/**
+	 * @return true if the JavaScript code is built directly as text, instead of being built as a rhino AST and written afterwards. Both
+	 *         ways generate the same code.
+	 */
+	public boolean isStringJavaScriptBuilder() {
+		return stringJavaScriptBuilder;
+	}
+
+	/**
+	 * @return true if the anonymous classes that use no variable of their enclosing methods are defined only once, when they are first
+	 *         created, instead of each time
+	 */
+	public boolean isHoistAnonymousClasses() {
+		return hoistAnonymousClasses;
+	}
+
+	/**
+	 * @return true if the operations on int values are generated so their result is an int that overflows as in Java: the sums,
+	 *         differences, divisions and casts are coerced with "| 0" and the products use Math.imul. The operations on long values are
+	 *         truncated by stjs.trunc as before.
+	 */
+	public boolean isIntPrecise() {
+		return intPrecise;
+	}
+
+	/**
+	 * @return true if the constructors also assign all the instance fields, in their declaration order and the ones of the super classes
+	 *         first, so all the objects of a class get their properties in the same order and share the same hidden class in the
+	 *         JavaScript engines. The default values of the fields are kept in the prototype.
+	 */
+	public boolean isInitializeFieldsInConstructor() {
+		return initializeFieldsInConstructor;
+	}
+
+	/**
+	 * @return true if the references to the static constants of primitive or String type are replaced by their value, as are the
+	 *         operations whose operands are all constants
+	 */
+	public boolean isInlineConstants() {
+		return inlineConstants;
+	}
 }
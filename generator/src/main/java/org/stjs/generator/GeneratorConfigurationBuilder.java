@@ -29,12 +29,20 @@ public class GeneratorConfigurationBuilder {
 	private final Set<String> allowedJavaLangClasses = new HashSet<String>();
 	private final Set<String> annotations = new HashSet<String>();
 	private boolean generateArrayHasOwnProperty = true;
+	private boolean generateArrayIndexedLoops;
 	private boolean generateSourceMap;
 	private String sourceEncoding = Charset.defaultCharset().name();
 	private ClassLoader stjsClassLoader;
 	private File targetFolder;
 	private GenerationDirectory generationFolder;
 	private ClassResolver classResolver;
+	private int threads = 1;
+	private boolean singlePass;
+	private boolean stringJavaScriptBuilder;
+	private boolean hoistAnonymousClasses;
+	private boolean intPrecise;
+	private boolean initializeFieldsInConstructor;
+	private boolean inlineConstants;
 
 	public GeneratorConfigurationBuilder() {
 		// Set a default value for the source encoding.
@@ -48,12 +56,20 @@ public class GeneratorConfigurationBuilder {
 			allowedJavaLangClasses(baseConfig.getAllowedJavaLangClasses());
 			annotations(baseConfig.getAnnotations());
 			generateArrayHasOwnProperty(baseConfig.isGenerateArrayHasOwnProperty());
+			generateArrayIndexedLoops(baseConfig.isGenerateArrayIndexedLoops());
 			generateSourceMap(baseConfig.isGenerateSourceMap());
 			sourceEncoding(baseConfig.getSourceEncoding());
 			stjsClassLoader(baseConfig.getStjsClassLoader());
 			targetFolder(baseConfig.getTargetFolder());
 			generationFolder(baseConfig.getGenerationFolder());
 			classResolver(baseConfig.getClassResolver());
+			threads(baseConfig.getThreads());
+			singlePass(baseConfig.isSinglePass());
+			stringJavaScriptBuilder(baseConfig.isStringJavaScriptBuilder());
+			hoistAnonymousClasses(baseConfig.isHoistAnonymousClasses());
+			intPrecise(baseConfig.isIntPrecise());
+			initializeFieldsInConstructor(baseConfig.isInitializeFieldsInConstructor());
+			inlineConstants(baseConfig.isInlineConstants());
 		}
 	}
 
@@ -82,6 +98,11 @@ public class GeneratorConfigurationBuilder {
 		return this;
 	}
 
+	public GeneratorConfigurationBuilder generateArrayIndexedLoops(boolean b) {
+		generateArrayIndexedLoops = b;
+		return this;
+	}
+
 	public GeneratorConfigurationBuilder generateSourceMap(boolean b) {
 		generateSourceMap = b;
 		return this;
@@ -122,6 +143,41 @@ public class GeneratorConfigurationBuilder {
 		return this;
 	}
 
+	public GeneratorConfigurationBuilder threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder singlePass(boolean b) {
+		singlePass = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder stringJavaScriptBuilder(boolean b) {
+		stringJavaScriptBuilder = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder hoistAnonymousClasses(boolean b) {
+		hoistAnonymousClasses = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder intPrecise(boolean b) {
+		intPrecise = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder initializeFieldsInConstructor(boolean b) {
+		initializeFieldsInConstructor = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder inlineConstants(boolean b) {
+		inlineConstants = b;
+		return this;
+	}
+
 	public GeneratorConfiguration build() {
 		allowedJavaLangClasses.add("Object");
 		allowedJavaLangClasses.add("Class");
@@ -148,13 +204,21 @@ public class GeneratorConfigurationBuilder {
 				allowedPackages,  //
 				allowedJavaLangClasses, //
 				generateArrayHasOwnProperty, //
+				generateArrayIndexedLoops, //
 				generateSourceMap, //
 				sourceEncoding,  //
 				annotations,  //
 				stjsClassLoader,  //
 				targetFolder,  //
 				generationFolder, //
-				classResolver == null ? new DefaultClassResolver(stjsClassLoader) : classResolver //
+				classResolver == null ? new DefaultClassResolver(stjsClassLoader) : classResolver, //
+				Math.max(1, threads), //
+				singlePass, //
+				stringJavaScriptBuilder, //
+				hoistAnonymousClasses, //
+				intPrecise, //
+				initializeFieldsInConstructor, //
+				inlineConstants //
 		);
 	}
 
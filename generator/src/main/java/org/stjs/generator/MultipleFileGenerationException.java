@@ -1,18 +1,33 @@
 package org.stjs.generator;
 
+import java.util.Collections;
 import java.util.List;
 
 public class MultipleFileGenerationException extends JavascriptFileGenerationException {
 	private static final long serialVersionUID = 1L;
 	private final List<JavascriptFileGenerationException> exceptions;
+	@edu.umd.cs.findbugs.annotations.SuppressWarnings(value = "SE_BAD_FIELD", justification = "this exception is not meant to be serialized")
+	private final List<ClassWithJavascript> generatedClasses;
 
 	public MultipleFileGenerationException(List<JavascriptFileGenerationException> exceptions) {
+		this(exceptions, Collections.<ClassWithJavascript> emptyList());
+	}
+
+	public MultipleFileGenerationException(List<JavascriptFileGenerationException> exceptions, List<ClassWithJavascript> generatedClasses) {
 		super(exceptions.get(0).getSourcePosition(), exceptions.get(0).getMessage(), exceptions.get(0).getCause());
 		this.exceptions = exceptions;
+		this.generatedClasses = generatedClasses;
 	}
 
 	public List<JavascriptFileGenerationException> getExceptions() {
 		return exceptions;
 	}
 
+	/**
+	 * @return the classes that were generated successfully, when the exception is thrown by a batch generation
+	 */
+	public List<ClassWithJavascript> getGeneratedClasses() {
+		return generatedClasses;
+	}
+
 }
@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import org.stjs.generator.name.DependencyType;
@@ -52,6 +53,7 @@ public class STJSClass implements ClassWithJavascript {
 	public static final String CLASS_PROP = "class";
 	private static final String GENERATED_JS_FILE_PROP = "js";
 	public static final String JS_NAMESPACE = "jsNamespace";
+	private static final String MAIN_METHOD_PROP = "main";
 
 	private final Properties properties;
 
@@ -61,6 +63,8 @@ public class STJSClass implements ClassWithJavascript {
 	private Map<ClassWithJavascript, DependencyType> directDependenciesMap;
 	// null means namespace is unknown, empty string means no namespace
 	private String javascriptNamespace;
+	private boolean mainMethod;
+	private Map<String, String> constants = Collections.emptyMap();
 
 	private URI generatedJavascriptFile;
 
@@ -101,6 +105,8 @@ public class STJSClass implements ClassWithJavascript {
 		// js file
 		generatedJavascriptFile = readGeneratedJavascriptFileProperty();
 
+		mainMethod = Boolean.parseBoolean(properties.getProperty(MAIN_METHOD_PROP));
+
 		javascriptNamespace = readJavascriptNamespaceProperty();
 		if (javascriptNamespace == null) {
 			// Old versions of ST-JS did not set the jsNamespace property, so we must look into the compiled
@@ -110,20 +116,31 @@ public class STJSClass implements ClassWithJavascript {
 	}
 
 	private Properties loadProperties(ClassLoader classLoader) {
+		if (javaClass.getClassLoader() instanceof ClasspathCache.LibrariesClassLoader) {
+			// the .stjs files of the libraries are read once for all the generations
+			return ((ClasspathCache.LibrariesClassLoader) javaClass.getClassLoader()).getStjsProperties(getJavaClassName());
+		}
+		return loadProperties(classLoader, getJavaClassName());
+	}
+
+	/**
+	 * reads the .stjs properties file of the given class
+	 */
+	public static Properties loadProperties(ClassLoader classLoader, String className) {
 		Properties props = new Properties();
 
 		InputStream inputStream = null;
 		try {
-			inputStream = classLoader.getResourceAsStream(ClassUtils.getPropertiesFileName(getJavaClassName()));
+			inputStream = classLoader.getResourceAsStream(ClassUtils.getPropertiesFileName(className));
 			if (inputStream == null) {
-				LOG.severe("CANNOT find:" + ClassUtils.getPropertiesFileName(getJavaClassName()) + " clazz:"
-						+ classLoader.getResource(ClassUtils.getPropertiesFileName(getJavaClassName())));
+				LOG.severe("CANNOT find:" + ClassUtils.getPropertiesFileName(className) + " clazz:"
+						+ classLoader.getResource(ClassUtils.getPropertiesFileName(className)));
 			} else {
 				props.load(inputStream);
 			}
 		}
 		catch (IOException e) {
-			throw new JavascriptClassGenerationException(getJavaClassName(), e);
+			throw new JavascriptClassGenerationException(className, e);
 		}
 		finally {
 			Closeables.closeQuietly(inputStream);
@@ -192,7 +209,7 @@ public class STJSClass implements ClassWithJavascript {
 
 	public File getStjsPropertiesFile() {
 		File propFile = new File(targetFolder, ClassUtils.getPropertiesFileName(getJavaClassName()));
-		if (!propFile.getParentFile().exists() && !propFile.getParentFile().mkdirs()) {
+		if (!propFile.getParentFile().mkdirs() && !propFile.getParentFile().isDirectory()) {
 			throw new JavascriptClassGenerationException(getJavaClassName(), "Unable to create parent folder for the properties file:" + propFile);
 		}
 		return propFile;
@@ -205,8 +222,7 @@ public class STJSClass implements ClassWithJavascript {
 		Writer propertiesWriter = null;
 		try {
 			propertiesWriter = Files.newWriter(getStjsPropertiesFile(), Charsets.UTF_8);
-			properties.setProperty(CLASS_PROP, getJavaClassName());
-			properties.store(propertiesWriter, "Generated by STJS ");
+			store(propertiesWriter);
 		}
 		catch (IOException e1) {
 			throw new JavascriptClassGenerationException(getJavaClassName(), "Could not open properties file " + getStjsPropertiesFile() + ":" + e1, e1);
@@ -224,6 +240,14 @@ public class STJSClass implements ClassWithJavascript {
 		}
 	}
 
+	/**
+	 * writes the content of the .stjs properties file to the given writer
+	 */
+	public void store(Writer writer) throws IOException {
+		properties.setProperty(CLASS_PROP, getJavaClassName());
+		properties.store(writer, "Generated by STJS ");
+	}
+
 	public void setJavascriptNamespace(String jsNamespace) {
 		this.javascriptNamespace = jsNamespace;
 		properties.put(JS_NAMESPACE, jsNamespace);
@@ -242,6 +266,13 @@ public class STJSClass implements ClassWithJavascript {
 		}
 	}
 
+	/**
+	 * @return the names of the classes this class depends on, with the type of each dependency
+	 */
+	public Map<String, DependencyType> getDependencies() {
+		return Collections.unmodifiableMap(dependencies);
+	}
+
 	public void setGeneratedJavascriptFile(URI generatedJavascriptFile) {
 		this.generatedJavascriptFile = generatedJavascriptFile;
 		if (generatedJavascriptFile == null) {
@@ -277,6 +308,36 @@ public class STJSClass implements ClassWithJavascript {
 		return this.javascriptNamespace;
 	}
 
+	/**
+	 * @param mainMethod
+	 *            true if the class, or one of its inner classes, has a main method, called when the generated file is loaded
+	 */
+	public void setMainMethod(boolean mainMethod) {
+		this.mainMethod = mainMethod;
+		if (mainMethod) {
+			properties.put(MAIN_METHOD_PROP, Boolean.TRUE.toString());
+		} else {
+			properties.remove(MAIN_METHOD_PROP);
+		}
+	}
+
+	public boolean hasMainMethod() {
+		return mainMethod;
+	}
+
+	/**
+	 * @param constants
+	 *            the values of the constants of the class that the other classes inline, by field name. They are known only when the
+	 *            class is generated, so they are not stored in the .stjs file.
+	 */
+	public void setConstants(Map<String, String> constants) {
+		this.constants = new TreeMap<String, String>(constants);
+	}
+
+	public Map<String, String> getConstants() {
+		return Collections.unmodifiableMap(constants);
+	}
+
 	@Override
 	public List<URI> getJavascriptFiles() {
 		if (generatedJavascriptFile == null) {
@@ -219,6 +219,15 @@ public final class InternalUtils {
 		return ((JCTree) tree).type;
 	}
 
+	/**
+	 * Returns the value computed by javac for a constant expression, or null if the expression is not constant. As in javac, the boolean
+	 * and char values are given as Integer.
+	 */
+	public static/* @Nullable */Object constantValue(Tree tree) {
+		Type type = ((JCTree) tree).type;
+		return type == null ? null : type.constValue();
+	}
+
 	/**
 	 * Returns whether a TypeVariable represents a captured type.
 	 */
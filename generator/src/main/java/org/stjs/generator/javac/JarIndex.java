@@ -0,0 +1,112 @@
+package org.stjs.generator.javac;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.tools.JavaFileObject;
+
+import org.stjs.generator.ClasspathCache;
+
+/**
+ * the classes of a jar, grouped by package. The jar is read once, then javac's questions about its packages are answered from the index.
+ * The indexes of the local jars are kept with the jars in the {@link ClasspathCache}, so they are shared by all the file managers of the
+ * JVM and a jar is read again only when its size or modification date changes.
+ */
+public final class JarIndex {
+	private static final String CLASS_FILE_EXTENSION = ".class";
+
+	private final Map<String, List<JavaFileObject>> filesByPackage = new HashMap<String, List<JavaFileObject>>();
+
+	/**
+	 * @param jarUri
+	 *            the URI of the jar, used to build the URIs of its classes, e.g. jar:file:/lib/stjs.jar
+	 * @param jarFile
+	 *            the opened jar, or null for a file that is not a jar
+	 */
+	public JarIndex(String jarUri, JarFile jarFile) {
+		if (jarFile == null) {
+			return;
+		}
+		Enumeration<JarEntry> entryEnum = jarFile.entries();
+		while (entryEnum.hasMoreElements()) {
+			String name = entryEnum.nextElement().getName();
+			if (name.endsWith(CLASS_FILE_EXTENSION)) {
+				String binaryName = name.substring(0, name.length() - CLASS_FILE_EXTENSION.length()).replace('/', '.');
+				getPackageFiles(name).add(new CustomJavaFileObject(binaryName, URI.create(jarUri + "!/" + name)));
+			}
+		}
+	}
+
+	private List<JavaFileObject> getPackageFiles(String entryName) {
+		int lastSlash = entryName.lastIndexOf('/');
+		String packagePath = lastSlash < 0 ? "" : entryName.substring(0, lastSlash);
+		List<JavaFileObject> files = filesByPackage.get(packagePath);
+		if (files == null) {
+			files = new ArrayList<JavaFileObject>();
+			filesByPackage.put(packagePath, files);
+		}
+		return files;
+	}
+
+	/**
+	 * @return the index of the jar the given connection points to
+	 */
+	public static JarIndex get(JarURLConnection jarConn) throws IOException {
+		URL jarUrl = jarConn.getJarFileURL();
+		File file = toFile(jarUrl);
+		if (file == null) {
+			// the jars that are not local files cannot be checked for changes, so they are not cached
+			return new JarIndex("jar:" + jarUrl.toExternalForm(), jarConn.getJarFile());
+		}
+		return ClasspathCache.getShared().getPackageIndex(file);
+	}
+
+	private static File toFile(URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		}
+		catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param packagePath
+	 *            the path of the package inside the jar, e.g. org/stjs/javascript
+	 * @return the classes of the given package and, if recursive is true, of its sub-packages
+	 */
+	public List<JavaFileObject> list(String packagePath, boolean recursive) {
+		String path = packagePath.endsWith("/") ? packagePath.substring(0, packagePath.length() - 1) : packagePath;
+		if (recursive) {
+			return listRecursive(path);
+		}
+		List<JavaFileObject> files = filesByPackage.get(path);
+		return files == null ? Collections.<JavaFileObject> emptyList() : files;
+	}
+
+	private List<JavaFileObject> listRecursive(String path) {
+		String subPackagePrefix = path + "/";
+		List<JavaFileObject> files = new ArrayList<JavaFileObject>();
+		for (Map.Entry<String, List<JavaFileObject>> entry : filesByPackage.entrySet()) {
+			if (entry.getKey().equals(path) || entry.getKey().startsWith(subPackagePrefix)) {
+				files.addAll(entry.getValue());
+			}
+		}
+		return files;
+	}
+}
@@ -3,7 +3,6 @@ package org.stjs.generator.javac;
 import java.io.File;
 import java.io.IOException;
 import java.net.JarURLConnection;
-import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
@@ -12,7 +11,6 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
 
 import javax.tools.JavaFileObject;
 
@@ -37,7 +35,7 @@ public class PackageInternalsFinder {
 	}
 
 	public List<JavaFileObject> find(String packageName, boolean recursive) throws IOException {
-		String javaPackageName = packageName.replaceAll("\\.", "/");
+		String javaPackageName = packageName.replace('.', '/');
 
 		List<JavaFileObject> result = cachePackageEntries.get(javaPackageName);
 		if (result != null) {
@@ -65,43 +63,20 @@ public class PackageInternalsFinder {
 		} // maybe there can be something else for more involved class loaders
 	}
 
-	private void addFileObject(String jarUri, String name, String rootEntryName, int rootEnd, List<JavaFileObject> result, boolean recursive) {
-		boolean acceptCurrentFolder = recursive || name.indexOf('/', rootEnd) == -1;
-		if (acceptCurrentFolder && name.startsWith(rootEntryName) && name.endsWith(CLASS_FILE_EXTENSION)) {
-			URI uri = URI.create(jarUri + "!/" + name);
-			String binaryName = name.replaceAll("/", ".");
-			binaryName = binaryName.replaceAll(CLASS_FILE_EXTENSION + "$", "");
-
-			result.add(new CustomJavaFileObject(binaryName, uri));
-		}
-	}
-
 	private List<JavaFileObject> processJar(URL packageFolderURL, boolean recursive) {
-		List<JavaFileObject> result = new ArrayList<JavaFileObject>();
-
 		try {
-
 			URLConnection urlConnection = packageFolderURL.openConnection();
 			if (!(urlConnection instanceof JarURLConnection)) {
 				// weird file in the classpath
 				return Collections.emptyList();
 			}
-			String jarUri = packageFolderURL.toExternalForm().split("!")[0];
 			JarURLConnection jarConn = (JarURLConnection) urlConnection;
-			String rootEntryName = jarConn.getEntryName();
-			int rootEnd = rootEntryName.length() + 1;
-
-			Enumeration<JarEntry> entryEnum = jarConn.getJarFile().entries();
-			while (entryEnum.hasMoreElements()) {
-				JarEntry jarEntry = entryEnum.nextElement();
-				String name = jarEntry.getName();
-				addFileObject(jarUri, name, rootEntryName, rootEnd, result, recursive);
-			}
+			// the jar is read only once, for all its packages
+			return JarIndex.get(jarConn).list(jarConn.getEntryName(), recursive);
 		}
 		catch (IOException e) {
 			throw new STJSRuntimeException("Wasn't able to open " + packageFolderURL + " as a jar file", e);
 		}
-		return result;
 	}
 
 	private List<JavaFileObject> processDir(String packageName, File directory, boolean recursive) {
@@ -113,8 +88,8 @@ public class PackageInternalsFinder {
 		for (File childFile : childFiles) {
 			if (childFile.isFile() && childFile.getName().endsWith(CLASS_FILE_EXTENSION)) {
 				// We only want the .class files.
-				String binaryName = packageName + "." + childFile.getName();
-				binaryName = binaryName.replaceAll(CLASS_FILE_EXTENSION + "$", "");
+				String fileName = childFile.getName();
+				String binaryName = packageName + "." + fileName.substring(0, fileName.length() - CLASS_FILE_EXTENSION.length());
 
 				result.add(new CustomJavaFileObject(binaryName, childFile.toURI()));
 			} else if (recursive && childFile.isDirectory()) {
@@ -0,0 +1,240 @@
+package org.stjs.generator.javascript;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.stjs.generator.STJSRuntimeException;
+
+import com.google.debugging.sourcemap.FilePosition;
+import com.google.debugging.sourcemap.SourceMapFormat;
+import com.google.debugging.sourcemap.SourceMapGenerator;
+import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
+
+/**
+ * This class prints the JavaScript code for the writers of the builders: it indents the lines, prints the comments and, if needed, builds
+ * the source map linking the statements to their Java source. All the builders share it, so they generate exactly the same code.
+ * <p>
+ * The code is collected in a buffer that is written to the underlying writer only when it is full, so {@link #flush()} must be called
+ * once the code is printed.
+ */
+public class JavaScriptPrinter {
+	private static final String LINE_JAVA_DOC = " * ";
+	private static final String INDENT = "    ";
+	private static final String START_JAVA_DOC = "/**";
+	private static final String END_JAVA_DOC = " */";
+	private static final int BUFFER_SIZE = 8192;
+	private static final int CACHED_INDENTS = 16;
+	private static final String[] INDENTS = buildIndents();
+
+	private int level;
+
+	private boolean indented;
+
+	private final Writer writer;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int bufferLength;
+
+	private int currentLine;
+	private int currentColumn;
+
+	private final SourceMapGenerator sourceMapGenerator;
+	private final boolean generateSourceMap;
+	private final File inputFile;
+
+	private FilePosition javaPosition;
+	private FilePosition javaScriptPosition;
+
+	public JavaScriptPrinter(Writer writer, File inputFile, boolean generateSourceMap) {
+		this.writer = writer;
+		this.inputFile = inputFile;
+		this.generateSourceMap = generateSourceMap;
+		this.sourceMapGenerator = generateSourceMap ? SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3) : null;
+	}
+
+	private static String[] buildIndents() {
+		String[] indents = new String[CACHED_INDENTS];
+		indents[0] = "";
+		for (int i = 1; i < CACHED_INDENTS; ++i) {
+			indents[i] = indents[i - 1] + INDENT;
+		}
+		return indents;
+	}
+
+	public JavaScriptPrinter indent() {
+		level++;
+		return this;
+	}
+
+	public JavaScriptPrinter unindent() {
+		level--;
+		return this;
+	}
+
+	private void makeIndent() {
+		for (int i = level; i > 0; i -= CACHED_INDENTS - 1) {
+			String indent = INDENTS[Math.min(i, CACHED_INDENTS - 1)];
+			append(indent);
+			currentColumn += indent.length();
+		}
+	}
+
+	private void append(String s) {
+		int length = s.length();
+		for (int start = 0; start < length;) {
+			if (bufferLength == buffer.length) {
+				flush();
+			}
+			int count = Math.min(length - start, buffer.length - bufferLength);
+			s.getChars(start, start + count, buffer, bufferLength);
+			bufferLength += count;
+			start += count;
+		}
+	}
+
+	private void append(char c) {
+		if (bufferLength == buffer.length) {
+			flush();
+		}
+		buffer[bufferLength++] = c;
+	}
+
+	/**
+	 * writes the printed code to the underlying writer
+	 */
+	public void flush() {
+		try {
+			writer.write(buffer, 0, bufferLength);
+		}
+		catch (IOException e) {
+			throw new STJSRuntimeException("Writing problem:" + e, e);
+		}
+		bufferLength = 0;
+	}
+
+	public JavaScriptPrinter print(String arg) {
+		if (!indented) {
+			makeIndent();
+			indented = true;
+		}
+		append(arg);
+		// the code fragments may contain several lines
+		int lastNewLine = arg.lastIndexOf('\n');
+		if (lastNewLine < 0) {
+			currentColumn += arg.length();
+		} else {
+			for (int i = lastNewLine; i >= 0; i = arg.lastIndexOf('\n', i - 1)) {
+				currentLine++;
+			}
+			currentColumn = arg.length() - lastNewLine - 1;
+		}
+		return this;
+	}
+
+	/**
+	 * prints the given comment, if any, as a JavaDoc comment
+	 */
+	public JavaScriptPrinter printComments(String comment) {
+		if (comment != null) {
+			println(START_JAVA_DOC);
+			printCommentLines(comment);
+			println(END_JAVA_DOC);
+		}
+		return this;
+	}
+
+	private void printCommentLines(String comment) {
+		// like String.split, the empty lines at the end are dropped
+		String text = stripTrailingNewLines(comment);
+		if (text.isEmpty() && !comment.isEmpty()) {
+			return;
+		}
+		for (int start = 0; start <= text.length();) {
+			int newLine = text.indexOf('\n', start);
+			int lineEnd = newLine < 0 ? text.length() : newLine;
+			print(LINE_JAVA_DOC).println(text.substring(start, lineEnd));
+			start = lineEnd + 1;
+		}
+	}
+
+	private static String stripTrailingNewLines(String s) {
+		int end = s.length();
+		while (end > 0 && s.charAt(end - 1) == '\n') {
+			end--;
+		}
+		return s.substring(0, end);
+	}
+
+	public JavaScriptPrinter println(String arg) {
+		print(arg);
+		println();
+		return this;
+	}
+
+	public JavaScriptPrinter println() {
+		append('\n');
+		indented = false;
+		currentLine++;
+		currentColumn = 0;
+		addMapping();
+		return this;
+	}
+
+	/**
+	 * marks the start of a statement, whose Java position is given (as returned by javac, starting at 1)
+	 */
+	public void startPosition(int javaLineNumber, int javaColumnNumber) {
+		if (generateSourceMap) {
+			javaPosition = new FilePosition(javaLineNumber - 1, javaColumnNumber - 1);
+			javaScriptPosition = new FilePosition(currentLine, currentColumn);
+		}
+	}
+
+	/**
+	 * this is only for statements on several lines to be able to catch end of inline function defintions
+	 */
+	public void endPosition(int javaEndLineNumber, int javaEndColumnNumber) {
+		if (generateSourceMap) {
+			boolean hasPosition = javaScriptPosition != null && javaScriptPosition.getLine() != currentLine;
+			if (hasPosition) {
+				javaPosition = new FilePosition(javaEndLineNumber - 1, javaEndColumnNumber - 1);
+				javaScriptPosition = new FilePosition(currentLine, currentColumn);
+			}
+		}
+	}
+
+	private void addMapping() {
+		if (generateSourceMap) {
+			FilePosition endJavaScriptPosition = new FilePosition(currentLine, currentColumn);
+			if (javaPosition != null && javaPosition.getLine() >= 0 && javaPosition.getColumn() >= 0) {
+				sourceMapGenerator.addMapping(inputFile.getName(), null, javaPosition, javaScriptPosition, endJavaScriptPosition);
+				javaPosition = null;
+			}
+		}
+	}
+
+	public void addSourceMapURL() {
+		if (generateSourceMap) {
+			addMapping();
+			print("//@ sourceMappingURL=").print(inputFile.getName().replaceAll("\\.java$", ".map"));
+		}
+	}
+
+	/**
+	 * @return the line of the next printed character, starting at 0
+	 */
+	public int getCurrentLine() {
+		return currentLine;
+	}
+
+	/**
+	 * @return the column of the next printed character, starting at 0
+	 */
+	public int getCurrentColumn() {
+		return currentColumn;
+	}
+
+	public SourceMapGenerator getSourceMapGenerator() {
+		return sourceMapGenerator;
+	}
+}
@@ -1,299 +1,447 @@
 package org.stjs.generator.javascript;
 
 import java.io.File;
+import java.io.StringWriter;
 import java.io.Writer;
-
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.AstNode;
+import org.stjs.generator.STJSRuntimeException;
+import org.stjs.generator.javascript.TextNode.Kind;
+import org.stjs.generator.javascript.TextNode.Op;
+
+import com.google.common.collect.Iterables;
 import com.google.debugging.sourcemap.SourceMapGenerator;
 
+/**
+ * this JavaScript builder builds the code directly as text, without the rhino AST nodes. The expressions are concatenated as soon as they
+ * are built, and only the statements keep their structure, needed to indent them and to build the source map. The generated code is
+ * exactly the one of the rhino builder.
+ */
 @SuppressWarnings("PMD.ExcessivePublicCount")
-public class StringJavaScriptBuilder implements JavaScriptBuilder<String> {
+public class StringJavaScriptBuilder implements JavaScriptBuilder<TextNode> {
 
-	@Override
-	public String asExpressionList(Iterable<String> nodes) {
-		// TODO Auto-generated method stub
-		return null;
+	private static TextNode text(Kind kind, String text) {
+		return TextNode.builder(kind).append(text).build();
+	}
+
+	private static TextNode.Builder statement(Kind kind) {
+		return TextNode.builder(kind).append(Op.START_POSITION);
+	}
+
+	private static void checkKind(TextNode node, Kind kind) {
+		if (node != null && node.getKind() != kind) {
+			throw new STJSRuntimeException("Received wrong JavaScript node type:" + node.getKind() + " instead of " + kind
+					+ ". This is probably a ST-JS bug. Please report it to our website");
+		}
 	}
 
 	@Override
-	public String block(Iterable<String> statements) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode name(CharSequence name) {
+		return text(Kind.NAME, name.toString());
 	}
 
 	@Override
-	public String elementGet(String target, String index) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode label(CharSequence name) {
+		return TextNode.builder(Kind.LABEL).append(name.toString().trim()).append(":").append(Op.NEWLINE).build();
 	}
 
 	@Override
-	public String expressionStatement(String expr) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode asExpressionList(Iterable<TextNode> nodes) {
+		return binary(BinaryOperator.COMMA, nodes);
 	}
 
 	@Override
-	public String array(Iterable<String> values) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode block(Iterable<TextNode> statements) {
+		return TextNode.container(Kind.BLOCK, statements);
 	}
 
 	@Override
-	public String string(String value) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode elementGet(TextNode target, TextNode index) {
+		return TextNode.builder(Kind.EXPRESSION).append(target).append("[").append(index).append("]").build();
 	}
 
 	@Override
-	public String paren(String expr) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode newExpression(TextNode target, Iterable<TextNode> arguments) {
+		return TextNode.builder(Kind.EXPRESSION).append("new ").append(target).append("(").appendList(arguments).append(")").build();
 	}
 
 	@Override
-	public String position(String node, int javaStartLineNumber, int javaStartColumnNumber, int javaEndLineNumber, int javaEndColumnNumber) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode array(Iterable<TextNode> values) {
+		return TextNode.builder(Kind.EXPRESSION).append("[").appendList(values).append("]").build();
 	}
 
 	@Override
-	public String breakStatement(String label) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode string(String value) {
+		return text(Kind.EXPRESSION, "\"" + ScriptRuntime.escapeString(value, '"') + "\"");
 	}
 
 	@Override
-	public String caseStatement(String expression, Iterable<String> statements) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode paren(TextNode expr) {
+		return TextNode.builder(Kind.EXPRESSION).append("(").append(expr).append(")").build();
 	}
 
 	@Override
-	public String catchClause(String contidion, String body) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode position(TextNode node, int javaStartLineNumber, int javaStartColumnNumber, int javaEndLineNumber,
+			int javaEndColumnNumber) {
+		node.setPosition(javaStartLineNumber, javaStartColumnNumber, javaEndLineNumber, javaEndColumnNumber);
+		return node;
 	}
 
 	@Override
-	public String continueStatement(String label) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode breakStatement(TextNode label) {
+		return jump("break", label);
 	}
 
 	@Override
-	public String function(String name, Iterable<String> params, String body) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode continueStatement(TextNode label) {
+		return jump("continue", label);
+	}
+
+	private TextNode jump(String keyword, TextNode label) {
+		checkKind(label, Kind.NAME);
+		TextNode.Builder b = statement(Kind.STATEMENT).append(keyword);
+		if (label != null) {
+			b.append(" ").append(label);
+		}
+		return b.append(";").append(Op.NEWLINE).build();
 	}
 
 	@Override
-	public String name(CharSequence name) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode caseStatement(TextNode expression, Iterable<TextNode> statements) {
+		TextNode.Builder b = TextNode.builder(Kind.CASE);
+		if (expression == null) {
+			b.append("default:");
+		} else {
+			b.append("case ").append(expression).append(":");
+		}
+		b.append(Op.NEWLINE).append(Op.INDENT);
+		for (TextNode stmt : statements) {
+			b.append(stmt);
+		}
+		return b.append(Op.UNINDENT).build();
 	}
 
 	@Override
-	public String newExpression(String target, Iterable<String> arguments) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode catchClause(TextNode varName, TextNode body) {
+		checkKind(varName, Kind.NAME);
+		return TextNode.builder(Kind.STATEMENT).append("catch (").append(varName).append(") ").append(asBlock(body)).build();
+	}
+
+	private TextNode asBlock(TextNode body) {
+		if (body != null && body.getKind() == Kind.BLOCK) {
+			return body;
+		}
+		return block(Collections.singletonList(body));
 	}
 
 	@Override
-	public String object(Iterable<NameValue<String>> props) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode function(String name, Iterable<TextNode> params, TextNode body) {
+		TextNode.Builder b = TextNode.builder(Kind.FUNCTION).append("function");
+		if (name != null) {
+			b.append(" ").append(name);
+		}
+		return b.append("(").appendList(params).append(") ").append(asBlock(body)).build();
 	}
 
 	@Override
-	public String doLoop(String condition, String body) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode object(Iterable<NameValue<TextNode>> props) {
+		TextNode.Builder b = TextNode.builder(Kind.EXPRESSION).append("{");
+		boolean first = true;
+		for (NameValue<TextNode> prop : props) {
+			if (!first) {
+				b.append(", ");
+			}
+			b.append(prop.getName().toString()).append(": ").append(prop.getValue());
+			first = false;
+		}
+		return b.append("}").build();
 	}
 
 	@Override
-	public String emptyStatement() {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode doLoop(TextNode condition, TextNode body) {
+		return statement(Kind.STATEMENT).append("do ").append(body).append(" while (").append(condition).append(");").append(Op.NEWLINE)
+				.build();
 	}
 
 	@Override
-	public String forInLoop(String iterator, String iterated, String body) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode emptyStatement() {
+		return statement(Kind.STATEMENT).append(";").append(Op.NEWLINE).build();
 	}
 
 	@Override
-	public String forLoop(String init, String condition, String update, String body) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode emptyExpression() {
+		return text(Kind.EMPTY_EXPRESSION, "");
 	}
 
 	@Override
-	public String ifStatement(String condition, String thenPart, String elsePart) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode forInLoop(TextNode iterator, TextNode iterated, TextNode body) {
+		return statement(Kind.STATEMENT).append("for (").append(iterator).append(" in ").append(iterated).append(") ")
+				.appendAsBlock(body, true).build();
 	}
 
 	@Override
-	public String addStatement(String blockOrStatement, String statement) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode forLoop(TextNode init, TextNode condition, TextNode update, TextNode body) {
+		return statement(Kind.STATEMENT).append("for (").append(init).append("; ").append(condition).append("; ").append(update)
+				.append(") ").appendAsBlock(body, true).build();
 	}
 
 	@Override
-	public String addStatementBeginning(String blockOrStatement, String statement) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode ifStatement(TextNode condition, TextNode thenPart, TextNode elsePart) {
+		TextNode.Builder b = statement(Kind.IF).append("if (").append(condition).append(") ").appendAsBlock(thenPart, elsePart == null);
+		if (elsePart != null && elsePart.getKind() == Kind.IF) {
+			b.append(" else ").append(elsePart);
+		} else if (elsePart != null) {
+			b.append(" else ").appendAsBlock(elsePart, true);
+		}
+		return b.build();
 	}
 
 	@Override
-	public String labeledStatement(String label, String statement) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode addStatement(TextNode blockOrStatement, TextNode statement) {
+		if (blockOrStatement != null && blockOrStatement.getKind() == Kind.BLOCK) {
+			if (statement != null) {
+				blockOrStatement.getChildren().add(statement);
+			}
+			return blockOrStatement;
+		}
+		return block(Arrays.asList(blockOrStatement, statement));
 	}
 
 	@Override
-	public String returnStatement(String returnValue) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode addStatementBeginning(TextNode blockOrStatement, TextNode statement) {
+		if (blockOrStatement != null && blockOrStatement.getKind() == Kind.BLOCK) {
+			if (statement != null) {
+				blockOrStatement.getChildren().add(0, statement);
+			}
+			return blockOrStatement;
+		}
+		return block(Arrays.asList(statement, blockOrStatement));
 	}
 
 	@Override
-	public String switchStatement(String expr, Iterable<String> cases) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode labeledStatement(TextNode label, TextNode statement) {
+		checkKind(label, Kind.LABEL);
+		return TextNode.builder(Kind.STATEMENT).append(label).append(Op.INDENT).append(statement).append(Op.UNINDENT).build();
 	}
 
 	@Override
-	public String functionCall(String target, Iterable<String> arguments) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode returnStatement(TextNode returnValue) {
+		TextNode.Builder b = statement(Kind.STATEMENT).append("return");
+		if (returnValue != null) {
+			b.append(" ").append(returnValue);
+		}
+		return b.append(";").append(Op.NEWLINE).build();
 	}
 
 	@Override
-	public String property(String target, CharSequence name) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode switchStatement(TextNode expr, Iterable<TextNode> cases) {
+		TextNode.Builder b = statement(Kind.STATEMENT).append("switch (").append(expr).append(") {").append(Op.NEWLINE).append(Op.INDENT);
+		for (TextNode c : cases) {
+			checkKind(c, Kind.CASE);
+			b.append(c);
+		}
+		return b.append(Op.UNINDENT).append("}").append(Op.NEWLINE).build();
 	}
 
 	@Override
-	public String variableDeclaration(boolean statement, Iterable<NameValue<String>> vars) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode functionCall(TextNode target, Iterable<TextNode> arguments) {
+		return TextNode.builder(Kind.EXPRESSION).append(target).append("(").appendList(arguments).append(")").build();
 	}
 
 	@Override
-	public String variableDeclaration(boolean statement, CharSequence name, String init) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode property(TextNode target, CharSequence name) {
+		if (target == null) {
+			return name(name);
+		}
+		return TextNode.builder(Kind.EXPRESSION).append(target).append(".").append(name.toString()).build();
 	}
 
 	@Override
-	public String tryStatement(String tryBlock, Iterable<String> catchClauses, String finallyBlock) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode variableDeclaration(boolean statement, Iterable<NameValue<TextNode>> vars) {
+		TextNode.Builder b = TextNode.builder(Kind.VARIABLE_DECLARATION);
+		if (statement) {
+			b.append(Op.START_POSITION);
+		}
+		b.append("var ");
+		boolean first = true;
+		for (NameValue<TextNode> v : vars) {
+			if (!first) {
+				b.append(", ");
+			}
+			appendVariable(b, v.getName(), v.getValue());
+			first = false;
+		}
+		return endVariableDeclaration(b, statement);
 	}
 
 	@Override
-	public String whileLoop(String condition, String body) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode variableDeclaration(boolean statement, CharSequence name, TextNode init) {
+		TextNode.Builder b = TextNode.builder(Kind.VARIABLE_DECLARATION);
+		if (statement) {
+			b.append(Op.START_POSITION);
+		}
+		appendVariable(b.append("var "), name, init);
+		return endVariableDeclaration(b, statement);
+	}
+
+	private void appendVariable(TextNode.Builder b, CharSequence name, TextNode init) {
+		b.append(name.toString());
+		if (init != null) {
+			b.append(" = ").append(init);
+		}
+	}
+
+	private TextNode endVariableDeclaration(TextNode.Builder b, boolean statement) {
+		if (statement) {
+			b.append(";").append(Op.NEWLINE);
+		}
+		return b.build();
 	}
 
 	@Override
-	public String root(Iterable<String> children) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode tryStatement(TextNode tryBlock, Iterable<TextNode> catchClauses, TextNode finallyBlock) {
+		TextNode.Builder b = statement(Kind.STATEMENT).append("try ").append(tryBlock);
+		for (TextNode c : catchClauses) {
+			b.append(c);
+		}
+		if (finallyBlock != null) {
+			b.append(" finally ").append(finallyBlock);
+		}
+		return b.append(Op.NEWLINE).build();
 	}
 
 	@Override
-	public String code(String code) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode whileLoop(TextNode condition, TextNode body) {
+		return statement(Kind.STATEMENT).append(" while (").append(condition).append(")").appendAsBlock(body, true).build();
 	}
 
 	@Override
-	public String toString(String node) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode root(Iterable<TextNode> children) {
+		return TextNode.container(Kind.ROOT, children);
 	}
 
 	@Override
-	public String conditionalExpression(String test, String trueExpr, String falseExpr) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode code(String code) {
+		return text(Kind.EXPRESSION, code);
 	}
 
 	@Override
-	public String character(String c) {
-		// TODO Auto-generated method stub
-		return null;
+	public String toString(TextNode node) {
+		if (node.getText() != null) {
+			return node.getText();
+		}
+		StringWriter writer = new StringWriter();
+		JavaScriptPrinter printer = new JavaScriptPrinter(writer, null, false);
+		node.print(printer);
+		printer.flush();
+		return writer.toString();
 	}
 
 	@Override
-	public String number(Number n) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode conditionalExpression(TextNode test, TextNode trueExpr, TextNode falseExpr) {
+		return TextNode.builder(Kind.EXPRESSION).append(test).append(" ? ").append(trueExpr).append(" : ").append(falseExpr).build();
 	}
 
 	@Override
-	public String statements(Iterable<String> stmts) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode character(String c) {
+		return text(Kind.EXPRESSION, "'" + ScriptRuntime.escapeString(c, '\'') + "'");
 	}
 
 	@Override
-	public String assignment(AssignOperator operator, String left, String right) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode number(Number n) {
+		return text(Kind.EXPRESSION, n.toString());
 	}
 
 	@Override
-	public String binary(BinaryOperator operator, Iterable<String> operands) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode statements(Iterable<TextNode> stmts) {
+		return TextNode.container(Kind.STATEMENTS, stmts);
 	}
 
 	@Override
-	public String keyword(Keyword token) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode assignment(AssignOperator operator, TextNode left, TextNode right) {
+		return TextNode.builder(Kind.ASSIGNMENT).append(left).append(" ").append(AstNode.operatorToString(operator.getJavaScript()))
+				.append(" ").append(right).build();
 	}
 
 	@Override
-	public String unary(UnaryOperator operator, String operand) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode binary(BinaryOperator operator, Iterable<TextNode> operands) {
+		// this is to deal with the COMMA operator who can have less than two operands
+		if (Iterables.isEmpty(operands)) {
+			return emptyExpression();
+		}
+		Iterator<TextNode> it = operands.iterator();
+		TextNode first = it.next();
+		if (!it.hasNext()) {
+			return first;
+		}
+		String op = " " + AstNode.operatorToString(operator.getJavaScript()) + " ";
+		TextNode.Builder b = TextNode.builder(Kind.EXPRESSION).append(first);
+		while (it.hasNext()) {
+			b.append(op).append(it.next());
+		}
+		return b.build();
 	}
 
 	@Override
-	public String label(CharSequence name) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode keyword(Keyword token) {
+		switch (token) {
+		case THIS:
+			return text(Kind.EXPRESSION, "this");
+		case NULL:
+			return text(Kind.EXPRESSION, "null");
+		case TRUE:
+			return text(Kind.EXPRESSION, "true");
+		default:
+			return text(Kind.EXPRESSION, "false");
+		}
 	}
 
 	@Override
-	public SourceMapGenerator writeJavaScript(String javascriptRoot, File inputFile, boolean generateSourceMap, Writer writer) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode unary(UnaryOperator operator, TextNode operand) {
+		int type = operator.getJavaScript();
+		TextNode.Builder b = TextNode.builder(Kind.EXPRESSION);
+		if (operator.isPostfix()) {
+			return b.append(operand).append(AstNode.operatorToString(type)).build();
+		}
+		b.append(AstNode.operatorToString(type));
+		if (type == Token.TYPEOF || type == Token.DELPROP || type == Token.VOID) {
+			b.append(" ");
+		}
+		return b.append(operand).build();
 	}
 
 	@Override
-	public String comment(String node, String comment) {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode expressionStatement(TextNode expr) {
+		return statement(Kind.EXPRESSION_STATEMENT).append(expr).append(Op.END_POSITION).append(";").append(Op.NEWLINE).build();
 	}
 
 	@Override
-	public String throwStatement(String expr) {
-		// TODO Auto-generated method stub
-		return null;
+	public SourceMapGenerator writeJavaScript(TextNode javascriptRoot, File inputFile, boolean generateSourceMap, Writer writer) {
+		checkKind(javascriptRoot, Kind.ROOT);
+		JavaScriptPrinter printer = new JavaScriptPrinter(writer, inputFile, generateSourceMap);
+		javascriptRoot.print(printer);
+		printer.flush();
+		return printer.getSourceMapGenerator();
 	}
 
 	@Override
-	public String emptyExpression() {
-		// TODO Auto-generated method stub
-		return null;
+	public TextNode comment(TextNode node, String comment) {
+		if (node == null) {
+			return null;
+		}
+		if (comment != null) {
+			node.setComment(comment);
+		}
+		return node;
 	}
 
+	@Override
+	public TextNode throwStatement(TextNode expr) {
+		return statement(Kind.STATEMENT).append(" throw ").append(expr).append(";").append(Op.NEWLINE).build();
+	}
 }
@@ -0,0 +1,280 @@
+package org.stjs.generator.javascript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a node of the JavaScript code built by {@link StringJavaScriptBuilder}. A node printed on a single line, without comments
+ * or source map positions, is kept as plain text and its text is copied in the text of its parent. The other nodes keep the sequence of
+ * texts, children and layout operations needed to print them.
+ * <p>
+ * As the text of a child is copied when its parent is built, the comment and the position of a node must be given before the node is
+ * added to its parent. Only the blocks can still be changed afterwards.
+ */
+final class TextNode {
+	private final Kind kind;
+	private final String text;
+	private final List<Object> parts;
+	private final List<TextNode> children;
+	private String comment;
+
+	private int javaStartLineNumber = -1;
+	private int javaStartColumnNumber = -1;
+	private int javaEndLineNumber = -1;
+	private int javaEndColumnNumber = -1;
+
+	TextNode(Kind kind, String text, List<Object> parts, List<TextNode> children) {
+		this.kind = kind;
+		this.text = text;
+		this.parts = parts;
+		this.children = children;
+	}
+
+	/**
+	 * @return a node containing the given children, printed one after the other: a block, a list of statements or the root
+	 */
+	public static TextNode container(Kind kind, Iterable<TextNode> children) {
+		List<TextNode> list = new ArrayList<TextNode>();
+		for (TextNode child : children) {
+			if (child != null) {
+				list.add(child);
+			}
+		}
+		return new TextNode(kind, null, null, list);
+	}
+
+	public static Builder builder(Kind kind) {
+		return new Builder(kind);
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the text of the node, or null if the node is not printed on a single line
+	 */
+	public String getText() {
+		return text;
+	}
+
+	public List<TextNode> getChildren() {
+		return children;
+	}
+
+	public void setComment(String comment) {
+		this.comment = comment;
+	}
+
+	public void setPosition(int javaStartLineNumber, int javaStartColumnNumber, int javaEndLineNumber, int javaEndColumnNumber) {
+		this.javaStartLineNumber = javaStartLineNumber;
+		this.javaStartColumnNumber = javaStartColumnNumber;
+		this.javaEndLineNumber = javaEndLineNumber;
+		this.javaEndColumnNumber = javaEndColumnNumber;
+	}
+
+	/**
+	 * @return true if the text of the node can be copied in the text of its parent
+	 */
+	private boolean isInlined() {
+		return text != null && (comment == null || !kind.hasComments());
+	}
+
+	public void print(JavaScriptPrinter printer) {
+		if (kind.hasComments()) {
+			printer.printComments(comment);
+		}
+		if (text == null) {
+			printStructure(printer);
+		} else if (kind != Kind.EMPTY_EXPRESSION) {
+			printer.print(text);
+		}
+	}
+
+	private void printStructure(JavaScriptPrinter printer) {
+		switch (kind) {
+		case BLOCK:
+			printBlock(printer);
+			break;
+		case ROOT:
+			printChildren(printer);
+			printer.addSourceMapURL();
+			break;
+		case STATEMENTS:
+			printChildren(printer);
+			break;
+		default:
+			printParts(printer);
+			break;
+		}
+	}
+
+	private void printBlock(JavaScriptPrinter printer) {
+		if (children.isEmpty()) {
+			printer.print("{}");
+			return;
+		}
+		printer.println("{").indent();
+		printChildren(printer);
+		printer.unindent().print("}");
+	}
+
+	private void printChildren(JavaScriptPrinter printer) {
+		for (int i = 0; i < children.size(); ++i) {
+			children.get(i).print(printer);
+		}
+	}
+
+	private void printParts(JavaScriptPrinter printer) {
+		for (int i = 0; i < parts.size(); ++i) {
+			Object part = parts.get(i);
+			if (part instanceof String) {
+				printer.print((String) part);
+			} else if (part instanceof TextNode) {
+				((TextNode) part).print(printer);
+			} else {
+				printOp((Op) part, printer);
+			}
+		}
+	}
+
+	private void printOp(Op op, JavaScriptPrinter printer) {
+		switch (op) {
+		case NEWLINE:
+			printer.println();
+			break;
+		case INDENT:
+			printer.indent();
+			break;
+		case UNINDENT:
+			printer.unindent();
+			break;
+		case START_POSITION:
+			printer.startPosition(javaStartLineNumber, javaStartColumnNumber);
+			break;
+		default:
+			printer.endPosition(javaEndLineNumber, javaEndColumnNumber);
+			break;
+		}
+	}
+
+	/**
+	 * the kinds of nodes that need a special treatment when they are printed or when they are used by other nodes
+	 */
+	enum Kind {
+		EXPRESSION, NAME, LABEL, EMPTY_EXPRESSION, STATEMENT, IF, CASE, BLOCK, ROOT,
+		// the nodes whose comments are printed
+		ASSIGNMENT, FUNCTION, EXPRESSION_STATEMENT, VARIABLE_DECLARATION, STATEMENTS;
+
+		public boolean hasComments() {
+			return compareTo(ASSIGNMENT) >= 0;
+		}
+	}
+
+	/**
+	 * the layout operations
+	 */
+	enum Op {
+		NEWLINE, INDENT, UNINDENT, START_POSITION, END_POSITION
+	}
+
+	/**
+	 * builds a node from its texts, children and layout operations. The consecutive texts and inlined children are merged.
+	 */
+	@SuppressWarnings("PMD.AvoidStringBufferField")
+	static final class Builder {
+		private final Kind kind;
+		private final StringBuilder text = new StringBuilder();
+		private List<Object> parts;
+
+		Builder(Kind kind) {
+			this.kind = kind;
+		}
+
+		public Builder append(String s) {
+			text.append(s);
+			return this;
+		}
+
+		/**
+		 * appends the given node, if not null
+		 */
+		public Builder append(TextNode node) {
+			if (node == null) {
+				return this;
+			}
+			if (node.isInlined()) {
+				text.append(node.text);
+			} else {
+				addPart(node);
+			}
+			return this;
+		}
+
+		public Builder append(Op op) {
+			addPart(op);
+			return this;
+		}
+
+		/**
+		 * appends the given nodes separated by commas. A trailing empty expression adds a comma, like in an array with a hole at the end.
+		 */
+		public Builder appendList(Iterable<TextNode> nodes) {
+			List<TextNode> list = new ArrayList<TextNode>();
+			for (TextNode node : nodes) {
+				if (node != null) {
+					list.add(node);
+				}
+			}
+			for (int i = 0; i < list.size(); ++i) {
+				TextNode node = list.get(i);
+				append(node);
+				if (i < list.size() - 1) {
+					append(", ");
+				} else if (node.kind == Kind.EMPTY_EXPRESSION) {
+					append(",");
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * appends the given statement, as the body of a loop or of an if. A statement that is not a block is printed on its own line.
+		 */
+		public Builder appendAsBlock(TextNode stmt, boolean addNewLineAfterBlock) {
+			if (stmt != null && stmt.kind == Kind.BLOCK) {
+				addPart(stmt);
+				if (addNewLineAfterBlock) {
+					addPart(Op.NEWLINE);
+				}
+			} else {
+				addPart(Op.NEWLINE);
+				addPart(Op.INDENT);
+				append(stmt);
+				addPart(Op.UNINDENT);
+			}
+			return this;
+		}
+
+		private void addPart(Object part) {
+			if (parts == null) {
+				parts = new ArrayList<Object>();
+			}
+			if (text.length() > 0) {
+				parts.add(text.toString());
+				text.setLength(0);
+			}
+			parts.add(part);
+		}
+
+		public TextNode build() {
+			if (parts == null) {
+				return new TextNode(kind, text.toString(), null, null);
+			}
+			if (text.length() > 0) {
+				parts.add(text.toString());
+			}
+			return new TextNode(kind, null, parts, null);
+		}
+	}
+}
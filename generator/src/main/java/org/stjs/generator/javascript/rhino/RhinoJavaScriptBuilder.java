@@ -554,6 +554,7 @@ public class RhinoJavaScriptBuilder implements JavaScriptBuilder<AstNode> {
 		RhinoJavaScriptWriter jsw = new RhinoJavaScriptWriter(writer, inputFile, generateSourceMap);
 
 		jsw.visitAstRoot(cast(javascriptRoot, AstRoot.class), null);
+		jsw.flush();
 
 		return jsw.getSourceMapGenerator();
 	}
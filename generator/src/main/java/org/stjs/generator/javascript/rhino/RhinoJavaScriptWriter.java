@@ -1,7 +1,6 @@
 package org.stjs.generator.javascript.rhino;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
 
@@ -48,12 +47,9 @@ import org.mozilla.javascript.ast.UnaryExpression;
 import org.mozilla.javascript.ast.VariableDeclaration;
 import org.mozilla.javascript.ast.VariableInitializer;
 import org.mozilla.javascript.ast.WhileLoop;
-import org.stjs.generator.STJSRuntimeException;
+import org.stjs.generator.javascript.JavaScriptPrinter;
 
-import com.google.debugging.sourcemap.FilePosition;
-import com.google.debugging.sourcemap.SourceMapFormat;
 import com.google.debugging.sourcemap.SourceMapGenerator;
-import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
 
 /**
  * This class visits a JavaScript AST tree and generate the corresponding source code. It handles also the source maps.
@@ -62,110 +58,46 @@ import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
  */
 @SuppressWarnings("PMD.ExcessivePublicCount")
 public class RhinoJavaScriptWriter implements AstVisitor<Boolean> {
-	private static final String LINE_JAVA_DOC = " * ";
-	private static final String INDENT = "    ";
-	private static final String START_JAVA_DOC = "/**";
-	private static final String END_JAVA_DOC = " */";
-	private int level;
-
-	private boolean indented;
-
-	private final Writer writer;
-
-	private int currentLine;
-	private int currentColumn;
 	private final RhinoNodeVisitorSupport visitorSupport = new RhinoNodeVisitorSupport();
 
-	private final SourceMapGenerator sourceMapGenerator;
-	private final boolean generateSourceMap;
-	private final File inputFile;
-
-	private FilePosition javaPosition;
-	private FilePosition javaScriptPosition;
+	private final JavaScriptPrinter printer;
 
 	public RhinoJavaScriptWriter(Writer writer, File inputFile, boolean generateSourceMap) {
-		this.writer = writer;
-		this.inputFile = inputFile;
-		this.generateSourceMap = generateSourceMap;
-		this.sourceMapGenerator = generateSourceMap ? SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3) : null;
+		this.printer = new JavaScriptPrinter(writer, inputFile, generateSourceMap);
 	}
 
 	protected RhinoJavaScriptWriter indent() {
-		level++;
+		printer.indent();
 		return this;
 	}
 
 	protected RhinoJavaScriptWriter unindent() {
-		level--;
+		printer.unindent();
 		return this;
 	}
 
-	protected void makeIndent() {
-		for (int i = 0; i < level; i++) {
-			try {
-				writer.append(INDENT);
-			}
-			catch (IOException e) {
-				throw new STJSRuntimeException("Writing problem:" + e, e);
-			}
-			currentColumn += INDENT.length();
-		}
-	}
-
 	protected RhinoJavaScriptWriter print(String arg) {
-		if (!indented) {
-			makeIndent();
-			indented = true;
-		}
-		try {
-			writer.append(arg);
-		}
-		catch (IOException e) {
-			throw new STJSRuntimeException("Writing problem:" + e, e);
-		}
-		// TODO check for newlines in the string
-		currentColumn += arg.length();
+		printer.print(arg);
 		return this;
 	}
 
 	protected RhinoJavaScriptWriter printComments(AstNode node) {
-		String comment = node.getJsDoc();
-		if (comment != null) {
-			println(START_JAVA_DOC);
-			String[] lines = comment.split("\n");
-			for (String line : lines) {
-				print(LINE_JAVA_DOC).println(line);
-			}
-			println(END_JAVA_DOC);
-		}
+		printer.printComments(node.getJsDoc());
 		return this;
 	}
 
 	public RhinoJavaScriptWriter println(String arg) {
-		print(arg);
-		println();
+		printer.println(arg);
 		return this;
 	}
 
 	public RhinoJavaScriptWriter println() {
-		try {
-			writer.append('\n');
-		}
-		catch (IOException e) {
-			throw new STJSRuntimeException("Writing problem:" + e, e);
-		}
-		indented = false;
-		currentLine++;
-		currentColumn = 0;
-		addMapping();
+		printer.println();
 		return this;
 	}
 
 	protected void startPosition(AstNode node) {
-		if (generateSourceMap) {
-			javaPosition = new FilePosition(RhinoJavaScriptBuilder.getLineNumber(node) - 1, RhinoJavaScriptBuilder.getColumnNumber(node) - 1);
-			javaScriptPosition = new FilePosition(currentLine, currentColumn);
-		}
+		printer.startPosition(RhinoJavaScriptBuilder.getLineNumber(node), RhinoJavaScriptBuilder.getColumnNumber(node));
 	}
 
 	/**
@@ -174,24 +106,7 @@ public class RhinoJavaScriptWriter implements AstVisitor<Boolean> {
 	 * @param node
 	 */
 	protected void endPosition(AstNode node) {
-		if (generateSourceMap) {
-			boolean hasPosition = javaScriptPosition != null && javaScriptPosition.getLine() != currentLine;
-			if (hasPosition) {
-				javaPosition = new FilePosition(RhinoJavaScriptBuilder.getEndLineNumber(node) - 1,
-						RhinoJavaScriptBuilder.getEndColumnNumber(node) - 1);
-				javaScriptPosition = new FilePosition(currentLine, currentColumn);
-			}
-		}
-	}
-
-	protected void addMapping() {
-		if (generateSourceMap) {
-			FilePosition endJavaScriptPosition = new FilePosition(currentLine, currentColumn);
-			if (javaPosition != null && javaPosition.getLine() >= 0 && javaPosition.getColumn() >= 0) {
-				sourceMapGenerator.addMapping(inputFile.getName(), null, javaPosition, javaScriptPosition, endJavaScriptPosition);
-				javaPosition = null;
-			}
-		}
+		printer.endPosition(RhinoJavaScriptBuilder.getEndLineNumber(node), RhinoJavaScriptBuilder.getEndColumnNumber(node));
 	}
 
 	@Override
@@ -665,14 +580,18 @@ public class RhinoJavaScriptWriter implements AstVisitor<Boolean> {
 	}
 
 	public void addSourceMapURL() {
-		if (generateSourceMap) {
-			addMapping();
-			print("//@ sourceMappingURL=").print(inputFile.getName().replaceAll("\\.java$", ".map"));
-		}
+		printer.addSourceMapURL();
+	}
+
+	/**
+	 * writes the printed code to the underlying writer
+	 */
+	public void flush() {
+		printer.flush();
 	}
 
 	public SourceMapGenerator getSourceMapGenerator() {
-		return sourceMapGenerator;
+		return printer.getSourceMapGenerator();
 	}
 
 	@Override
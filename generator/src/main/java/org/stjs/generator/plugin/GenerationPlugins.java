@@ -3,10 +3,14 @@ package org.stjs.generator.plugin;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.stjs.generator.STJSRuntimeException;
 import org.stjs.generator.check.CheckVisitor;
@@ -26,13 +30,24 @@ public class GenerationPlugins<JS> {
 
 	private static final String JAVA_VERSION_ENTRY = "java.version";
 
-	private final Map<String, STJSGenerationPlugin<JS>> mandatoryPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
-	private final Map<String, STJSGenerationPlugin<JS>> optionalPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
+	private final Map<String, STJSGenerationPlugin<JS>> mandatoryPlugins;
+	private final Map<String, STJSGenerationPlugin<JS>> optionalPlugins;
 
-	private CheckVisitor checkVisitor = new CheckVisitor();
-	private WriterVisitor<JS> writerVisitor = new WriterVisitor<JS>();
+	private final CheckVisitor checkVisitor;
+	private final WriterVisitor<JS> writerVisitor;
+
+	/**
+	 * the plugins of the classes annotated with {@link UsePlugin}, by list of plugin names. The names are kept in the order of the
+	 * annotation, as a plugin may replace the contributions of the plugins before it.
+	 */
+	private final ConcurrentMap<List<String>, GenerationPlugins<JS>> pluginsByNames =
+			new ConcurrentHashMap<List<String>, GenerationPlugins<JS>>();
 
 	public GenerationPlugins() {
+		mandatoryPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
+		optionalPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
+		checkVisitor = new CheckVisitor();
+		writerVisitor = new WriterVisitor<JS>();
 
 		MainGenerationPlugin<JS> mainPlugin = new MainGenerationPlugin<JS>();
 		mainPlugin.contributeCheckVisitor(checkVisitor);
@@ -51,6 +66,16 @@ public class GenerationPlugins<JS> {
 		}
 	}
 
+	/**
+	 * creates a copy of the given plugins, to which other plugins can contribute. The plugins are not searched again in the classpath.
+	 */
+	private GenerationPlugins(GenerationPlugins<JS> copy) {
+		mandatoryPlugins = copy.mandatoryPlugins;
+		optionalPlugins = copy.optionalPlugins;
+		checkVisitor = new CheckVisitor(copy.checkVisitor);
+		writerVisitor = new WriterVisitor<JS>(copy.writerVisitor);
+	}
+
 	private void loadConfigFile(URL configFile) {
 		InputStream input = null;
 		try {
@@ -126,7 +151,10 @@ public class GenerationPlugins<JS> {
 		return writerVisitor;
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * @return the plugins to use for the given class: the default ones, plus the ones given by its {@link UsePlugin} annotation. The
+	 *         plugins are built once for each list of plugin names.
+	 */
 	public GenerationPlugins<JS> forClass(Class<?> clazz) {
 		UsePlugin usePlugins = clazz.getAnnotation(UsePlugin.class);
 		if (usePlugins == null || usePlugins.value() == null || usePlugins.value().length == 0) {
@@ -134,12 +162,22 @@ public class GenerationPlugins<JS> {
 			return this;
 		}
 
-		// TODO - here I can add a cache using the list of plugin names as key
-		GenerationPlugins<JS> newPlugins = new GenerationPlugins<JS>();
-		newPlugins.checkVisitor = new CheckVisitor(checkVisitor);
-		newPlugins.writerVisitor = new WriterVisitor<JS>(writerVisitor);
+		List<String> pluginNames = Arrays.asList(usePlugins.value());
+		GenerationPlugins<JS> classPlugins = pluginsByNames.get(pluginNames);
+		if (classPlugins == null) {
+			classPlugins = withPlugins(clazz, pluginNames);
+			// another thread may have built the same plugins in the meantime
+			GenerationPlugins<JS> existing = pluginsByNames.putIfAbsent(pluginNames, classPlugins);
+			if (existing != null) {
+				classPlugins = existing;
+			}
+		}
+		return classPlugins;
+	}
 
-		for (String pluginName : usePlugins.value()) {
+	private GenerationPlugins<JS> withPlugins(Class<?> clazz, List<String> pluginNames) {
+		GenerationPlugins<JS> newPlugins = new GenerationPlugins<JS>(this);
+		for (String pluginName : pluginNames) {
 			STJSGenerationPlugin<JS> plugin = optionalPlugins.get(pluginName);
 			if (plugin == null) {
 				throw new STJSRuntimeException("The class:" + clazz.getName() + " need an unknown Generation Plugin :" + pluginName);
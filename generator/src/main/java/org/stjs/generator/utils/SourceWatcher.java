@@ -0,0 +1,143 @@
+package org.stjs.generator.utils;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * watches the Java sources of a set of source roots, including the folders created after the watch started. The editors and the version
+ * control tools usually touch several files (or the same file several times) in a row, so the changes are returned only once no new
+ * change arrived during the debounce delay.
+ */
+public final class SourceWatcher implements Closeable {
+	private static final String JAVA_SUFFIX = ".java";
+
+	private final WatchService watchService;
+	private final long debounceMillis;
+	private final Set<Path> sourceRoots = new LinkedHashSet<Path>();
+	private final Map<WatchKey, Path> folders = new HashMap<WatchKey, Path>();
+
+	/**
+	 * the Java files found in the new folders, that do not have their own events
+	 */
+	private final Set<File> createdFiles = new LinkedHashSet<File>();
+
+	public SourceWatcher(Collection<File> sourceRoots, long debounceMillis) throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.debounceMillis = debounceMillis;
+		for (File sourceRoot : sourceRoots) {
+			this.sourceRoots.add(sourceRoot.toPath());
+			if (sourceRoot.isDirectory()) {
+				register(sourceRoot.toPath(), false);
+			}
+		}
+	}
+
+	private void register(Path root, final boolean collectFiles) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				folders.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (collectFiles && isJavaFile(file)) {
+					createdFiles.add(file.toFile());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static boolean isJavaFile(Path file) {
+		return file.toString().endsWith(JAVA_SUFFIX);
+	}
+
+	/**
+	 * waits until some Java sources are created, modified or deleted.
+	 *
+	 * @return the changed sources. The deleted sources are returned as well, the callers may check their existence.
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public Set<File> awaitChanges() throws IOException, InterruptedException {
+		Set<File> changedFiles = new LinkedHashSet<File>();
+		while (changedFiles.isEmpty()) {
+			processEvents(watchService.take(), changedFiles);
+			// wait for the end of the burst
+			WatchKey key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+			while (key != null) {
+				processEvents(key, changedFiles);
+				key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+			}
+			changedFiles.addAll(createdFiles);
+			createdFiles.clear();
+		}
+		return changedFiles;
+	}
+
+	private void processEvents(WatchKey key, Set<File> changedFiles) throws IOException {
+		Path folder = folders.get(key);
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				overflow = true;
+			} else if (folder != null) {
+				processEvent(folder.resolve((Path) event.context()), event.kind(), changedFiles);
+			}
+		}
+		if (!key.reset()) {
+			// the folder was deleted
+			folders.remove(key);
+		}
+		if (overflow) {
+			rescan();
+		}
+	}
+
+	/**
+	 * some events were lost, so all the sources are returned as changed, and the folders created meanwhile are watched
+	 */
+	private void rescan() throws IOException {
+		for (Path sourceRoot : sourceRoots) {
+			if (Files.isDirectory(sourceRoot)) {
+				register(sourceRoot, true);
+			}
+		}
+	}
+
+	private void processEvent(Path path, WatchEvent.Kind<?> kind, Set<File> changedFiles) throws IOException {
+		if (kind == ENTRY_CREATE && Files.isDirectory(path)) {
+			register(path, true);
+		} else if (isJavaFile(path)) {
+			changedFiles.add(path.toFile());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+}
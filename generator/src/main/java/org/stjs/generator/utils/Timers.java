@@ -2,56 +2,57 @@ package org.stjs.generator.utils;
 
 import java.util.HashMap;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * accumulates the time spent in the different phases of the generation. The timers can be used from several threads at the same time:
+ * each thread has its own start time, while the totals are shared.
+ */
 public final class Timers {
-	private static Map<String, Timer> timers = new HashMap<String, Timer>();
+	private static final ConcurrentMap<String, AtomicLong> TOTALS = new ConcurrentHashMap<String, AtomicLong>();
+
+	private static final ThreadLocal<Map<String, Long>> STARTS = new ThreadLocal<Map<String, Long>>() {
+		@Override
+		protected Map<String, Long> initialValue() {
+			return new HashMap<String, Long>();
+		}
+	};
 
 	private Timers() {
 		// private
 	}
 
 	public static void start(String name) {
-		synchronized (timers) {
-			Timer timer = timers.get(name);
-			if (timer == null) {
-				timer = new Timer();
-				timers.put(name, timer);
-			}
-			timer.start = System.currentTimeMillis();
-		}
+		STARTS.get().put(name, System.currentTimeMillis());
 	}
 
 	public static void end(String name) {
-		synchronized (timers) {
-			Timer timer = timers.get(name);
-			if (timer != null) {
-				timer.end = System.currentTimeMillis();
-				timer.total += (timer.end - timer.start);
-			}
+		Long start = STARTS.get().remove(name);
+		if (start != null) {
+			getTotal(name).addAndGet(System.currentTimeMillis() - start);
 		}
 	}
 
-	@SuppressWarnings("PMD.SystemPrintln")
-	public static void dump() {
-		synchronized (timers) {
-			long total = 0;
-			for (Map.Entry<String, Timer> entry : timers.entrySet()) {
-				System.out.println(entry.getKey() + "=" + entry.getValue().getTotal());
-				total += entry.getValue().getTotal();
-			}
-			System.out.println("----------------------------");
-			System.out.println("Total:" + total);
+	private static AtomicLong getTotal(String name) {
+		AtomicLong total = TOTALS.get(name);
+		if (total != null) {
+			return total;
 		}
+		AtomicLong newTotal = new AtomicLong();
+		total = TOTALS.putIfAbsent(name, newTotal);
+		return total == null ? newTotal : total;
 	}
 
-	private static class Timer {
-		private long total;
-		private long start;
-		private long end;
-
-		public long getTotal() {
-			return total;
+	@SuppressWarnings("PMD.SystemPrintln")
+	public static void dump() {
+		long total = 0;
+		for (Map.Entry<String, AtomicLong> entry : TOTALS.entrySet()) {
+			System.out.println(entry.getKey() + "=" + entry.getValue().get());
+			total += entry.getValue().get();
 		}
-
+		System.out.println("----------------------------");
+		System.out.println("Total:" + total);
 	}
 }
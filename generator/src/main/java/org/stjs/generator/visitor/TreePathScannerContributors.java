@@ -2,6 +2,7 @@ package org.stjs.generator.visitor;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -25,6 +26,13 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 
 	private final Map<DiscriminatorKey, ContributorHolder<? extends Tree>> contributorsWithDiscriminator = Maps.newHashMap();
 
+	/**
+	 * the holders of the map above, indexed by the kinds of the nodes they handle. It's used to find the holder of a node without
+	 * inspecting its class, as this is done for every node of every file.
+	 */
+	private final Map<Tree.Kind, ContributorHolder<? extends Tree>> contributorsByKind =
+			new EnumMap<Tree.Kind, ContributorHolder<? extends Tree>>(Tree.Kind.class);
+
 	private boolean continueScanning;
 
 	private boolean onlyOneFinalContributor;
@@ -39,7 +47,9 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		// deep clone the maps
 		contributors.clear();
 		for (Map.Entry<Class<?>, ContributorHolder<? extends Tree>> entry : copy.contributors.entrySet()) {
-			contributors.put(entry.getKey(), new ContributorHolder(entry.getValue()));
+			ContributorHolder<? extends Tree> holder = new ContributorHolder(entry.getValue());
+			contributors.put(entry.getKey(), holder);
+			indexByKind(entry.getKey(), holder);
 		}
 
 		contributorsWithDiscriminator.clear();
@@ -77,10 +87,19 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		if (holder == null) {
 			holder = new ContributorHolder<T>();
 			contributors.put(treeNodeClass, holder);
+			indexByKind(treeNodeClass, holder);
 		}
 		return holder;
 	}
 
+	private void indexByKind(Class<?> treeNodeClass, ContributorHolder<? extends Tree> holder) {
+		for (Tree.Kind kind : Tree.Kind.values()) {
+			if (kind.asInterface() == treeNodeClass) {
+				contributorsByKind.put(kind, holder);
+			}
+		}
+	}
+
 	public <T extends Tree, C extends VisitorContributor<T, R, P, V>, N> void contribute(@Nonnull C contributor) {
 		if (onlyOneFinalContributor) {
 			this.<T> getHolder(contributor.getClass()).setContributor(contributor);
@@ -159,19 +178,6 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		return null;
 	}
 
-	private Class<?> getTreeInteface(Class<?> clazz) {
-		Type[] interfaces = clazz.getGenericInterfaces();
-		for (Type iface : interfaces) {
-			if (iface instanceof Class<?>) {
-				Class<?> type = (Class<?>) iface;
-				if (Tree.class.isAssignableFrom(type)) {
-					return type;
-				}
-			}
-		}
-		return null;
-	}
-
 	@SuppressWarnings("unchecked")
 	public <T extends Tree> R forward(DiscriminatorKey discriminator, T node, P param) {
 		VisitorContributor<? extends Tree, R, P, V> contributor = contributorsWithDiscriminator.get(discriminator);
@@ -183,13 +189,21 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		return null;
 	}
 
+	/**
+	 * calls the filters and the contributors of the given node, without scanning its children. The current path of the parameter must
+	 * point to the node.
+	 */
 	@SuppressWarnings("unchecked")
+	public <T extends Tree> R visitNode(T node, P p) {
+		ContributorHolder<T> holder = (ContributorHolder<T>) contributorsByKind.get(node.getKind());
+		return holder == null ? null : holder.visit((V) this, node, p);
+	}
+
 	protected <T extends Tree> R visit(T node, P p, R r) {
 		if (node == null) {
 			return r;
 		}
-		ContributorHolder<T> holder = (ContributorHolder<T>) contributors.get(getTreeInteface(node.getClass()));
-		R lastR = holder == null ? null : holder.visit((V) this, node, p);
+		R lastR = visitNode(node, p);
 		if (continueScanning) {
 			lastR = node.accept(this, p);
 		}
@@ -220,18 +234,32 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 	private class ContributorHolder<T extends Tree> implements VisitorContributor<T, R, P, V> {
 		private final List<VisitorFilterContributor<T, R, P, V>> filters = Lists.newArrayList();
 		private final List<VisitorContributor<T, R, P, V>> contributors = Lists.newArrayList();
+		private FilterChain<T> chain;
 
 		public ContributorHolder() {
-			//
+			buildChain();
 		}
 
 		public ContributorHolder(ContributorHolder<T> copy) {
 			filters.addAll(copy.filters);
 			contributors.addAll(copy.contributors);
+			buildChain();
 		}
 
 		public void addFilter(VisitorFilterContributor<T, R, P, V> f) {
 			filters.add(f);
+			buildChain();
+		}
+
+		/**
+		 * the chain is built when the filters are added, so that the visits do not create it for each node
+		 */
+		private void buildChain() {
+			FilterChain<T> link = new FilterChain<T>(this, null, null);
+			for (int i = filters.size() - 1; i >= 0; --i) {
+				link = new FilterChain<T>(this, filters.get(i), link);
+			}
+			chain = link;
 		}
 
 		public void addContributor(VisitorContributor<T, R, P, V> c) {
@@ -243,24 +271,16 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 			contributors.add(c);
 		}
 
-		public List<VisitorFilterContributor<T, R, P, V>> getFilters() {
-			return filters;
-		}
-
 		@Override
 		public R visit(V visitor, T tree, P p) {
-			if (!filters.isEmpty()) {
-				// create a chain if there is at least a filter
-				return new FilterChain<T>(this).visit(visitor, tree, p);
-			}
-			return visitContributors(visitor, tree, p);
+			return chain.visit(visitor, tree, p);
 		}
 
 		public R visitContributors(V visitor, T tree, P p) {
 			// the contributors are called at the end, but only the result of the last one will be kept
 			R lastR = null;
-			for (VisitorContributor<T, R, P, V> vc : contributors) {
-				lastR = vc.visit(visitor, tree, p);
+			for (int i = 0; i < contributors.size(); ++i) {
+				lastR = contributors.get(i).visit(visitor, tree, p);
 			}
 			return lastR;
 		}
@@ -269,27 +289,29 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 
 	/**
 	 *
-	 * a filter is created for each visit in a node
+	 * a link of the chain of filters of a node type. Each link calls its filter with the next link, the last one calls the contributors.
+	 * The links do not keep any state of the visit, so the same chain is used for all the nodes, including the nested ones.
 	 *
 	 * @param <T>
 	 */
 	private class FilterChain<T extends Tree> implements VisitorContributor<T, R, P, V> {
 		private final ContributorHolder<T> holder;
-		private int nextFilter;
+		private final VisitorFilterContributor<T, R, P, V> filter;
+		private final FilterChain<T> next;
 
-		public FilterChain(ContributorHolder<T> holder) {
+		public FilterChain(ContributorHolder<T> holder, VisitorFilterContributor<T, R, P, V> filter, FilterChain<T> next) {
 			this.holder = holder;
+			this.filter = filter;
+			this.next = next;
 		}
 
 		@Override
 		public R visit(V visitor, T tree, P p) {
 			// filters are called before, one by one
-			if (nextFilter < holder.getFilters().size()) {
-				VisitorFilterContributor<T, R, P, V> next = holder.getFilters().get(nextFilter);
-				nextFilter++;
-				return next.visit(visitor, tree, p, this);
+			if (filter == null) {
+				return holder.visitContributors(visitor, tree, p);
 			}
-			return holder.visitContributors(visitor, tree, p);
+			return filter.visit(visitor, tree, p, next);
 		}
 	}
 }
@@ -0,0 +1,172 @@
+package org.stjs.generator.writer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.stjs.generator.GenerationContext;
+import org.stjs.generator.check.CheckVisitor;
+
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * This visitor generates the JavaScript code and checks the Java code in a single traversal of the AST. The checks of a node are done
+ * when the writers enter the node, with the same path and thus the same wrapper as the writers. When they leave it, the children they did
+ * not visit (the types, the modifiers, etc) are scanned for the checks only. Each node is checked once.
+ * <p>
+ * The writers may skip some nodes (e.g. the member select of a method call) and the wrappers of the nodes are cached with the path of their
+ * first visit, so the visitor gives each node its exact path, as if the whole tree was scanned. The visitor keeps the checked nodes, so a
+ * new instance is needed for each compilation unit.
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class CheckingWriterVisitor<R> extends WriterVisitor<R> {
+	private final CheckVisitor checkVisitor;
+	private final Set<Tree> checkedNodes = Collections.newSetFromMap(new IdentityHashMap<Tree, Boolean>());
+	private final SkippedNodesChecker skippedNodesChecker = new SkippedNodesChecker();
+	private final ParentIndex parentIndex = new ParentIndex();
+
+	public CheckingWriterVisitor(WriterVisitor<R> writerVisitor, CheckVisitor checkVisitor) {
+		super(writerVisitor);
+		this.checkVisitor = checkVisitor;
+	}
+
+	@Override
+	public R scan(Tree tree, GenerationContext<R> p) {
+		if (tree == null) {
+			return null;
+		}
+		TreePath prev = p.getCurrentPath();
+		p.setCurrentPath(prev == null ? new TreePath(null, tree) : parentIndex.getPath(prev, tree));
+		try {
+			return visit(tree, p, null);
+		}
+		finally {
+			p.setCurrentPath(prev);
+		}
+	}
+
+	@Override
+	protected <T extends Tree> R visit(T node, GenerationContext<R> p, R r) {
+		if (node == null) {
+			return r;
+		}
+		if (checkedNodes.add(node)) {
+			checkVisitor.visitNode(node, (GenerationContext) p);
+		}
+		R js = super.visit(node, p, r);
+		node.accept(skippedNodesChecker, p);
+		return js;
+	}
+
+	/**
+	 * scans the children of a node, but not the ones already checked, whose children were checked as well.
+	 */
+	private class SkippedNodesChecker extends TreeScanner<Void, GenerationContext> {
+		@Override
+		public Void scan(Tree tree, GenerationContext p) {
+			if (tree == null || !checkedNodes.add(tree)) {
+				return null;
+			}
+			TreePath prev = p.getCurrentPath();
+			p.setCurrentPath(new TreePath(prev, tree));
+			try {
+				checkVisitor.visitNode(tree, p);
+				return tree.accept(this, p);
+			}
+			finally {
+				p.setCurrentPath(prev);
+			}
+		}
+	}
+
+	/**
+	 * keeps the parent of the nodes, to find the exact path of a node from the path of the node the writers come from. The children of a
+	 * node are only listed the first time a path below the node is needed, so the index is built along with the traversal, and each node
+	 * is listed once.
+	 */
+	private static final class ParentIndex extends TreeScanner<Void, Tree> {
+		private final Map<Tree, Tree> parents = new IdentityHashMap<Tree, Tree>();
+		private final Map<Tree, List<Tree>> children = new IdentityHashMap<Tree, List<Tree>>();
+		/**
+		 * the nodes below a given node whose children are not listed yet. The nodes before them were already searched, so the next search
+		 * below the same node goes on from there.
+		 */
+		private final Map<Tree, Deque<Tree>> unlistedNodes = new IdentityHashMap<Tree, Deque<Tree>>();
+		private List<Tree> currentChildren;
+
+		public TreePath getPath(TreePath parentPath, Tree tree) {
+			Tree parent = parentPath.getLeaf();
+			if (!parents.containsKey(tree)) {
+				getChildren(parent);
+				if (!parents.containsKey(tree)) {
+					indexBelow(parent, tree);
+				}
+			}
+
+			// the nodes skipped by the writers, from the bottom up
+			List<Tree> skipped = new ArrayList<Tree>();
+			Tree ancestor = parents.get(tree);
+			while (ancestor != null && ancestor != parent) {
+				skipped.add(ancestor);
+				ancestor = parents.get(ancestor);
+			}
+			if (ancestor == null) {
+				// the node is not part of the subtree, e.g. a generated node
+				return new TreePath(parentPath, tree);
+			}
+
+			TreePath path = parentPath;
+			for (int i = skipped.size() - 1; i >= 0; --i) {
+				path = new TreePath(path, skipped.get(i));
+			}
+			return new TreePath(path, tree);
+		}
+
+		/**
+		 * indexes the subtree of the given root, level by level, until the given node is found. The search goes on from where the previous
+		 * search below the same root stopped, so each node of the subtree is listed at most once for the root.
+		 */
+		private void indexBelow(Tree root, Tree tree) {
+			Deque<Tree> queue = unlistedNodes.get(root);
+			if (queue == null) {
+				queue = new ArrayDeque<Tree>(getChildren(root));
+				unlistedNodes.put(root, queue);
+			}
+			while (!queue.isEmpty()) {
+				queue.addAll(getChildren(queue.poll()));
+				if (parents.containsKey(tree)) {
+					return;
+				}
+			}
+		}
+
+		private List<Tree> getChildren(Tree node) {
+			List<Tree> nodeChildren = children.get(node);
+			if (nodeChildren == null) {
+				nodeChildren = new ArrayList<Tree>();
+				currentChildren = nodeChildren;
+				node.accept(this, node);
+				currentChildren = null;
+				children.put(node, nodeChildren);
+			}
+			return nodeChildren;
+		}
+
+		@Override
+		public Void scan(Tree tree, Tree parent) {
+			// only the direct children are listed, the grand children are listed when they are needed
+			if (tree != null && !parents.containsKey(tree)) {
+				parents.put(tree, parent);
+				currentChildren.add(tree);
+			}
+			return null;
+		}
+	}
+}
@@ -186,7 +186,10 @@ public class ClassWriter<JS> implements WriterContributor<ClassTree, JS> {
 		return false;
 	}
 
-	private boolean hasMainMethod(ClassTree clazz) {
+	/**
+	 * @return true if the class has a main method, that is called when the generated file is loaded
+	 */
+	public static boolean hasMainMethod(ClassTree clazz) {
 		for (Tree member : clazz.getMembers()) {
 			if (!(member instanceof MethodTree)) {
 				continue;
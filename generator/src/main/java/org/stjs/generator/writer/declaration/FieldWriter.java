@@ -1,6 +1,8 @@
 package org.stjs.generator.writer.declaration;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.lang.model.element.Element;
@@ -10,6 +12,7 @@ import org.stjs.generator.GenerationContext;
 import org.stjs.generator.STJSRuntimeException;
 import org.stjs.generator.javac.TreeWrapper;
 import org.stjs.generator.javascript.AssignOperator;
+import org.stjs.generator.javascript.JavaScriptBuilder;
 import org.stjs.generator.javascript.Keyword;
 import org.stjs.generator.name.DependencyType;
 import org.stjs.generator.writer.MemberWriters;
@@ -18,7 +21,10 @@ import org.stjs.generator.writer.WriterVisitor;
 
 import com.google.common.base.Defaults;
 import com.google.common.primitives.Primitives;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
 
 /**
  * This will add the declaration of a field. This contributor is not added directly, but redirect from
@@ -56,6 +62,46 @@ public class FieldWriter<JS> extends AbstractMemberWriter<JS> implements WriterC
 		return context.js().keyword(Keyword.NULL);
 	}
 
+	private JS getInitializer(WriterVisitor<JS> visitor, VariableTree tree, TreeWrapper<VariableTree, JS> tw, GenerationContext<JS> context) {
+		if (tree.getInitializer() != null) {
+			return visitor.scan(tree.getInitializer(), context);
+		}
+		if (tw.isPrimitiveType()) {
+			return getPrimitiveDefaultValue(tw.getElement(), context);
+		}
+		return context.js().keyword(Keyword.NULL);
+	}
+
+	/**
+	 * @return the statements that initialize in the constructor at the given path the instance fields of its class, in their declaration
+	 *         order: this.field = value;
+	 */
+	public List<JS> getConstructorInitializers(WriterVisitor<JS> visitor, TreePath constructorPath, GenerationContext<JS> context) {
+		JavaScriptBuilder<JS> js = context.js();
+		TreePath classPath = constructorPath.getParentPath();
+		List<JS> stmts = new ArrayList<JS>();
+		TreePath previousPath = context.getCurrentPath();
+		try {
+			for (Tree member : ((ClassTree) classPath.getLeaf()).getMembers()) {
+				if (!(member instanceof VariableTree)) {
+					continue;
+				}
+				// the initializer is generated as if it was visited from its field
+				context.setCurrentPath(new TreePath(classPath, member));
+				TreeWrapper<VariableTree, JS> tw = context.getCurrentWrapper();
+				if (!tw.isStatic() && !MemberWriters.shouldSkip(tw)) {
+					VariableTree field = (VariableTree) member;
+					JS target = js.property(js.keyword(Keyword.THIS), field.getName());
+					stmts.add(js.expressionStatement(js.assignment(AssignOperator.ASSIGN, target, getInitializer(visitor, field, tw, context))));
+				}
+			}
+		}
+		finally {
+			context.setCurrentPath(previousPath);
+		}
+		return stmts;
+	}
+
 	@Override
 	public JS visit(WriterVisitor<JS> visitor, VariableTree tree, GenerationContext<JS> context) {
 		TreeWrapper<VariableTree, JS> tw = context.getCurrentWrapper();
@@ -65,16 +111,7 @@ public class FieldWriter<JS> extends AbstractMemberWriter<JS> implements WriterC
 		// load the type of the variable
 		context.getCurrentWrapper().child(tree.getType()).getTypeName(DependencyType.OTHER);
 
-		JS initializer = null;
-		if (tree.getInitializer() == null) {
-			if (tw.isPrimitiveType()) {
-				initializer = getPrimitiveDefaultValue(tw.getElement(), context);
-			} else {
-				initializer = context.js().keyword(Keyword.NULL);
-			}
-		} else {
-			initializer = visitor.scan(tree.getInitializer(), context);
-		}
+		JS initializer = getInitializer(visitor, tree, tw, context);
 
 		String fieldName = tree.getName().toString();
 		if (tw.getEnclosingType().isGlobal()) {
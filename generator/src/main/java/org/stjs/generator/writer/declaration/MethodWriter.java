@@ -15,6 +15,7 @@ import org.stjs.generator.utils.JavaNodes;
 import org.stjs.generator.writer.MemberWriters;
 import org.stjs.generator.writer.WriterContributor;
 import org.stjs.generator.writer.WriterVisitor;
+import org.stjs.generator.writer.expression.NewClassWriter;
 
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.MethodTree;
@@ -94,6 +95,12 @@ public class MethodWriter<JS> extends AbstractMemberWriter<JS> implements Writer
 		}
 
 		List<JS> params = getParams(tree.getParameters(), context);
+		if (JavaNodes.isConstructor(tree)) {
+			// the hoisted anonymous classes receive the variables they use after the arguments of their super class constructor
+			for (Element variable : NewClassWriter.getHoistedCapturedVariables(context.getCurrentPath().getParentPath(), context)) {
+				params.add(context.js().name(variable.getSimpleName()));
+			}
+		}
 
 		JS body = visitor.scan(tree.getBody(), context);
 
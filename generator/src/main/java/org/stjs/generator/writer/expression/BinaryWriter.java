@@ -18,16 +18,23 @@ import com.sun.source.util.TreePath;
 public class BinaryWriter<JS> implements WriterContributor<BinaryTree, JS> {
 	@Override
 	public JS visit(WriterVisitor<JS> visitor, BinaryTree tree, GenerationContext<JS> context) {
+		JS folded = ConstantFolding.folded(context, tree);
+		if (folded != null) {
+			return folded;
+		}
 		JS left = visitor.scan(tree.getLeftOperand(), context);
 		JS right = visitor.scan(tree.getRightOperand(), context);
 		BinaryOperator op = BinaryOperator.valueOf(tree.getKind());
 		assert op != null : "Unknow operator:" + tree.getKind();
 
-		@SuppressWarnings("unchecked")
-		JS expr = context.js().binary(op, Arrays.asList(left, right));
-
 		TypeMirror leftType = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getLeftOperand()));
 		TypeMirror rightType = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getRightOperand()));
+		if (IntegerArithmetic.isIntOperation(context, leftType, rightType)) {
+			return IntegerArithmetic.binary(context, op, left, right, context.getCurrentPath());
+		}
+
+		@SuppressWarnings("unchecked")
+		JS expr = context.js().binary(op, Arrays.asList(left, right));
 		boolean integerDivision = tree.getKind() == Kind.DIVIDE && TypesUtils.isIntegral(leftType) && TypesUtils.isIntegral(rightType);
 
 		if (integerDivision) {
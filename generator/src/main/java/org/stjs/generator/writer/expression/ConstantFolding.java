@@ -0,0 +1,143 @@
+package org.stjs.generator.writer.expression;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+
+import org.stjs.generator.GenerationContext;
+import org.stjs.generator.javac.InternalUtils;
+import org.stjs.generator.javac.TreeWrapper;
+import org.stjs.generator.javascript.JavaScriptBuilder;
+import org.stjs.generator.javascript.Keyword;
+import org.stjs.generator.name.DependencyType;
+
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.Tree;
+
+/**
+ * This class replaces the constants by their value when the configuration asks for it (see
+ * {@link org.stjs.generator.GeneratorConfiguration#isInlineConstants()}):
+ *
+ * <pre>
+ * Constants.MAX_ROWS      -&gt; 100
+ * Constants.MAX_ROWS * 2  -&gt; 200
+ * "max:" + MAX_ROWS       -&gt; "max:100"
+ * </pre>
+ *
+ * The values are the ones computed by javac, so they follow the Java rules (integer division, overflow, formatting of the numbers in the
+ * strings). The class declaring an inlined constant is no longer needed when the code runs, so it stays only an
+ * {@link DependencyType#OTHER} dependency. The NaN and infinite values have no literal, so they are left as they are.
+ */
+public final class ConstantFolding {
+	private ConstantFolding() {
+		//
+	}
+
+	/**
+	 * @return the value of the static constant field referenced by the current identifier or member select, or null if the reference
+	 *         is not to be inlined
+	 */
+	public static <JS> JS inlinedField(GenerationContext<JS> context) {
+		if (!context.getConfiguration().isInlineConstants()) {
+			return null;
+		}
+		TreeWrapper<Tree, JS> tw = context.getCurrentWrapper();
+		if (!isStaticField(tw)) {
+			return null;
+		}
+		Element element = tw.getElement();
+		Object value = ((VariableElement) element).getConstantValue();
+		if (value == null) {
+			return null;
+		}
+		JS literal = literal(context, element.asType(), value);
+		if (literal != null) {
+			context.getNames().getTypeName(context, element.getEnclosingElement(), DependencyType.OTHER);
+		}
+		return literal;
+	}
+
+	private static boolean isStaticField(TreeWrapper<Tree, ?> tw) {
+		Element element = tw.getElement();
+		// the fields with templates are not read as properties, so they keep their template
+		return element != null && element.getKind() == ElementKind.FIELD && tw.isStatic() && tw.getFieldTemplate() == null;
+	}
+
+	/**
+	 * @return the values of the constants of the given class and of its inner classes that the other classes can inline, by field name
+	 */
+	public static Map<String, String> inlinableConstants(TypeElement type) {
+		Map<String, String> constants = new TreeMap<String, String>();
+		addInlinableConstants(constants, type);
+		return constants;
+	}
+
+	private static void addInlinableConstants(Map<String, String> constants, TypeElement type) {
+		for (Element member : type.getEnclosedElements()) {
+			if (member.getModifiers().contains(Modifier.PRIVATE)) {
+				continue;
+			}
+			if (member.getKind() == ElementKind.FIELD) {
+				Object value = ((VariableElement) member).getConstantValue();
+				if (value != null) {
+					constants.put(type.getQualifiedName() + "." + member.getSimpleName(), value.toString());
+				}
+			} else if (member instanceof TypeElement) {
+				addInlinableConstants(constants, (TypeElement) member);
+			}
+		}
+	}
+
+	/**
+	 * @return the value of the given expression if all its operands are constants, or null otherwise
+	 */
+	public static <JS> JS folded(GenerationContext<JS> context, ExpressionTree tree) {
+		if (!context.getConfiguration().isInlineConstants()) {
+			return null;
+		}
+		Object value = InternalUtils.constantValue(tree);
+		if (value == null) {
+			return null;
+		}
+		return literal(context, InternalUtils.typeOf(tree), value);
+	}
+
+	private static <JS> JS literal(GenerationContext<JS> context, TypeMirror type, Object value) {
+		JavaScriptBuilder<JS> js = context.js();
+		switch (type.getKind()) {
+		case BOOLEAN:
+			return js.keyword(toBoolean(value) ? Keyword.TRUE : Keyword.FALSE);
+		case CHAR:
+			return js.character(String.valueOf(toChar(value)));
+		case DECLARED:
+			return js.string(value.toString());
+		default:
+			return number(js, (Number) value);
+		}
+	}
+
+	// javac gives the values of the boolean and char expressions as Integer
+	private static boolean toBoolean(Object value) {
+		return value instanceof Boolean ? (Boolean) value : ((Number) value).intValue() != 0;
+	}
+
+	private static char toChar(Object value) {
+		return value instanceof Character ? (Character) value : (char) ((Number) value).intValue();
+	}
+
+	private static <JS> JS number(JavaScriptBuilder<JS> js, Number n) {
+		double d = n.doubleValue();
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			return null;
+		}
+		JS literal = js.number(n);
+		// a negative value could be the operand of a unary minus
+		return n.toString().charAt(0) == '-' ? js.paren(literal) : literal;
+	}
+}
@@ -21,6 +21,10 @@ public class IdentifierWriter<JS> implements WriterContributor<IdentifierTree, J
 
 	@Override
 	public JS visit(WriterVisitor<JS> visitor, IdentifierTree tree, GenerationContext<JS> context) {
+		JS constant = ConstantFolding.inlinedField(context);
+		if (constant != null) {
+			return constant;
+		}
 		String templateName = buildTemplateName(tree, context);
 
 		return visitor.forward(DiscriminatorKey.of(IdentifierWriter.class.getSimpleName(), templateName), tree, context);
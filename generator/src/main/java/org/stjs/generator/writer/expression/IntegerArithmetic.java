@@ -0,0 +1,189 @@
+package org.stjs.generator.writer.expression;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+import org.stjs.generator.GenerationContext;
+import org.stjs.generator.javascript.BinaryOperator;
+import org.stjs.generator.javascript.JavaScriptBuilder;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.util.TreePath;
+
+/**
+ * This class generates the operations on int values when the int-precise mode is on (see
+ * {@link org.stjs.generator.GeneratorConfiguration#isIntPrecise()}), so their result is an int that overflows as in Java:
+ *
+ * <pre>
+ * a + b, a - b, a &gt;&gt;&gt; b -&gt; (a + b) | 0
+ * a * b                 -&gt; Math.imul(a, b)
+ * a / b                 -&gt; (a / b) | 0
+ * (int) l               -&gt; l | 0, for a long value
+ * (int) d               -&gt; stjs.toInt(d), for a double or float value
+ * </pre>
+ *
+ * The narrowing of a long value keeps its low 32 bits, as {@code | 0} does, but the conversion of a floating point value saturates at the
+ * int bounds in Java, so it needs the helper of stjs.js.
+ *
+ * The other operations on int values give already an int in JavaScript. A value added to or multiplied by another int is not coerced, as
+ * the enclosing operation is. The char values are left aside, as their operations are not numeric in JavaScript, and the long values keep
+ * the truncation by stjs.trunc.
+ */
+public final class IntegerArithmetic {
+	/**
+	 * the operations on int values that convert their operands to int, so the sum of int values does not need a coercion before
+	 */
+	private static final Set<Kind> INT_OPERAND_KINDS = EnumSet.of(Kind.PLUS, Kind.MINUS, Kind.MULTIPLY, Kind.AND, Kind.OR, Kind.XOR,
+			Kind.LEFT_SHIFT, Kind.RIGHT_SHIFT, Kind.UNSIGNED_RIGHT_SHIFT);
+
+	/**
+	 * the expressions that need no parentheses to be the operand of the coercion
+	 */
+	private static final Set<Kind> SIMPLE_OPERAND_KINDS = EnumSet.of(Kind.IDENTIFIER, Kind.MEMBER_SELECT, Kind.METHOD_INVOCATION,
+			Kind.ARRAY_ACCESS, Kind.PARENTHESIZED);
+
+	private IntegerArithmetic() {
+		//
+	}
+
+	private static boolean isInt(TypeMirror type) {
+		switch (type.getKind()) {
+		case INT:
+		case SHORT:
+		case BYTE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isFloatingPoint(TypeMirror type) {
+		return type.getKind() == TypeKind.DOUBLE || type.getKind() == TypeKind.FLOAT;
+	}
+
+	/**
+	 * @return true if the operation on values of the given types is generated for int values
+	 */
+	public static boolean isIntOperation(GenerationContext<?> context, TypeMirror leftType, TypeMirror rightType) {
+		return context.getConfiguration().isIntPrecise() && isInt(leftType) && isInt(rightType);
+	}
+
+	private static boolean isIntOperation(BinaryTree tree, TreePath path, GenerationContext<?> context) {
+		TypeMirror leftType = context.getTrees().getTypeMirror(new TreePath(path, tree.getLeftOperand()));
+		TypeMirror rightType = context.getTrees().getTypeMirror(new TreePath(path, tree.getRightOperand()));
+		return isIntOperation(context, leftType, rightType);
+	}
+
+	/**
+	 * @return true if the cast to the given type of a value of the given type is generated as a coercion to int
+	 */
+	public static boolean isIntCast(GenerationContext<?> context, TypeMirror type, TypeMirror valueType) {
+		if (!context.getConfiguration().isIntPrecise() || type.getKind() != TypeKind.INT) {
+			return false;
+		}
+		switch (valueType.getKind()) {
+		case DOUBLE:
+		case FLOAT:
+		case LONG:
+			return true;
+		default:
+			return isInt(valueType);
+		}
+	}
+
+	/**
+	 * @return the operation on the int operands, generated as the operation of a compound assignment
+	 */
+	public static <JS> JS assignedValue(GenerationContext<JS> context, BinaryOperator op, JS left, JS right) {
+		return operation(context.js(), op, left, context.js().paren(right), false);
+	}
+
+	/**
+	 * @return the operation on the int operands of the binary expression at the given path
+	 */
+	public static <JS> JS binary(GenerationContext<JS> context, BinaryOperator op, JS left, JS right, TreePath path) {
+		boolean coercedByParent = isCoercedByParent(path, context);
+		JS expr = operation(context.js(), op, left, right, coercedByParent);
+		return needsCoercion(op, coercedByParent) ? parenIfOperand(context, expr, path) : expr;
+	}
+
+	/**
+	 * @return the value of the cast at the given path, coerced to int if it is not an int already
+	 */
+	public static <JS> JS cast(GenerationContext<JS> context, JS value, TypeMirror valueType, TreePath path) {
+		if (isInt(valueType)) {
+			return value;
+		}
+		JavaScriptBuilder<JS> js = context.js();
+		if (isFloatingPoint(valueType)) {
+			return js.functionCall(js.property(js.name("stjs"), "toInt"), Collections.singleton(value));
+		}
+		Kind valueKind = ((TypeCastTree) path.getLeaf()).getExpression().getKind();
+		JS operand = SIMPLE_OPERAND_KINDS.contains(valueKind) ? value : js.paren(value);
+		return parenIfOperand(context, toInt(js, operand), path);
+	}
+
+	private static boolean needsCoercion(BinaryOperator op, boolean coercedByParent) {
+		switch (op) {
+		case DIVIDE:
+			return true;
+		case PLUS:
+		case MINUS:
+		case UNSIGNED_RIGHT_SHIFT:
+			return !coercedByParent;
+		default:
+			return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <JS> JS operation(JavaScriptBuilder<JS> js, BinaryOperator op, JS left, JS right, boolean coercedByParent) {
+		if (op == BinaryOperator.MULTIPLY) {
+			return js.functionCall(js.property(js.name("Math"), "imul"), Arrays.asList(left, right));
+		}
+		JS expr = js.binary(op, Arrays.asList(left, right));
+		return needsCoercion(op, coercedByParent) ? toInt(js, js.paren(expr)) : expr;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <JS> JS toInt(JavaScriptBuilder<JS> js, JS expr) {
+		return js.binary(BinaryOperator.OR, Arrays.asList(expr, js.number(0)));
+	}
+
+	private static TreePath skipParens(TreePath path) {
+		TreePath p = path.getParentPath();
+		while (p.getLeaf().getKind() == Kind.PARENTHESIZED) {
+			p = p.getParentPath();
+		}
+		return p;
+	}
+
+	/**
+	 * @return true if the value of the expression at the given path is an operand of an operation that converts it to int
+	 */
+	private static boolean isCoercedByParent(TreePath path, GenerationContext<?> context) {
+		TreePath parentPath = skipParens(path);
+		Tree parent = parentPath.getLeaf();
+		return INT_OPERAND_KINDS.contains(parent.getKind()) && isIntOperation((BinaryTree) parent, parentPath, context);
+	}
+
+	/**
+	 * the coercion has a lower precedence than the other arithmetic operators, so it needs parentheses when it is their operand
+	 */
+	private static <JS> JS parenIfOperand(GenerationContext<JS> context, JS expr, TreePath path) {
+		Tree parent = path.getParentPath().getLeaf();
+		if (parent instanceof BinaryTree || parent instanceof UnaryTree) {
+			return context.js().paren(expr);
+		}
+		return expr;
+	}
+}
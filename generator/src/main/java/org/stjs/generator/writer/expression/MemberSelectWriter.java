@@ -4,6 +4,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 
 import org.stjs.generator.GenerationContext;
+import org.stjs.generator.javac.ElementUtils;
 import org.stjs.generator.javac.TreeWrapper;
 import org.stjs.generator.visitor.DiscriminatorKey;
 import org.stjs.generator.writer.WriterContributor;
@@ -20,8 +21,20 @@ import com.sun.source.tree.MemberSelectTree;
  */
 public class MemberSelectWriter<JS> implements WriterContributor<MemberSelectTree, JS> {
 
+	private boolean isTypeSelect(MemberSelectTree tree, GenerationContext<JS> context) {
+		Element target = context.getCurrentWrapper().child(tree.getExpression()).getElement();
+		return target != null && ElementUtils.isTypeKind(target);
+	}
+
 	@Override
 	public JS visit(WriterVisitor<JS> visitor, MemberSelectTree tree, GenerationContext<JS> context) {
+		// the constants are inlined only when selected from their type, as an expression would still have to be evaluated
+		if (isTypeSelect(tree, context)) {
+			JS constant = ConstantFolding.inlinedField(context);
+			if (constant != null) {
+				return constant;
+			}
+		}
 		String templateName = buildTemplateName(context);
 
 		return visitor.forward(DiscriminatorKey.of(MemberSelectWriter.class.getSimpleName(), templateName), tree, context);
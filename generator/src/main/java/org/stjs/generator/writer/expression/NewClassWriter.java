@@ -2,13 +2,24 @@ package org.stjs.generator.writer.expression;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
 
 import org.stjs.generator.GenerationContext;
+import org.stjs.generator.GeneratorConstants;
+import org.stjs.generator.javac.InternalUtils;
 import org.stjs.generator.javac.TreeUtils;
 import org.stjs.generator.javac.TreeWrapper;
+import org.stjs.generator.javascript.AssignOperator;
+import org.stjs.generator.javascript.BinaryOperator;
 import org.stjs.generator.javascript.JavaScriptBuilder;
 import org.stjs.generator.javascript.Keyword;
 import org.stjs.generator.javascript.NameValue;
@@ -16,9 +27,11 @@ import org.stjs.generator.name.DependencyType;
 import org.stjs.generator.writer.WriterContributor;
 import org.stjs.generator.writer.WriterVisitor;
 import org.stjs.generator.writer.declaration.MethodWriter;
+import org.stjs.javascript.annotation.GlobalScope;
 
 import com.sun.source.tree.AssignmentTree;
 import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.ExpressionStatementTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.IdentifierTree;
@@ -27,8 +40,13 @@ import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewClassTree;
 import com.sun.source.tree.StatementTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
 
 public class NewClassWriter<JS> implements WriterContributor<NewClassTree, JS> {
+	private static final String CAPTURED_VARIABLE_PREFIX = "val$";
+
 	public static BlockTree getDoubleBracesBlock(NewClassTree tree) {
 		if (tree.getClassBody() == null) {
 			return null;
@@ -119,14 +137,140 @@ public class NewClassWriter<JS> implements WriterContributor<NewClassTree, JS> {
 		return func;
 	}
 
-	private JS getAnonymousClassDeclaration(WriterVisitor<JS> visitor, NewClassTree tree, GenerationContext<JS> context) {
+	private JS getAnonymousClassDeclaration(WriterVisitor<JS> visitor, TreeWrapper<NewClassTree, JS> tw) {
+		NewClassTree tree = tw.getTree();
+		GenerationContext<JS> context = tw.getContext();
 		if (tree.getClassBody() == null) {
 			return null;
 		}
 
 		JS typeDeclaration = visitor.scan(tree.getClassBody(), context);
+		List<JS> arguments = arguments(visitor, tree, context);
+
+		JS type;
+		if (isHoisted(tw)) {
+			type = getHoistedAnonymousClass(tree.getClassBody(), context, typeDeclaration);
+			for (Element variable : getCapturedVariables(tree.getClassBody())) {
+				arguments.add(context.js().name(variable.getSimpleName()));
+			}
+		} else {
+			type = context.js().paren(typeDeclaration);
+		}
+		return context.js().newExpression(type, arguments);
+	}
+
+	private static Element getTopLevelType(Element type) {
+		Element topLevelType = type;
+		while (topLevelType.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+			topLevelType = topLevelType.getEnclosingElement();
+		}
+		return topLevelType;
+	}
 
-		return context.js().newExpression(context.js().paren(typeDeclaration), arguments(visitor, tree, context));
+	/**
+	 * @return true if the anonymous class created by the given expression is defined only once. The classes written as functions or as
+	 *         object literals are not classes in JavaScript, and the classes inside a {@link GlobalScope} type have no top-level type to
+	 *         keep their definition.
+	 */
+	private static <JS> boolean isHoisted(TreeWrapper<NewClassTree, JS> tw) {
+		NewClassTree tree = tw.getTree();
+		GenerationContext<JS> context = tw.getContext();
+		if (!context.getConfiguration().isHoistAnonymousClasses() || tree.getClassBody() == null) {
+			return false;
+		}
+		TreeWrapper<ExpressionTree, JS> type = tw.child(tree.getIdentifier());
+		if (type.isJavaScriptFunction() || type.isSyntheticType() || getDoubleBracesBlock(tree) != null) {
+			return false;
+		}
+		Element topLevelType = getTopLevelType(TreeUtils.elementFromDeclaration(tree.getClassBody()));
+		return context.getAnnotation(topLevelType, GlobalScope.class) == null && getCapturedVariables(tree.getClassBody()) != null;
+	}
+
+	/**
+	 * @return the local variables and parameters of the enclosing methods that the methods of the given anonymous class use, in the
+	 *         order of their first use, or null if they are used outside of its methods (e.g. by a field initializer, that runs only
+	 *         once when the class is hoisted) or if it uses a local class
+	 */
+	private static List<Element> getCapturedVariables(ClassTree classBody) {
+		Set<Element> captured = new LinkedHashSet<Element>();
+		for (Tree member : classBody.getMembers()) {
+			Set<Element> memberCaptured = getUsedLocalVariables(member);
+			if (memberCaptured.isEmpty()) {
+				continue;
+			}
+			if (!(member instanceof MethodTree)) {
+				return null;
+			}
+			for (Element variable : memberCaptured) {
+				// the arguments parameter is the JavaScript arguments of the methods of the class
+				if (variable.getKind() == ElementKind.CLASS
+						|| GeneratorConstants.ARGUMENTS_PARAMETER.equals(variable.getSimpleName().toString())) {
+					return null;
+				}
+			}
+			captured.addAll(memberCaptured);
+		}
+		return new ArrayList<Element>(captured);
+	}
+
+	/**
+	 * @return the local variables and the parameters of the enclosing methods used by the hoisted anonymous class at the given path. They
+	 *         are passed as the last arguments of its constructor, which keeps them in the properties named by
+	 *         {@link #getCapturedVariableProperty(Element)}. The list is empty if the class at the path is not a hoisted anonymous class.
+	 */
+	public static <JS> List<Element> getHoistedCapturedVariables(TreePath classPath, GenerationContext<JS> context) {
+		if (!(classPath.getLeaf() instanceof ClassTree) || !(classPath.getParentPath().getLeaf() instanceof NewClassTree)) {
+			return Collections.emptyList();
+		}
+		TreeWrapper<NewClassTree, JS> tw = context.wrap(classPath.getParentPath());
+		if (!isHoisted(tw)) {
+			return Collections.emptyList();
+		}
+		return getCapturedVariables((ClassTree) classPath.getLeaf());
+	}
+
+	/**
+	 * @return the name of the property of the instances of a hoisted anonymous class that keeps the value of the given captured variable
+	 */
+	public static String getCapturedVariableProperty(Element variable) {
+		return CAPTURED_VARIABLE_PREFIX + variable.getSimpleName();
+	}
+
+	/**
+	 * @return the local variables, parameters and local classes declared outside the given tree that it uses
+	 */
+	public static Set<Element> getUsedLocalVariables(Tree tree) {
+		CapturedVariablesScanner scanner = new CapturedVariablesScanner();
+		scanner.scan(tree, null);
+		return scanner.captured;
+	}
+
+	/**
+	 * an anonymous class is defined only once, when it is first created, and kept in a property of the top-level type:
+	 *
+	 * <pre>
+	 * new (Outer.Outer$1 || (Outer.Outer$1 = stjs.extend(function Outer$1(x0, value){this.val$value = value; ...}, ...)))(args, value)
+	 * </pre>
+	 *
+	 * so the next creations do not build again its prototype. The property is named after the binary name of the anonymous class, as
+	 * the static properties of a type are copied to its subtypes. The variables of the enclosing methods that the class uses are passed
+	 * to its constructor, that keeps them in the instance, and each method reads back the ones it uses in local variables of the same
+	 * names. They are effectively final, so their copies do not change. The outer instance is not captured, as the checks forbid its use.
+	 * @return the expression of the anonymous class
+	 */
+	private JS getHoistedAnonymousClass(ClassTree classBody, GenerationContext<JS> context, JS typeDeclaration) {
+		TypeElement anonymousType = TreeUtils.elementFromDeclaration(classBody);
+		Element topLevelType = getTopLevelType(anonymousType);
+
+		JavaScriptBuilder<JS> js = context.js();
+		String topLevelTypeName = context.getNames().getTypeName(context, topLevelType, DependencyType.STATIC);
+		String propertyName = InternalUtils.getSimpleName(anonymousType);
+		JS cached = js.property(js.name(topLevelTypeName), propertyName);
+		JS definition = js.assignment(AssignOperator.ASSIGN, js.property(js.name(topLevelTypeName), propertyName), typeDeclaration);
+
+		@SuppressWarnings("unchecked")
+		JS or = js.binary(BinaryOperator.CONDITIONAL_OR, Arrays.asList(cached, js.paren(definition)));
+		return js.paren(or);
 	}
 
 	private List<JS> arguments(WriterVisitor<JS> visitor, NewClassTree tree, GenerationContext<JS> context) {
@@ -156,7 +300,7 @@ public class NewClassWriter<JS> implements WriterContributor<NewClassTree, JS> {
 			return js;
 		}
 
-		js = getAnonymousClassDeclaration(visitor, tree, context);
+		js = getAnonymousClassDeclaration(visitor, tw);
 		if (js != null) {
 			return js;
 		}
@@ -171,4 +315,47 @@ public class NewClassWriter<JS> implements WriterContributor<NewClassTree, JS> {
 
 	}
 
+	/**
+	 * finds the local variables, the parameters and the local classes declared outside a tree that it uses
+	 */
+	private static final class CapturedVariablesScanner extends TreeScanner<Void, Void> {
+		private final Set<Element> declared = new HashSet<Element>();
+		private final Set<Element> captured = new LinkedHashSet<Element>();
+
+		private static boolean isLocal(Element element) {
+			switch (element.getKind()) {
+			case LOCAL_VARIABLE:
+			case PARAMETER:
+			case EXCEPTION_PARAMETER:
+			case RESOURCE_VARIABLE:
+				return true;
+			case CLASS:
+				return ((TypeElement) element).getNestingKind() == NestingKind.LOCAL;
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		public Void visitVariable(VariableTree tree, Void p) {
+			declared.add(TreeUtils.elementFromDeclaration(tree));
+			return super.visitVariable(tree, p);
+		}
+
+		@Override
+		public Void visitClass(ClassTree tree, Void p) {
+			declared.add(TreeUtils.elementFromDeclaration(tree));
+			return super.visitClass(tree, p);
+		}
+
+		@Override
+		public Void visitIdentifier(IdentifierTree tree, Void p) {
+			Element element = InternalUtils.symbol(tree);
+			// a declaration is always visited before its uses
+			if (element != null && isLocal(element) && !declared.contains(element)) {
+				captured.add(element);
+			}
+			return null;
+		}
+	}
 }
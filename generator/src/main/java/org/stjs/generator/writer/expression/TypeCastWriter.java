@@ -18,6 +18,10 @@ public class TypeCastWriter<JS> implements WriterContributor<TypeCastTree, JS> {
 	public JS visit(WriterVisitor<JS> visitor, TypeCastTree tree, GenerationContext<JS> context) {
 		TypeMirror type = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getType()));
 		JS expr = visitor.scan(tree.getExpression(), context);
+		TypeMirror valueType = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getExpression()));
+		if (IntegerArithmetic.isIntCast(context, type, valueType)) {
+			return IntegerArithmetic.cast(context, expr, valueType, context.getCurrentPath());
+		}
 		if (TypesUtils.isIntegral(type)) {
 			// add explicit cast in this case
 			JS target = context.js().property(context.js().name("stjs"), "trunc");
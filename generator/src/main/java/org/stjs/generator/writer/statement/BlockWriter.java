@@ -3,15 +3,29 @@ package org.stjs.generator.writer.statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
 
 import org.stjs.generator.GenerationContext;
+import org.stjs.generator.javac.TreeUtils;
+import org.stjs.generator.javascript.AssignOperator;
 import org.stjs.generator.javascript.JavaScriptBuilder;
+import org.stjs.generator.javascript.Keyword;
+import org.stjs.generator.utils.JavaNodes;
 import org.stjs.generator.writer.WriterContributor;
 import org.stjs.generator.writer.WriterVisitor;
+import org.stjs.generator.writer.declaration.FieldWriter;
+import org.stjs.generator.writer.expression.NewClassWriter;
 
 import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ExpressionStatementTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
 
 /**
  * regular blocks. The static blocks are wrapped in a anonymous function to prevent global scope pollution.
@@ -20,6 +34,7 @@ import com.sun.source.tree.VariableTree;
  */
 public class BlockWriter<JS> implements WriterContributor<BlockTree, JS> {
 	private final MultipleVariableWriter<JS> multipleVariableWriter = new MultipleVariableWriter<JS>();
+	private final FieldWriter<JS> fieldWriter = new FieldWriter<JS>();
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -42,6 +57,8 @@ public class BlockWriter<JS> implements WriterContributor<BlockTree, JS> {
 			}
 			jsStatements.add(jsNodes);
 		}
+		addFieldInitializers(visitor, tree, context, jsStatements);
+		addCapturedVariables(context, jsStatements);
 		JS block = js.block(jsStatements);
 
 		if (tree.isStatic()) {
@@ -53,6 +70,64 @@ public class BlockWriter<JS> implements WriterContributor<BlockTree, JS> {
 		return context.withPosition(tree, block);
 	}
 
+	private static boolean isSuperConstructorCall(StatementTree stmt) {
+		return stmt instanceof ExpressionStatementTree && ((ExpressionStatementTree) stmt).getExpression() instanceof MethodInvocationTree
+				&& TreeUtils.isSuperCall((MethodInvocationTree) ((ExpressionStatementTree) stmt).getExpression());
+	}
+
+	/**
+	 * if the configuration asks for it, the instance fields are initialized in the body of the constructors, after the call of the super
+	 * class constructor that initializes the fields of the super class, so all the objects of the class get their fields in the same order.
+	 * The constructors calling another constructor of the class with this(...) leave it the initialization.
+	 */
+	private void addFieldInitializers(WriterVisitor<JS> visitor, BlockTree tree, GenerationContext<JS> context, List<JS> jsStatements) {
+		if (!context.getConfiguration().isInitializeFieldsInConstructor()) {
+			return;
+		}
+		TreePath methodPath = context.getCurrentPath().getParentPath();
+		Tree parent = methodPath.getLeaf();
+		if (!JavaNodes.isConstructor(parent) || TreeUtils.containsThisConstructorInvocation((MethodTree) parent)) {
+			return;
+		}
+		List<? extends StatementTree> statements = tree.getStatements();
+		int position = !statements.isEmpty() && isSuperConstructorCall(statements.get(0)) ? 1 : 0;
+		jsStatements.addAll(position, fieldWriter.getConstructorInitializers(visitor, methodPath, context));
+	}
+
+	/**
+	 * the hoisted anonymous classes receive the variables of the enclosing methods they use as arguments of their constructor, that keeps
+	 * them in the instance before calling the super class constructor, as it may call the methods using them: this.val$x = x; Each method
+	 * reads back the ones it uses in local variables of the same names, so their uses, including the ones of the inline functions and
+	 * classes of the method, are written as if they were still captured: var x = this.val$x;
+	 */
+	private void addCapturedVariables(GenerationContext<JS> context, List<JS> jsStatements) {
+		TreePath methodPath = context.getCurrentPath().getParentPath();
+		if (!(methodPath.getLeaf() instanceof MethodTree)) {
+			return;
+		}
+		List<Element> captured = NewClassWriter.getHoistedCapturedVariables(methodPath.getParentPath(), context);
+		if (captured.isEmpty()) {
+			return;
+		}
+		JavaScriptBuilder<JS> js = context.js();
+		List<JS> stmts = new ArrayList<JS>();
+		if (JavaNodes.isConstructor(methodPath.getLeaf())) {
+			for (Element variable : captured) {
+				JS property = js.property(js.keyword(Keyword.THIS), NewClassWriter.getCapturedVariableProperty(variable));
+				stmts.add(js.expressionStatement(js.assignment(AssignOperator.ASSIGN, property, js.name(variable.getSimpleName()))));
+			}
+		} else {
+			Set<Element> used = NewClassWriter.getUsedLocalVariables(methodPath.getLeaf());
+			for (Element variable : captured) {
+				if (used.contains(variable)) {
+					JS property = js.property(js.keyword(Keyword.THIS), NewClassWriter.getCapturedVariableProperty(variable));
+					stmts.add(js.variableDeclaration(true, variable.getSimpleName(), property));
+				}
+			}
+		}
+		jsStatements.addAll(0, stmts);
+	}
+
 	/**
 	 * @return the
 	 */
@@ -1,45 +1,72 @@
 package org.stjs.generator.writer.statement;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
+import javax.lang.model.element.Element;
 import javax.lang.model.type.TypeMirror;
 
 import org.stjs.generator.GenerationContext;
 import org.stjs.generator.javac.InternalUtils;
+import org.stjs.generator.javac.TreeUtils;
 import org.stjs.generator.javac.TypesUtils;
+import org.stjs.generator.javascript.BinaryOperator;
 import org.stjs.generator.javascript.JavaScriptBuilder;
+import org.stjs.generator.javascript.NameValue;
 import org.stjs.generator.javascript.UnaryOperator;
 import org.stjs.generator.writer.WriterContributor;
 import org.stjs.generator.writer.WriterVisitor;
 import org.stjs.javascript.Array;
+import org.stjs.javascript.annotation.Template;
 
 import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.util.TreeScanner;
 
 /**
  * generates from
- * 
+ *
  * <pre>
  * for (String x : list) {
  * }
  * </pre>
- * 
+ *
  * <pre>
  * for(var x in list) {
  * }
  * </pre>
- * 
+ *
  * Warning: the iteration is on indexes as in JavaScript, not on values as in Java!
+ * <p>
+ * If the configuration asks for indexed loops, the iteration on an {@link Array} generates instead
+ *
+ * <pre>
+ * for(var x = 0, x$length = (list).length; x &lt; x$length; x++) {
+ * }
+ * </pre>
+ *
+ * when x is only used as the index of a get or set template of the body, where a number and its string are the same property. Otherwise
+ * the index is counted in x$index and x is given its string, as in the for-in loop.
  * @author acraciun
  */
 public class EnhancedForLoopWriter<JS> implements WriterContributor<EnhancedForLoopTree, JS> {
+	private static final String INDEX_SUFFIX = "$index";
+	private static final String LENGTH_SUFFIX = "$length";
+
+	private static boolean isArrayLoop(EnhancedForLoopTree tree) {
+		TypeMirror iteratedType = InternalUtils.typeOf(tree.getExpression());
+		return TypesUtils.isDeclaredOfName(iteratedType, Array.class.getName());
+	}
 
 	private JS generateArrayHasOwnProperty(EnhancedForLoopTree tree, GenerationContext<JS> context, JS iterated, JS body) {
 		if (!context.getConfiguration().isGenerateArrayHasOwnProperty()) {
 			return body;
 		}
 
-		TypeMirror iteratedType = InternalUtils.typeOf(tree.getExpression());
-		if (!TypesUtils.isDeclaredOfName(iteratedType, Array.class.getName())) {
+		if (!isArrayLoop(tree)) {
 			return body;
 		}
 		JavaScriptBuilder<JS> js = context.js();
@@ -55,13 +82,108 @@ public class EnhancedForLoopWriter<JS> implements WriterContributor<EnhancedForL
 		return js.addStatementBeginning(body, ifs);
 	}
 
+	/**
+	 * the indexed loop never visits the properties added to Array.prototype, so it needs no hasOwnProperty check. Unlike the for-in loop,
+	 * it visits the holes of the sparse arrays.
+	 */
+	private JS generateIndexedLoop(EnhancedForLoopTree tree, GenerationContext<JS> context, JS iterated, JS body) {
+		JavaScriptBuilder<JS> js = context.js();
+		String name = tree.getVariable().getName().toString();
+		String length = name + LENGTH_SUFFIX;
+		String index = name;
+		JS loopBody = body;
+		if (!IndexUsesScanner.usesOnlyAsIndex(tree, context)) {
+			index = name + INDEX_SUFFIX;
+			// var x = String(x$index);
+			JS string = js.functionCall(js.name("String"), Collections.singleton(js.name(index)));
+			loopBody = js.addStatementBeginning(body, js.variableDeclaration(true, name, string));
+		}
+
+		@SuppressWarnings("unchecked")
+		List<NameValue<JS>> vars = Arrays.asList(NameValue.of(index, js.number(0)),
+				NameValue.of(length, js.property(js.paren(iterated), "length")));
+		JS init = js.variableDeclaration(false, vars);
+		JS condition = js.binary(BinaryOperator.LESS_THAN, Arrays.asList(js.name(index), js.name(length)));
+		JS update = js.unary(UnaryOperator.POSTFIX_INCREMENT, js.name(index));
+		return js.forLoop(init, condition, update, loopBody);
+	}
+
 	@Override
 	public JS visit(WriterVisitor<JS> visitor, EnhancedForLoopTree tree, GenerationContext<JS> context) {
 		JS iterator = visitor.scan(tree.getVariable(), context);
 		JS iterated = visitor.scan(tree.getExpression(), context);
 		JS body = visitor.scan(tree.getStatement(), context);
 
-		body = generateArrayHasOwnProperty(tree, context, iterated, body);
-		return context.withPosition(tree, context.js().forInLoop(iterator, iterated, body));
+		JS loop;
+		if (context.getConfiguration().isGenerateArrayIndexedLoops() && isArrayLoop(tree)) {
+			loop = generateIndexedLoop(tree, context, iterated, body);
+		} else {
+			loop = context.js().forInLoop(iterator, iterated, generateArrayHasOwnProperty(tree, context, iterated, body));
+		}
+		return context.withPosition(tree, loop);
+	}
+
+	/**
+	 * checks that the variable of the loop is only used in its body as the index of a get or set template, i.e. array.$get(x),
+	 * array.$set(x, value), $get(obj, x) or $set(obj, x, value), all generated as an element access.
+	 */
+	private static final class IndexUsesScanner extends TreeScanner<Void, Void> {
+		private final Element variable;
+		private final GenerationContext<?> context;
+		private boolean onlyIndexUses = true;
+
+		private IndexUsesScanner(Element variable, GenerationContext<?> context) {
+			super();
+			this.variable = variable;
+			this.context = context;
+		}
+
+		public static boolean usesOnlyAsIndex(EnhancedForLoopTree tree, GenerationContext<?> context) {
+			IndexUsesScanner scanner = new IndexUsesScanner(TreeUtils.elementFromDeclaration(tree.getVariable()), context);
+			scanner.scan(tree.getStatement(), null);
+			return scanner.onlyIndexUses;
+		}
+
+		@Override
+		public Void visitIdentifier(IdentifierTree tree, Void p) {
+			if (variable.equals(InternalUtils.symbol(tree))) {
+				onlyIndexUses = false;
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitMethodInvocation(MethodInvocationTree tree, Void p) {
+			int index = getTemplateIndex(tree);
+			scan(tree.getMethodSelect(), p);
+			for (int i = 0; i < tree.getArguments().size(); ++i) {
+				ExpressionTree arg = tree.getArguments().get(i);
+				if (i != index || !variable.equals(InternalUtils.symbol(arg))) {
+					scan(arg, p);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return the position of the argument used as the index of the element access generated by a get or set template, -1 for the
+		 *         other methods
+		 */
+		private int getTemplateIndex(MethodInvocationTree tree) {
+			Template template = context.getAnnotation(TreeUtils.elementFromUse(tree), Template.class);
+			if (template == null) {
+				return -1;
+			}
+			int valueCount;
+			if ("get".equals(template.value())) {
+				valueCount = 0;
+			} else if ("set".equals(template.value())) {
+				valueCount = 1;
+			} else {
+				return -1;
+			}
+			// the index is followed by the value to set, if any
+			return tree.getArguments().size() - 1 - valueCount;
+		}
 	}
 }
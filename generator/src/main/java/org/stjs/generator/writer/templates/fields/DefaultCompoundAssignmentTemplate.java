@@ -3,6 +3,7 @@ package org.stjs.generator.writer.templates.fields;
 import java.util.Arrays;
 import java.util.Collections;
 
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 
 import org.stjs.generator.GenerationContext;
@@ -12,19 +13,30 @@ import org.stjs.generator.javascript.BinaryOperator;
 import org.stjs.generator.javascript.JavaScriptBuilder;
 import org.stjs.generator.writer.WriterContributor;
 import org.stjs.generator.writer.WriterVisitor;
+import org.stjs.generator.writer.expression.IntegerArithmetic;
 
+import com.sun.source.tree.ArrayAccessTree;
 import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.ParenthesizedTree;
 import com.sun.source.tree.Tree.Kind;
 import com.sun.source.util.TreePath;
 
 public class DefaultCompoundAssignmentTemplate<JS> implements WriterContributor<CompoundAssignmentTree, JS> {
 
 	/**
-	 * handle the case a /= b, where a and b are integers. it generates: a = stjs.trunc(a/(b));
+	 * handle the case a /= b, where a and b are integers. it generates: a = stjs.trunc(a/(b)); In the int-precise mode, the operations
+	 * on int values that need it generate: a = (a + (b)) | 0; This writes the left side twice, so it is done only when the left side has
+	 * no side effect. Otherwise the native compound operator is kept (e.g. obj().f += b), and the value is not coerced to int.
 	 */
 	public static <JS> JS rightSide(JS left, JS right, CompoundAssignmentTree tree, GenerationContext<JS> context) {
 		TypeMirror leftType = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getVariable()));
 		TypeMirror rightType = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getExpression()));
+		if (isIntAssignment(tree, leftType, rightType, context)) {
+			return IntegerArithmetic.assignedValue(context, AssignOperator.valueOf(tree.getKind()).getBinaryOperator(), left, right);
+		}
 		JavaScriptBuilder<JS> js = context.js();
 		boolean integerDivision =
 				tree.getKind() == Kind.DIVIDE_ASSIGNMENT && TypesUtils.isIntegral(leftType) && TypesUtils.isIntegral(rightType);
@@ -38,9 +50,54 @@ public class DefaultCompoundAssignmentTemplate<JS> implements WriterContributor<
 		return right;
 	}
 
+	/**
+	 * @return true if the operation is on int values and needs a coercion to int: the compound assignments that assign the result of
+	 *         the bitwise operators need none
+	 */
+	private static boolean isIntAssignment(CompoundAssignmentTree tree, TypeMirror leftType, TypeMirror rightType,
+			GenerationContext<?> context) {
+		if (leftType.getKind() != TypeKind.INT || !IntegerArithmetic.isIntOperation(context, leftType, rightType)
+				|| !isSideEffectFree(tree.getVariable())) {
+			return false;
+		}
+		switch (tree.getKind()) {
+		case PLUS_ASSIGNMENT:
+		case MINUS_ASSIGNMENT:
+		case MULTIPLY_ASSIGNMENT:
+		case DIVIDE_ASSIGNMENT:
+		case UNSIGNED_RIGHT_SHIFT_ASSIGNMENT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if the expression can be evaluated twice with the same result: a variable, or the field or the element of a variable
+	 */
+	private static boolean isSideEffectFree(ExpressionTree tree) {
+		switch (tree.getKind()) {
+		case IDENTIFIER:
+			return true;
+		case MEMBER_SELECT:
+			return isSideEffectFree(((MemberSelectTree) tree).getExpression());
+		case ARRAY_ACCESS:
+			ArrayAccessTree access = (ArrayAccessTree) tree;
+			return isSideEffectFree(access.getExpression())
+					&& (access.getIndex() instanceof LiteralTree || isSideEffectFree(access.getIndex()));
+		case PARENTHESIZED:
+			return isSideEffectFree(((ParenthesizedTree) tree).getExpression());
+		default:
+			return false;
+		}
+	}
+
 	public static <JS> AssignOperator getAssignOperator(CompoundAssignmentTree tree, GenerationContext<JS> context) {
 		TypeMirror leftType = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getVariable()));
 		TypeMirror rightType = context.getTrees().getTypeMirror(new TreePath(context.getCurrentPath(), tree.getExpression()));
+		if (isIntAssignment(tree, leftType, rightType, context)) {
+			return AssignOperator.ASSIGN;
+		}
 		boolean integerDivision =
 				tree.getKind() == Kind.DIVIDE_ASSIGNMENT && TypesUtils.isIntegral(leftType) && TypesUtils.isIntegral(rightType);
 		return integerDivision ? AssignOperator.ASSIGN : AssignOperator.valueOf(tree.getKind());
@@ -447,6 +447,26 @@ if (typeof Math.trunc === "function") {
 	}
 }
 
+if (typeof Math.imul !== "function") {
+	// the multiplication of two int, with the overflow of Java
+	Math.imul=function(a, b) {
+		var aHigh = (a >>> 16) & 0xffff, aLow = a & 0xffff;
+		var bHigh = (b >>> 16) & 0xffff, bLow = b & 0xffff;
+		return (aLow * bLow + (((aHigh * bLow + aLow * bHigh) << 16) >>> 0)) | 0;
+	}
+}
+
+stjs.toInt=function(n) {
+	// the conversion of a double or float to int, that saturates at the int bounds as in Java instead of wrapping as (n | 0) does
+	if (n != n)
+		return 0;
+	if (n >= 2147483647)
+		return 2147483647;
+	if (n <= -2147483648)
+		return -2147483648;
+	return n | 0;
+}
+
 stjs.converters = {
 	Date : function(s, type) {
 		var a = /^(\d{4})-(\d{2})-(\d{2}) (\d{2}):(\d{2}):(\d{2}(?:\.\d*)?)$/
@@ -0,0 +1,109 @@
+package org.stjs.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+public class ClasspathCacheTest {
+	private static final long MODIFICATION_DELAY = 10000;
+
+	private final ClassLoader parent = ClassLoader.getSystemClassLoader().getParent();
+
+	private static File jarOf(Class<?> clazz) throws URISyntaxException {
+		return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+	}
+
+	@Test
+	public void testSameJarsShareTheClassLoader() throws Exception {
+		ClasspathCache cache = new ClasspathCache(Long.MAX_VALUE);
+		List<File> jars = Collections.singletonList(jarOf(Test.class));
+
+		assertSame(cache.getClassLoader(jars, parent), cache.getClassLoader(jars, parent));
+		assertNotSame(cache.getClassLoader(jars, parent), cache.getClassLoader(jars, ClassLoader.getSystemClassLoader()));
+	}
+
+	@Test
+	public void testDifferentClasspathsShareTheJars() throws Exception {
+		ClasspathCache cache = new ClasspathCache(Long.MAX_VALUE);
+		File junit = jarOf(Test.class);
+		File guava = jarOf(ImmutableList.class);
+
+		// e.g. two modules of a reactor
+		ClassLoader module1 = cache.getClassLoader(Collections.singletonList(junit), parent);
+		ClasspathCache.CachedJar junitJar = cache.getJar(junit);
+		ClassLoader module2 = cache.getClassLoader(Arrays.asList(guava, junit), parent);
+
+		assertNotSame(module1, module2);
+		assertSame(junitJar, cache.getJar(junit));
+		assertSame(junitJar.getPackageIndex(), cache.getPackageIndex(junit));
+		// the classes are defined by the class loader of each module
+		assertSame(module1, module1.loadClass(Test.class.getName()).getClassLoader());
+		assertSame(module2, module2.loadClass(Test.class.getName()).getClassLoader());
+		assertEquals("org.junit", module2.loadClass(Test.class.getName()).getPackage().getName());
+	}
+
+	@Test
+	public void testChangedJarsAreReadAgain() throws Exception {
+		ClasspathCache cache = new ClasspathCache(Long.MAX_VALUE);
+		File jar = copyOf(jarOf(Test.class));
+		List<File> jars = Collections.singletonList(jar);
+
+		ClassLoader classLoader = cache.getClassLoader(jars, parent);
+		ClasspathCache.CachedJar cachedJar = cache.getJar(jar);
+		// the jar is rebuilt: its modification date changes, even if its size does not
+		assertTrue(jar.setLastModified(jar.lastModified() + MODIFICATION_DELAY));
+
+		assertNotSame(cachedJar, cache.getJar(jar));
+		assertNotSame(classLoader, cache.getClassLoader(jars, parent));
+	}
+
+	private static File copyOf(File file) throws IOException {
+		File copy = File.createTempFile("stjs-classpath-cache", ".jar");
+		copy.deleteOnExit();
+		Files.copy(file, copy);
+		return copy;
+	}
+
+	@Test
+	public void testLeastRecentlyUsedAreEvicted() throws Exception {
+		File junit = jarOf(Test.class);
+		File guava = jarOf(ImmutableList.class);
+		// room for the largest jar only
+		ClasspathCache cache = new ClasspathCache(Math.max(junit.length(), guava.length()));
+
+		ClassLoader junitClassLoader = cache.getClassLoader(Collections.singletonList(junit), parent);
+		cache.getClassLoader(Collections.singletonList(guava), parent);
+		assertNotSame(junitClassLoader, cache.getClassLoader(Collections.singletonList(junit), parent));
+	}
+
+	@Test
+	public void testProjectClassesComeFirst() throws Exception {
+		ClasspathCache cache = new ClasspathCache(Long.MAX_VALUE);
+		File testClasses = jarOf(ClasspathCacheTest.class);
+		File junit = jarOf(Test.class);
+
+		URLClassLoader projectClassLoader = cache.newProjectClassLoader(Arrays.asList(junit, testClasses), parent);
+		try {
+			ClassLoader librariesClassLoader = cache.getClassLoader(Collections.singletonList(junit), parent);
+			assertSame(projectClassLoader, projectClassLoader.loadClass(ClasspathCacheTest.class.getName()).getClassLoader());
+			assertSame(librariesClassLoader, projectClassLoader.loadClass(Test.class.getName()).getClassLoader());
+		}
+		finally {
+			projectClassLoader.close();
+		}
+	}
+}
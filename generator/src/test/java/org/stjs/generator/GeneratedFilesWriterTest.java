@@ -0,0 +1,32 @@
+package org.stjs.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class GeneratedFilesWriterTest {
+	@Test(timeout = 10000)
+	public void testWriteAfterClose() throws Exception {
+		File file = File.createTempFile("stjs", ".js");
+		file.deleteOnExit();
+		byte[] content = { 'a' };
+
+		GeneratedFilesWriter writer = new GeneratedFilesWriter();
+		writer.write(new GeneratedFilesWriter.Output(file).content(file, content));
+		writer.close();
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+
+		try {
+			writer.write(new GeneratedFilesWriter.Output(file).content(file, content));
+			fail("The write after close should fail");
+		}
+		catch (STJSRuntimeException e) {
+			// the output is not pending, so nobody waits for it
+			writer.awaitWritten();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.stjs.generator.deps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.generator.BuildDatabase;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.STJSClass;
+import org.stjs.generator.name.DependencyType;
+import org.stjs.generator.utils.AbstractStjsTest;
+
+public class BuildDatabaseTest extends AbstractStjsTest {
+	private static final File FILE = new File("target", "build-db-test.properties");
+	private static final File SOURCE1 = new File("src/test/java/org/stjs/generator/deps/Dep1.java");
+	private static final File SOURCE2 = new File("src/test/java/org/stjs/generator/deps/Dep2.java");
+	private static final File SOURCE15 = new File("src/test/java/org/stjs/generator/deps/Dep15.java");
+
+	private final GeneratorConfiguration config = new GeneratorConfigurationBuilder().build();
+
+	@Before
+	public void setUp() {
+		FILE.delete();
+	}
+
+	private BuildDatabase load(GeneratorConfiguration configuration) {
+		return BuildDatabase.load(FILE, configuration, Collections.<File> emptyList());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		generate(Dep2.class);
+		BuildDatabase db = load(config);
+		db.update((STJSClass) stjsClass(Dep1.class), SOURCE1);
+		db.update((STJSClass) stjsClass(Dep2.class), SOURCE2);
+		db.save();
+
+		BuildDatabase loaded = load(config);
+		assertTrue(loaded.isUpToDate(Dep1.class.getName(), SOURCE1));
+		assertFalse(loaded.isUpToDate(Dep1.class.getName(), SOURCE2));
+		assertFalse(loaded.isUpToDate(Dep3.class.getName(), SOURCE1));
+		assertEquals(Collections.singleton(Dep2.class.getName()), loaded.getDependents(Dep1.class.getName()));
+		assertTrue(loaded.getDependents(Dep2.class.getName()).isEmpty());
+		assertEquals(DependencyType.EXTENDS, loaded.getDependencies(Dep2.class.getName()).get(Dep1.class.getName()));
+		assertNull(loaded.getDependencies(Dep3.class.getName()));
+	}
+
+	@Test
+	public void testFingerprintChanged() throws IOException {
+		generate(Dep2.class);
+		BuildDatabase db = load(config);
+		STJSClass stjsClass = (STJSClass) stjsClass(Dep1.class);
+		assertTrue(db.update(stjsClass, SOURCE1));
+		assertFalse(db.update(stjsClass, SOURCE1));
+
+		stjsClass.setJavascriptNamespace("other.ns");
+		assertTrue(db.update(stjsClass, SOURCE1));
+	}
+
+	@Test
+	public void testConstantChanged() throws IOException {
+		generate(Dep2.class);
+		BuildDatabase db = load(config);
+		STJSClass stjsClass = (STJSClass) stjsClass(Dep1.class);
+		stjsClass.setConstants(Collections.singletonMap(Dep1.class.getName() + ".MAX", "100"));
+		assertTrue(db.update(stjsClass, SOURCE1));
+		assertFalse(db.update(stjsClass, SOURCE1));
+
+		// the dependents inline the value, so they must be generated again
+		stjsClass.setConstants(Collections.singletonMap(Dep1.class.getName() + ".MAX", "200"));
+		assertTrue(db.update(stjsClass, SOURCE1));
+	}
+
+	@Test
+	public void testMainMethod() throws IOException {
+		generate(Dep15.class);
+		STJSClass stjsClass = (STJSClass) stjsClass(Dep15.class);
+		assertTrue(stjsClass.hasMainMethod());
+
+		BuildDatabase db = load(config);
+		db.update(stjsClass, SOURCE15);
+		db.update((STJSClass) stjsClass(Dep1.class), SOURCE1);
+		db.save();
+
+		BuildDatabase loaded = load(config);
+		assertTrue(loaded.hasMainMethod(Dep15.class.getName()));
+		assertFalse(loaded.hasMainMethod(Dep1.class.getName()));
+	}
+
+	@Test
+	public void testConfigurationChanged() throws IOException {
+		generate(Dep2.class);
+		BuildDatabase db = load(config);
+		db.update((STJSClass) stjsClass(Dep1.class), SOURCE1);
+		db.save();
+
+		assertFalse(load(config).isEmpty());
+		assertTrue(load(new GeneratorConfigurationBuilder(config).generateSourceMap(true).build()).isEmpty());
+		assertTrue(BuildDatabase.load(FILE, config, Collections.singletonList(SOURCE1)).isEmpty());
+	}
+}
@@ -0,0 +1,161 @@
+package org.stjs.generator.deps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.name.DependencyType;
+
+/**
+ * Builds a long chain of classes, each one depending on the next one, to check the order of the dependencies of large projects. The
+ * classes are grouped by {@link #GROUP_SIZE}: the first class of a group extends Object, and each other class extends the previous one.
+ * So the chain lists the subclasses before their super classes, and the collector has to reorder all of them.
+ * <p>
+ * The Java classes are defined from the bytes of empty classes, as compiling thousands of sources would be too slow.
+ */
+final class ChainedClasses extends ClassLoader {
+	static final int GROUP_SIZE = 10;
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int JAVA_7_VERSION = 51;
+	private static final int UTF8 = 1;
+	private static final int CLASS = 7;
+	private static final int ACC_PUBLIC_SUPER = 0x21;
+	private static final String PREFIX = "Chained";
+
+	ChainedClasses() {
+		super(ChainedClasses.class.getClassLoader());
+	}
+
+	static String getClassName(int index) {
+		return PREFIX + index;
+	}
+
+	private static String getSuperClassName(int index) {
+		return index % GROUP_SIZE == 0 ? "java.lang.Object" : getClassName(index - 1);
+	}
+
+	/**
+	 * @return the names of the classes of a chain with the given number of classes, in the order expected from the collector: the chain
+	 *         is listed from its end, and a class is taken in the scan of the list following the one of its super class.
+	 */
+	static List<String> getExpectedOrder(int size) {
+		List<String> names = new ArrayList<String>(size);
+		for (int scan = 0; scan < GROUP_SIZE; ++scan) {
+			for (int i = size - 1; i >= 0; --i) {
+				if (i % GROUP_SIZE == scan) {
+					names.add(getClassName(i));
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @return the first class of a chain with the given number of classes
+	 */
+	ClassWithJavascript createChain(int size) throws ClassNotFoundException {
+		ChainedClass next = null;
+		for (int i = size - 1; i >= 0; --i) {
+			next = new ChainedClass(loadClass(getClassName(i)), next);
+		}
+		return next;
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		if (!name.startsWith(PREFIX)) {
+			throw new ClassNotFoundException(name);
+		}
+		byte[] bytes = getBytes(name, getSuperClassName(Integer.parseInt(name.substring(PREFIX.length()))));
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @return the class file of a public class without members
+	 */
+	private static byte[] getBytes(String className, String superClassName) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeShort(0);
+			out.writeShort(JAVA_7_VERSION);
+			// the constant pool: the names and the classes of the class and of its super class
+			out.writeShort(5);
+			out.writeByte(UTF8);
+			out.writeUTF(className.replace('.', '/'));
+			out.writeByte(CLASS);
+			out.writeShort(1);
+			out.writeByte(UTF8);
+			out.writeUTF(superClassName.replace('.', '/'));
+			out.writeByte(CLASS);
+			out.writeShort(3);
+
+			out.writeShort(ACC_PUBLIC_SUPER);
+			out.writeShort(2);
+			out.writeShort(4);
+			// no interfaces, fields, methods or attributes
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final class ChainedClass implements ClassWithJavascript {
+		private final Class<?> javaClass;
+		private final List<ClassWithJavascript> dependencies;
+
+		ChainedClass(Class<?> javaClass, ClassWithJavascript next) {
+			this.javaClass = javaClass;
+			this.dependencies = next == null ? Collections.<ClassWithJavascript> emptyList() : Collections.singletonList(next);
+		}
+
+		@Override
+		public String getJavaClassName() {
+			return javaClass.getName();
+		}
+
+		@Override
+		public Class<?> getJavaClass() {
+			return javaClass;
+		}
+
+		@Override
+		public String getJavascriptClassName() {
+			return javaClass.getSimpleName();
+		}
+
+		@Override
+		public String getJavascriptNamespace() {
+			return null;
+		}
+
+		@Override
+		public List<URI> getJavascriptFiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<ClassWithJavascript> getDirectDependencies() {
+			return dependencies;
+		}
+
+		@Override
+		public Map<ClassWithJavascript, DependencyType> getDirectDependencyMap() {
+			return Collections.emptyMap();
+		}
+	}
+}
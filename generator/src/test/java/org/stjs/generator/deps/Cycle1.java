@@ -0,0 +1,7 @@
+package org.stjs.generator.deps;
+
+public class Cycle1 {
+	public static class Child1 extends Cycle2 {
+
+	}
+}
@@ -0,0 +1,7 @@
+package org.stjs.generator.deps;
+
+public class Cycle2 {
+	public static class Child2 extends Cycle3 {
+
+	}
+}
@@ -0,0 +1,5 @@
+package org.stjs.generator.deps;
+
+public class Cycle3 extends Cycle1 {
+
+}
@@ -0,0 +1,9 @@
+package org.stjs.generator.deps;
+
+public class Dep15 {
+	public static class Inner {
+		public static void main(String[] args) {
+			new Dep1();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.stjs.generator.deps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyCollector;
+
+/**
+ * Measures the time spent to order the dependencies of chains of classes of growing sizes (see {@link ChainedClasses}), and checks their
+ * order. It's not run with the tests, run it with:
+ *
+ * <pre>
+ * java -cp ... org.stjs.generator.deps.DependencyCollectorBenchmark [size...]
+ * </pre>
+ */
+public final class DependencyCollectorBenchmark {
+	private static final int[] DEFAULT_SIZES = { 1000, 10000, 50000 };
+	private static final int ITERATIONS = 5;
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private DependencyCollectorBenchmark() {
+		//
+	}
+
+	private static void order(int size) throws ClassNotFoundException {
+		ClassWithJavascript first = new ChainedClasses().createChain(size);
+		long best = Long.MAX_VALUE;
+		List<ClassWithJavascript> ordered = null;
+		for (int i = 0; i < ITERATIONS; ++i) {
+			long start = System.nanoTime();
+			ordered = new DependencyCollector().orderAllDependencies(first);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		List<String> names = new ArrayList<String>(ordered.size());
+		for (ClassWithJavascript c : ordered) {
+			names.add(c.getJavaClassName());
+		}
+		if (!names.equals(ChainedClasses.getExpectedOrder(size))) {
+			throw new IllegalStateException("Wrong order for " + size + " classes");
+		}
+		System.out.println(size + " classes: best " + best / NANOS_PER_MILLI + " ms");
+	}
+
+	public static void main(String[] args) throws ClassNotFoundException {
+		if (args.length == 0) {
+			for (int size : DEFAULT_SIZES) {
+				order(size);
+			}
+		}
+		for (String arg : args) {
+			order(Integer.parseInt(arg));
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package org.stjs.generator.deps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyCollector;
+import org.stjs.generator.name.DependencyType;
+
+public class DependencyCollectorTest {
+	private final DependencyCollector collector = new DependencyCollector();
+
+	@Test
+	public void testSuperTypesFirst() {
+		ClassWithJavascript root = new TestClass(Dep5.class, new TestClass(Dep2.class), new TestClass(Dep1.class), new TestClass(Dep4.class),
+				new TestClass(Dep3.class));
+
+		// the order of the dependencies is kept, except for Dep2 that must come after Dep1
+		assertEquals(Arrays.<Class<?>> asList(Dep1.class, Dep4.class, Dep3.class, Dep5.class, Dep2.class),
+				javaClasses(collector.orderAllDependencies(root)));
+	}
+
+	@Test
+	public void testCycle() {
+		ClassWithJavascript root = new TestClass(Dep5.class, new TestClass(Cycle1.class), new TestClass(Cycle2.class), new TestClass(
+				Cycle3.class));
+		try {
+			collector.orderAllDependencies(root);
+			fail("The cycle was not detected");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(
+					"[" + Cycle1.class + ", " + Cycle2.class + ", " + Cycle3.class + ", " + Cycle1.class + "]"));
+		}
+	}
+
+	@Test
+	public void testLongChain() throws ClassNotFoundException {
+		int size = 5000;
+		ClassWithJavascript first = new ChainedClasses().createChain(size);
+
+		List<String> names = new ArrayList<String>();
+		for (Class<?> c : javaClasses(collector.orderAllDependencies(first))) {
+			names.add(c.getName());
+		}
+		assertEquals(ChainedClasses.getExpectedOrder(size), names);
+	}
+
+	private static List<Class<?>> javaClasses(List<ClassWithJavascript> classes) {
+		List<Class<?>> javaClasses = new ArrayList<Class<?>>();
+		for (ClassWithJavascript c : classes) {
+			javaClasses.add(c.getJavaClass());
+		}
+		return javaClasses;
+	}
+
+	private static final class TestClass implements ClassWithJavascript {
+		private final Class<?> javaClass;
+		private final List<ClassWithJavascript> dependencies;
+
+		TestClass(Class<?> javaClass, ClassWithJavascript... dependencies) {
+			this.javaClass = javaClass;
+			this.dependencies = Arrays.asList(dependencies);
+		}
+
+		@Override
+		public String getJavaClassName() {
+			return javaClass.getName();
+		}
+
+		@Override
+		public Class<?> getJavaClass() {
+			return javaClass;
+		}
+
+		@Override
+		public String getJavascriptClassName() {
+			return javaClass.getSimpleName();
+		}
+
+		@Override
+		public String getJavascriptNamespace() {
+			return null;
+		}
+
+		@Override
+		public List<URI> getJavascriptFiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<ClassWithJavascript> getDirectDependencies() {
+			return dependencies;
+		}
+
+		@Override
+		public Map<ClassWithJavascript, DependencyType> getDirectDependencyMap() {
+			return Collections.emptyMap();
+		}
+	}
+}
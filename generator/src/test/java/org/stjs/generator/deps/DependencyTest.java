@@ -12,6 +12,7 @@ import org.junit.Test;
 import org.stjs.generator.utils.AbstractStjsTest;
 import org.stjs.generator.ClassWithJavascript;
 import org.stjs.generator.DependencyCollector;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.name.DependencyType;
 import org.stjs.javascript.JSGlobal;
 
@@ -168,6 +169,17 @@ public class DependencyTest extends AbstractStjsTest {
 		assertDependency(jsClass.getDirectDependencyMap(), Dep14b.class, DependencyType.STATIC);
 	}
 
+	@Test
+	public void testInlinedConstantDep() {
+		generate(Dep7s.class);
+		generate(Dep7.class, new GeneratorConfigurationBuilder().inlineConstants(true).build());
+
+		ClassWithJavascript jsClass = stjsClass(Dep7.class);
+
+		assertNotNull(jsClass);
+		assertDependency(jsClass.getDirectDependencyMap(), Dep7s.class, DependencyType.OTHER);
+	}
+
 	private void assertDependency(List<ClassWithJavascript> directDependencies, Class<?> clz) {
 		for (ClassWithJavascript c : directDependencies) {
 			if (clz.getName().equals(c.getJavaClassName())) {
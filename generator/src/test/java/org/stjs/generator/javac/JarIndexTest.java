@@ -0,0 +1,48 @@
+package org.stjs.generator.javac;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Test;
+
+public class JarIndexTest {
+	private JarURLConnection junitPackage() throws IOException {
+		return (JarURLConnection) getClass().getClassLoader().getResource("org/junit").openConnection();
+	}
+
+	private Set<String> binaryNames(List<JavaFileObject> files) {
+		Set<String> names = new HashSet<String>();
+		for (JavaFileObject file : files) {
+			names.add(((CustomJavaFileObject) file).binaryName());
+		}
+		return names;
+	}
+
+	@Test
+	public void testList() throws IOException {
+		JarURLConnection conn = junitPackage();
+		JarIndex index = JarIndex.get(conn);
+
+		Set<String> names = binaryNames(index.list(conn.getEntryName(), false));
+		assertTrue(names.contains(Test.class.getName()));
+		assertFalse(names.contains(org.junit.runner.Description.class.getName()));
+
+		Set<String> allNames = binaryNames(index.list(conn.getEntryName(), true));
+		assertTrue(allNames.contains(Test.class.getName()));
+		assertTrue(allNames.contains(org.junit.runner.Description.class.getName()));
+	}
+
+	@Test
+	public void testIndexIsShared() throws IOException {
+		assertSame(JarIndex.get(junitPackage()), JarIndex.get(junitPackage()));
+	}
+}
@@ -0,0 +1,89 @@
+package org.stjs.generator.javascript;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.stjs.generator.javascript.rhino.RhinoJavaScriptBuilder;
+
+/**
+ * Measures the time spent to print the JavaScript code of a large generated class, with its source map, through the
+ * {@link JavaScriptPrinter} used by the Rhino writer and by the text builder. The tree of the class is built once for each builder, then
+ * written several times and the best time is kept. It's not run with the tests, run it with:
+ *
+ * <pre>
+ * java -cp ... org.stjs.generator.javascript.JavaScriptPrinterBenchmark [methods] [iterations]
+ * </pre>
+ */
+public final class JavaScriptPrinterBenchmark {
+	private static final int DEFAULT_METHODS = 5000;
+	private static final int DEFAULT_ITERATIONS = 60;
+	private static final int LINES_PER_METHOD = 6;
+	private static final long NANOS_PER_MICRO = 1000L;
+	private static final File INPUT_FILE = new File("Big.java");
+
+	private JavaScriptPrinterBenchmark() {
+		//
+	}
+
+	private static <T> T count(JavaScriptBuilder<T> js) {
+		return js.property(js.keyword(Keyword.THIS), "count");
+	}
+
+	/**
+	 * builds a class similar to the ones generated for Java classes: a constructor and methods added to the prototype, with comments, loops,
+	 * conditions, calls and the positions of the Java code for the source map.
+	 */
+	private static <T> T buildClass(JavaScriptBuilder<T> js, int methods) {
+		List<T> statements = new ArrayList<T>();
+		T constructor = js.function(null, Collections.<T> emptyList(), js.block(Collections.singletonList(js.expressionStatement(js
+				.assignment(AssignOperator.ASSIGN, count(js), js.number(0))))));
+		statements.add(js.position(js.variableDeclaration(true, "Big", constructor), 1, 1, 3, 2));
+
+		for (int i = 0; i < methods; ++i) {
+			int line = LINES_PER_METHOD * i + LINES_PER_METHOD;
+			T condition = js.binary(BinaryOperator.LESS_THAN, Arrays.asList(js.name("i"), js.name("n")));
+			T update = js.unary(UnaryOperator.POSTFIX_INCREMENT, js.name("i"));
+			T call = js.functionCall(js.property(js.name("console"), "log"),
+					Arrays.asList(js.binary(BinaryOperator.PLUS, Arrays.asList(js.string("method" + i + " "), js.name("i")))));
+			T loopBody = js.block(Arrays.asList(
+					js.position(js.expressionStatement(js.assignment(AssignOperator.PLUS_ASSIGNMENT, count(js), js.name("i"))), line + 2, 9,
+							line + 2, 25),
+					js.position(js.ifStatement(js.binary(BinaryOperator.GREATER_THAN, Arrays.asList(count(js), js.number(i))),
+							js.expressionStatement(call), null), line + 3, 9, line + 3, 50)));
+			T loop = js.forLoop(js.variableDeclaration(false, "i", js.number(0)), condition, update, loopBody);
+			T body = js.block(Arrays.asList(js.position(loop, line + 1, 5, line + 4, 6),
+					js.position(js.returnStatement(count(js)), line + 5, 5, line + 5, 22)));
+			T method = js.function(null, Collections.singletonList(js.name("n")), body);
+			T assignment = js.expressionStatement(js.assignment(AssignOperator.ASSIGN,
+					js.property(js.property(js.name("Big"), "prototype"), "method" + i), method));
+			statements.add(js.comment(js.position(assignment, line, 1, line + 5, 2), "the method " + i + "\n@param n the count"));
+		}
+		return js.root(statements);
+	}
+
+	private static <T> void write(String name, JavaScriptBuilder<T> js, int methods, int iterations) {
+		T root = buildClass(js, methods);
+		long best = Long.MAX_VALUE;
+		int length = 0;
+		for (int i = 0; i < iterations; ++i) {
+			StringWriter writer = new StringWriter();
+			long start = System.nanoTime();
+			js.writeJavaScript(root, INPUT_FILE, true, writer);
+			best = Math.min(best, System.nanoTime() - start);
+			length = writer.getBuffer().length();
+		}
+		System.out.println(name + ": " + length / 1024 + " KB, best " + best / NANOS_PER_MICRO + " us");
+	}
+
+	public static void main(String[] args) {
+		int methods = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_METHODS;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+		write("rhino writer", new RhinoJavaScriptBuilder(), methods, iterations);
+		write("text builder", new StringJavaScriptBuilder(), methods, iterations);
+	}
+}
@@ -0,0 +1,70 @@
+package org.stjs.generator.javascript;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class JavaScriptPrinterTest {
+	private final StringWriter writer = new StringWriter();
+	private final JavaScriptPrinter printer = new JavaScriptPrinter(writer, null, false);
+
+	private String output() {
+		printer.flush();
+		return writer.toString();
+	}
+
+	@Test
+	public void testOutputLargerThanBuffer() {
+		String line = Strings.repeat("a", 1000);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20; ++i) {
+			printer.println(line);
+			expected.append(line).append('\n');
+		}
+		String big = Strings.repeat("b", 20000);
+		printer.print(big);
+		expected.append(big);
+
+		assertEquals(expected.toString(), output());
+	}
+
+	@Test
+	public void testIndentDeeperThanCache() {
+		for (int i = 0; i < 20; ++i) {
+			printer.indent();
+		}
+		printer.print("a");
+		assertEquals(80 + 1, printer.getCurrentColumn());
+		printer.unindent().println().print("b");
+
+		assertEquals(Strings.repeat("    ", 20) + "a\n" + Strings.repeat("    ", 19) + "b", output());
+	}
+
+	@Test
+	public void testLineAndColumnWithNewLines() {
+		printer.indent().print("ab");
+		assertEquals(0, printer.getCurrentLine());
+		assertEquals(6, printer.getCurrentColumn());
+
+		printer.print("c\nde\nfgh");
+		assertEquals(2, printer.getCurrentLine());
+		assertEquals(3, printer.getCurrentColumn());
+
+		printer.println();
+		assertEquals(3, printer.getCurrentLine());
+		assertEquals(0, printer.getCurrentColumn());
+	}
+
+	@Test
+	public void testCommentLines() {
+		printer.printComments("a\n\nb\n\n");
+		printer.printComments("");
+		printer.printComments("\n");
+
+		assertEquals("/**\n * a\n * \n * b\n */\n" + "/**\n * \n */\n" + "/**\n */\n", output());
+	}
+}
@@ -0,0 +1,115 @@
+package org.stjs.generator.javascript;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.utils.LazyGenerationClassResolver;
+import org.stjs.generator.utils.LazyGenerationClassResolver.LazyGenerator;
+
+import com.google.common.io.Files;
+
+/**
+ * generates all the test classes with the rhino builder and with the string builder, and checks that the JavaScript files and their source
+ * maps are the same.
+ */
+public class StringJavaScriptBuilderTest {
+	private static final File SOURCE_PATH = new File("src/test/java");
+
+	@Test
+	public void testSameCodeAsRhinoBuilder() throws IOException {
+		List<String> classNames = new ArrayList<String>();
+		collectClassNames(SOURCE_PATH, "", classNames);
+
+		File rhinoFolder = new File("target", "temp-generated-rhino");
+		File stringFolder = new File("target", "temp-generated-string");
+		Set<String> rhinoFailures = generate(classNames, rhinoFolder, false);
+		Set<String> stringFailures = generate(classNames, stringFolder, true);
+
+		assertEquals(rhinoFailures, stringFailures);
+		int compared = 0;
+		for (String className : classNames) {
+			if (rhinoFailures.contains(className)) {
+				continue;
+			}
+			String path = className.replace('.', File.separatorChar);
+			for (String extension : new String[] { ".js", ".map" }) {
+				File rhinoFile = new File(rhinoFolder, path + extension);
+				File stringFile = new File(stringFolder, path + extension);
+				// some classes, like the bridges, have no JavaScript file
+				assertEquals(className + extension, rhinoFile.exists(), stringFile.exists());
+				if (rhinoFile.exists()) {
+					assertEquals(className + extension, read(rhinoFile), read(stringFile));
+				}
+			}
+			compared++;
+		}
+		assertTrue("Too few classes compared:" + compared, compared > classNames.size() / 2);
+	}
+
+	private static String read(File file) throws IOException {
+		return Files.toString(file, Charset.defaultCharset());
+	}
+
+	private static void collectClassNames(File folder, String packagePrefix, List<String> classNames) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				collectClassNames(file, packagePrefix + name + ".", classNames);
+			} else if (name.endsWith(".java") && !name.endsWith("Test.java")) {
+				classNames.add(packagePrefix + name.substring(0, name.length() - ".java".length()));
+			}
+		}
+	}
+
+	/**
+	 * @return the classes that could not be generated
+	 */
+	private Set<String> generate(List<String> classNames, File generationPath, boolean stringJavaScriptBuilder) {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		final Generator[] generator = new Generator[1];
+		generator[0] = new Generator(new GeneratorConfigurationBuilder() //
+				.allowedPackage("org.stjs.javascript") //
+				.allowedPackage("org.stjs.generator") //
+				.generateSourceMap(true) //
+				.stringJavaScriptBuilder(stringJavaScriptBuilder) //
+				.stjsClassLoader(classLoader) //
+				.generationFolder(new GenerationDirectory(generationPath, generationPath, new File(""))) //
+				.targetFolder(new File("target", "test-classes")) //
+				.classResolver(new LazyGenerationClassResolver(classLoader, new LazyGenerator() {
+					@Override
+					public ClassWithJavascript generateJavaScript(String className) {
+						return generator[0].generateJavascript(className, SOURCE_PATH);
+					}
+				})) //
+				.build());
+
+		Set<String> failures = new TreeSet<String>();
+		for (String className : classNames) {
+			try {
+				generator[0].generateJavascript(className, SOURCE_PATH);
+			}
+			catch (RuntimeException e) {
+				failures.add(className);
+			}
+		}
+		generator[0].close();
+		return failures;
+	}
+}
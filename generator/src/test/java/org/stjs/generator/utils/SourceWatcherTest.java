@@ -0,0 +1,71 @@
+package org.stjs.generator.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+public class SourceWatcherTest {
+	private static final int OVERFLOW_FILE_COUNT = 1000;
+	// the lost events would make the watcher wait forever
+	private static final long OVERFLOW_TIMEOUT_MILLIS = 30000;
+
+	private File root;
+
+	@Before
+	public void setUp() throws IOException {
+		// a new folder for each run, the files of the previous runs would not create the expected events
+		root = new File("target", "watch-test-" + System.currentTimeMillis());
+		Files.createParentDirs(new File(root, "a/A.java"));
+	}
+
+	@Test
+	public void testChangesAreGroupedAndNewFoldersAreWatched() throws Exception {
+		SourceWatcher watcher = new SourceWatcher(Collections.singleton(root), 200);
+		try {
+			File a = new File(root, "a/A.java");
+			File b = new File(root, "b/c/B.java");
+			Files.write("class A {}", a, Charsets.UTF_8);
+			Files.createParentDirs(b);
+			Files.write("class B {}", b, Charsets.UTF_8);
+			Files.write("text", new File(root, "a/readme.txt"), Charsets.UTF_8);
+
+			Set<File> changes = watcher.awaitChanges();
+			assertEquals(ImmutableSet.of(a, b), changes);
+
+			Files.write("class A { int x; }", a, Charsets.UTF_8);
+			assertEquals(ImmutableSet.of(a), watcher.awaitChanges());
+		}
+		finally {
+			watcher.close();
+		}
+	}
+
+	@Test(timeout = OVERFLOW_TIMEOUT_MILLIS)
+	public void testOverflowReturnsAllSources() throws Exception {
+		SourceWatcher watcher = new SourceWatcher(Collections.singleton(root), 200);
+		try {
+			// more events than a watch key keeps, so some of them are replaced by an overflow event
+			Set<File> files = new HashSet<File>();
+			for (int i = 0; i < OVERFLOW_FILE_COUNT; ++i) {
+				File file = new File(root, "a/A" + i + ".java");
+				Files.write("class A" + i + " {}", file, Charsets.UTF_8);
+				files.add(file);
+			}
+			assertEquals(files, watcher.awaitChanges());
+		}
+		finally {
+			watcher.close();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package org.stjs.generator.visitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Measures the time spent to dispatch the nodes to the contributors. The sources of the given folder (the generator's sources by default)
+ * are parsed once, then scanned several times with a contributor and a filter for each kind of node, and with a plain {@link TreeScanner}
+ * for comparison. It's not run with the tests, run it with:
+ *
+ * <pre>
+ * java -cp ... org.stjs.generator.visitor.TreePathScannerContributorsBenchmark [sourceFolder] [iterations]
+ * </pre>
+ */
+public final class TreePathScannerContributorsBenchmark {
+	private static final int DEFAULT_ITERATIONS = 50;
+	private static final int WARMUP_ITERATIONS = 10;
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private TreePathScannerContributorsBenchmark() {
+		//
+	}
+
+	private static class PathHolder implements TreePathHolder {
+		private TreePath path;
+
+		@Override
+		public void setCurrentPath(TreePath path) {
+			this.path = path;
+		}
+
+		@Override
+		public TreePath getCurrentPath() {
+			return path;
+		}
+	}
+
+	private static class Scanner extends TreePathScannerContributors<Integer, PathHolder, Scanner> {
+		public Scanner() {
+			setContinueScanning(true);
+		}
+	}
+
+	private static class CountingContributor implements VisitorContributor<Tree, Integer, PathHolder, Scanner> {
+		private int count;
+
+		@Override
+		public Integer visit(Scanner visitor, Tree tree, PathHolder p) {
+			return ++count;
+		}
+	}
+
+	private static class PassingFilter implements VisitorFilterContributor<Tree, Integer, PathHolder, Scanner> {
+		@Override
+		public Integer visit(Scanner visitor, Tree tree, PathHolder p, VisitorContributor<Tree, Integer, PathHolder, Scanner> chain) {
+			return chain.visit(visitor, tree, p);
+		}
+	}
+
+	private static class CountingScanner extends TreeScanner<Integer, Void> {
+		private int count;
+
+		@Override
+		public Integer scan(Tree tree, Void p) {
+			if (tree != null) {
+				++count;
+			}
+			return super.scan(tree, p);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Scanner createScanner(CountingContributor contributor) {
+		Scanner scanner = new Scanner();
+		Set<Class<? extends Tree>> treeInterfaces = new HashSet<Class<? extends Tree>>();
+		for (Tree.Kind kind : Tree.Kind.values()) {
+			if (kind.asInterface() != null && treeInterfaces.add(kind.asInterface())) {
+				scanner.contribute((VisitorContributor) contributor, (Class) kind.asInterface());
+				scanner.addFilter((VisitorFilterContributor) new PassingFilter(), kind.asInterface());
+			}
+		}
+		return scanner;
+	}
+
+	private static void listSources(File folder, List<File> sources) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				listSources(file, sources);
+			} else if (file.getName().endsWith(".java")) {
+				sources.add(file);
+			}
+		}
+	}
+
+	private static List<CompilationUnitTree> parse(File folder) throws IOException {
+		List<File> sources = new ArrayList<File>();
+		listSources(folder, sources);
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+		Iterable<? extends JavaFileObject> files = fileManager.getJavaFileObjectsFromFiles(sources);
+		JavacTask task = (JavacTask) compiler.getTask(null, fileManager, null, null, null, files);
+		List<CompilationUnitTree> units = new ArrayList<CompilationUnitTree>();
+		for (CompilationUnitTree unit : task.parse()) {
+			units.add(unit);
+		}
+		return units;
+	}
+
+	private static long scanContributors(List<CompilationUnitTree> units, int iterations) {
+		CountingContributor contributor = new CountingContributor();
+		Scanner scanner = createScanner(contributor);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; ++i) {
+			for (CompilationUnitTree unit : units) {
+				scanner.scan(unit, new PathHolder());
+			}
+		}
+		long time = System.nanoTime() - start;
+		System.out.println("contributors: " + contributor.count / iterations + " nodes, " + time / iterations / NANOS_PER_MILLI + " ms/pass");
+		return time;
+	}
+
+	private static long scanPlain(List<CompilationUnitTree> units, int iterations) {
+		CountingScanner scanner = new CountingScanner();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; ++i) {
+			for (CompilationUnitTree unit : units) {
+				scanner.scan(unit, null);
+			}
+		}
+		long time = System.nanoTime() - start;
+		System.out.println("tree scanner: " + scanner.count / iterations + " nodes, " + time / iterations / NANOS_PER_MILLI + " ms/pass");
+		return time;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File folder = new File(args.length > 0 ? args[0] : "src/main/java");
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+		List<CompilationUnitTree> units = parse(folder);
+		System.out.println(units.size() + " files in " + folder);
+
+		scanContributors(units, WARMUP_ITERATIONS);
+		scanPlain(units, WARMUP_ITERATIONS);
+
+		long contributorsTime = scanContributors(units, iterations);
+		long plainTime = scanPlain(units, iterations);
+		System.out.println("overhead of the contributors: " + (contributorsTime - plainTime) / iterations / NANOS_PER_MILLI + " ms/pass");
+	}
+}
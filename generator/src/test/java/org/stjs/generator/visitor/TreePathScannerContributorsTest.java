@@ -0,0 +1,204 @@
+package org.stjs.generator.visitor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+public class TreePathScannerContributorsTest {
+	private static final String SOURCE = "class A {\n" //
+			+ "  interface I {}\n" //
+			+ "  enum E { X }\n" //
+			+ "  @interface N {}\n" //
+			+ "  boolean m(int a, int b, boolean c) {\n" //
+			+ "    int x = a * b / a % b + a - b << a >> b >>> a & b ^ a | b;\n" //
+			+ "    return a < b || a > b && a <= b || a >= b && a == b || a != b || c;\n" //
+			+ "  }\n" //
+			+ "}\n";
+
+	private static class PathHolder implements TreePathHolder {
+		private TreePath path;
+
+		@Override
+		public void setCurrentPath(TreePath path) {
+			this.path = path;
+		}
+
+		@Override
+		public TreePath getCurrentPath() {
+			return path;
+		}
+	}
+
+	private static class Scanner extends TreePathScannerContributors<Void, PathHolder, Scanner> {
+		public Scanner() {
+			setContinueScanning(true);
+		}
+
+		public Scanner(Scanner copy) {
+			super(copy);
+		}
+	}
+
+	/**
+	 * records the kinds of the visited nodes
+	 */
+	private static class KindsContributor<T extends Tree> implements VisitorContributor<T, Void, PathHolder, Scanner> {
+		private final Set<Tree.Kind> kinds = EnumSet.noneOf(Tree.Kind.class);
+
+		@Override
+		public Void visit(Scanner visitor, T tree, PathHolder p) {
+			kinds.add(tree.getKind());
+			return null;
+		}
+	}
+
+	/**
+	 * records its name in the log and continues the chain, or stops it
+	 */
+	private static class LoggingFilter implements VisitorFilterContributor<BinaryTree, Void, PathHolder, Scanner> {
+		private final String name;
+		private final List<String> log;
+		private final boolean stop;
+
+		public LoggingFilter(String name, List<String> log, boolean stop) {
+			this.name = name;
+			this.log = log;
+			this.stop = stop;
+		}
+
+		@Override
+		public Void visit(Scanner visitor, BinaryTree tree, PathHolder p, VisitorContributor<BinaryTree, Void, PathHolder, Scanner> chain) {
+			log.add(name);
+			return stop ? null : chain.visit(visitor, tree, p);
+		}
+	}
+
+	private static CompilationUnitTree parse(final String source) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///A.java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		JavacTask task = (JavacTask) compiler.getTask(null, null, null, null, null, Collections.singletonList(file));
+		return task.parse().iterator().next();
+	}
+
+	private static Set<Tree.Kind> kindsOf(Class<? extends Tree> treeInterface) {
+		Set<Tree.Kind> kinds = EnumSet.noneOf(Tree.Kind.class);
+		for (Tree.Kind kind : Tree.Kind.values()) {
+			if (kind.asInterface() == treeInterface) {
+				kinds.add(kind);
+			}
+		}
+		return kinds;
+	}
+
+	@Test
+	public void testContributorIsCalledForAllTheKindsOfItsInterface() throws IOException {
+		Scanner scanner = new Scanner();
+		KindsContributor<BinaryTree> binaryContributor = new KindsContributor<BinaryTree>();
+		KindsContributor<ClassTree> classContributor = new KindsContributor<ClassTree>();
+		scanner.contribute(binaryContributor, BinaryTree.class);
+		scanner.contribute(classContributor, ClassTree.class);
+
+		scanner.scan(parse(SOURCE), new PathHolder());
+
+		// the source uses all the binary operators
+		assertEquals(kindsOf(BinaryTree.class), binaryContributor.kinds);
+		assertEquals(EnumSet.of(Tree.Kind.CLASS, Tree.Kind.INTERFACE, Tree.Kind.ENUM, Tree.Kind.ANNOTATION_TYPE), classContributor.kinds);
+	}
+
+	@Test
+	public void testContributorsOfCopyAreCalledByKind() throws IOException {
+		Scanner scanner = new Scanner();
+		KindsContributor<BinaryTree> binaryContributor = new KindsContributor<BinaryTree>();
+		scanner.contribute(binaryContributor, BinaryTree.class);
+
+		new Scanner(scanner).scan(parse(SOURCE), new PathHolder());
+		assertEquals(kindsOf(BinaryTree.class), binaryContributor.kinds);
+	}
+
+	@Test
+	public void testKindGivesTheInterfaceOfTheNode() throws IOException {
+		// the contributors used to be found with the Tree interface of the node's class
+		final List<String> mismatches = new ArrayList<String>();
+		parse(SOURCE).accept(new TreeScanner<Void, Void>() {
+			@Override
+			public Void scan(Tree tree, Void v) {
+				if (tree != null) {
+					Class<?> nodeInterface = null;
+					for (Class<?> iface : tree.getClass().getInterfaces()) {
+						if (Tree.class.isAssignableFrom(iface)) {
+							nodeInterface = iface;
+							break;
+						}
+					}
+					if (tree.getKind().asInterface() != nodeInterface) {
+						mismatches.add(tree.getKind() + ":" + nodeInterface);
+					}
+				}
+				return super.scan(tree, v);
+			}
+		}, null);
+		assertEquals(Collections.emptyList(), mismatches);
+	}
+
+	@Test
+	public void testFiltersAreChainedInOrder() throws IOException {
+		final List<String> log = new ArrayList<String>();
+		Scanner scanner = new Scanner();
+		scanner.addFilter(new LoggingFilter("first", log, false), BinaryTree.class);
+		scanner.addFilter(new LoggingFilter("second", log, false), BinaryTree.class);
+		scanner.contribute(new VisitorContributor<BinaryTree, Void, PathHolder, Scanner>() {
+			@Override
+			public Void visit(Scanner visitor, BinaryTree tree, PathHolder p) {
+				log.add("contributor");
+				return null;
+			}
+		}, BinaryTree.class);
+
+		scanner.scan(parse("class A { int x = 1 + 2 * 3; }"), new PathHolder());
+		// the same chain is used for the nested node
+		assertEquals(Collections.nCopies(2, "first,second,contributor"), group(log, 3));
+
+		log.clear();
+		scanner.addFilter(new LoggingFilter("stop", log, true), BinaryTree.class);
+		scanner.scan(parse("class A { int x = 1 + 2; }"), new PathHolder());
+		assertEquals(Collections.singletonList("first,second,stop"), group(log, 3));
+	}
+
+	private static List<String> group(List<String> items, int size) {
+		List<String> groups = new ArrayList<String>();
+		for (int i = 0; i < items.size(); i += size) {
+			StringBuilder group = new StringBuilder();
+			for (int j = i; j < i + size && j < items.size(); ++j) {
+				group.append(j > i ? "," : "").append(items.get(j));
+			}
+			groups.add(group.toString());
+		}
+		return groups;
+	}
+}
@@ -0,0 +1,27 @@
+package org.stjs.generator.writer.fields;
+
+public class Fields26 {
+	public static class Parent {
+		public int a = 1;
+		public String s;
+
+		public Parent() {
+			a += 10;
+		}
+	}
+
+	public static class Child extends Parent {
+		public int b = 2;
+		public double c;
+
+		public Child(int b) {
+			super();
+			this.b += b;
+		}
+	}
+
+	public static int main(String[] args) {
+		Child child = new Child(100);
+		return child.a + child.b;
+	}
+}
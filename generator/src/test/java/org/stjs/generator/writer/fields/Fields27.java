@@ -0,0 +1,33 @@
+package org.stjs.generator.writer.fields;
+
+public class Fields27 {
+	public interface Limits {
+		int MAX_ROWS = 100;
+	}
+
+	public static class Constants {
+		public static final int NEGATIVE = -3;
+		public static final double RATIO = 0.5;
+		public static final double NOT_A_NUMBER = 0.0 / 0.0;
+		public static final char SEPARATOR = ':';
+		public static final boolean ENABLED = true;
+		public static final String LABEL = "rows";
+	}
+
+	public static class Table implements Limits {
+		public int getRows() {
+			return MAX_ROWS;
+		}
+	}
+
+	public static int main(String[] args) {
+		String label = Constants.LABEL + Constants.SEPARATOR + Limits.MAX_ROWS;
+		int doubled = Limits.MAX_ROWS * 2;
+		int negated = -Constants.NEGATIVE;
+		double nan = Constants.NOT_A_NUMBER;
+		if (Constants.ENABLED && !(nan < 1)) {
+			return label.length() + doubled + negated + (int) (new Table().getRows() * Constants.RATIO);
+		}
+		return 0;
+	}
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.utils.AbstractStjsTest;
 import org.stjs.generator.JavascriptFileGenerationException;
 
@@ -149,4 +151,31 @@ public class FieldsGeneratorTest extends AbstractStjsTest {
 	public void testTemplateMemberSelect() {
 		assertCodeContains(Fields25.class, "obj.get(\"field\")");
 	}
+
+	@Test
+	public void testInitializeFieldsInConstructor() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().initializeFieldsInConstructor(true).build();
+		String code = generate(Fields26.class, config);
+		assertCodeContains(code, "this.a = 1; this.s = null; this.a += 10;");
+		assertCodeContains(code, "Fields26.Parent.call(this); this.b = 2; this.c = 0.0; this.b += b;");
+		// the prototype still has the default values
+		assertCodeContains(code, "prototype.b = 2;");
+		assertEquals(113, executeAndReturnNumber(Fields26.class, config), 0);
+		assertEquals(code, generate(Fields26.class, new GeneratorConfigurationBuilder(config).stringJavaScriptBuilder(true).build()));
+	}
+
+	@Test
+	public void testInlineConstants() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().inlineConstants(true).build();
+		String code = generate(Fields27.class, config);
+		assertCodeContains(code, "var label = \"rows:100\";");
+		assertCodeContains(code, "var doubled = 200;");
+		assertCodeContains(code, "var negated = -(-3);");
+		assertCodeContains(code, "var nan = Fields27.Constants.NOT_A_NUMBER;");
+		assertCodeContains(code, "if (true && !(nan < 1))");
+		assertCodeContains(code, "return 100;");
+		assertCodeContains(code, "(new Fields27.Table().getRows() * 0.5)");
+		assertEquals(261, executeAndReturnNumber(Fields27.class, config), 0);
+		assertEquals(code, generate(Fields27.class, new GeneratorConfigurationBuilder(config).stringJavaScriptBuilder(true).build()));
+	}
 }
@@ -3,6 +3,8 @@ package org.stjs.generator.writer.inlineFunctions;
 import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.utils.AbstractStjsTest;
 import org.stjs.generator.JavascriptFileGenerationException;
 
@@ -57,6 +59,19 @@ public class InlineFunctionGeneratorTest extends AbstractStjsTest {
 		generate(InlineFunctions7.class);
 	}
 
+	@Test
+	public void testSinglePass() {
+		// the inline functions are written from the method of their class body, so the writers skip some nodes
+		GeneratorConfiguration singlePass = new GeneratorConfigurationBuilder().singlePass(true).build();
+		assertEquals(generate(InlineFunctions2b.class), generate(InlineFunctions2b.class, singlePass));
+		assertEquals(generate(InlineFunctions8.class), generate(InlineFunctions8.class, singlePass));
+	}
+
+	@Test(expected = JavascriptFileGenerationException.class)
+	public void testAccessOuterScopeSinglePass() {
+		generate(InlineFunctions7.class, new GeneratorConfigurationBuilder().singlePass(true).build());
+	}
+
 	@Test
 	public void testUsingTHISParam() {
 		// assertCodeContains(InlineFunctions8.class, "method(function(){})");
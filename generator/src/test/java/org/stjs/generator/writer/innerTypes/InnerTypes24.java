@@ -0,0 +1,26 @@
+package org.stjs.generator.writer.innerTypes;
+
+public class InnerTypes24 {
+
+	public interface Inner {
+		int getValue();
+	}
+
+	private static Inner create() {
+		return new Inner() {
+			@Override
+			public int getValue() {
+				int value = 2;
+				return value;
+			}
+		};
+	}
+
+	public static int main(String[] args) {
+		int sum = 0;
+		for (int i = 0; i < 3; i++) {
+			sum += create().getValue();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,21 @@
+package org.stjs.generator.writer.innerTypes;
+
+public class InnerTypes24b {
+
+	public interface Inner {
+		int getValue();
+	}
+
+	private static Inner create(final int value) {
+		return new Inner() {
+			@Override
+			public int getValue() {
+				return value;
+			}
+		};
+	}
+
+	public static int main(String[] args) {
+		return create(2).getValue() + create(3).getValue();
+	}
+}
@@ -0,0 +1,36 @@
+package org.stjs.generator.writer.innerTypes;
+
+import static org.stjs.javascript.JSCollections.$array;
+
+import org.stjs.javascript.Array;
+
+public class InnerTypes25 {
+
+	public abstract static class Handler {
+		protected int base;
+
+		public Handler(int base) {
+			this.base = base;
+		}
+
+		public abstract int handle(int event);
+	}
+
+	public static int main(String[] args) {
+		Array<Handler> handlers = $array();
+		for (int i = 0; i < 3; i++) {
+			final int factor = i + 1;
+			handlers.push(new Handler(100) {
+				@Override
+				public int handle(int event) {
+					return base + event * factor;
+				}
+			});
+		}
+		int sum = 0;
+		for (int i = 0; i < handlers.$length(); i++) {
+			sum += handlers.$get(i).handle(10);
+		}
+		return sum;
+	}
+}
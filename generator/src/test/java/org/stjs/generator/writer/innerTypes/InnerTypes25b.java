@@ -0,0 +1,23 @@
+package org.stjs.generator.writer.innerTypes;
+
+public class InnerTypes25b {
+
+	public interface Inner {
+		int getValue();
+	}
+
+	private static Inner create(final int value) {
+		return new Inner() {
+			private final int twice = value * 2;
+
+			@Override
+			public int getValue() {
+				return twice;
+			}
+		};
+	}
+
+	public static int main(String[] args) {
+		return create(2).getValue() + create(3).getValue();
+	}
+}
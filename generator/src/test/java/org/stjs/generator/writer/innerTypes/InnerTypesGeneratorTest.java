@@ -5,6 +5,8 @@ import static junit.framework.Assert.assertNotNull;
 
 import org.junit.Test;
 import org.stjs.generator.utils.AbstractStjsTest;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.JavascriptFileGenerationException;
 
 public class InnerTypesGeneratorTest extends AbstractStjsTest {
@@ -170,4 +172,56 @@ public class InnerTypesGeneratorTest extends AbstractStjsTest {
 	public void testCallOuterMethodFromAnonymousInit() {
 		assertCodeContains(InnerTypes23.class, "x: this.outerMethod()");
 	}
+
+	@Test
+	public void testHoistAnonymousClass() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().hoistAnonymousClasses(true).build();
+		assertCodeContains(InnerTypes24.class, "return new (InnerTypes24.InnerTypes24$1 || (InnerTypes24.InnerTypes24$1 = "
+				+ "stjs.extend(function InnerTypes24$1(){}, null, [InnerTypes24.Inner], function(constructor, prototype){", config);
+		assertEquals(6, (int) executeAndReturnNumber(InnerTypes24.class, config));
+		GeneratorConfiguration stringBuilder = new GeneratorConfigurationBuilder(config).stringJavaScriptBuilder(true).build();
+		assertEquals(generate(InnerTypes24.class, config), generate(InnerTypes24.class, stringBuilder));
+	}
+
+	@Test
+	public void testHoistAnonymousClassUsingParameter() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().hoistAnonymousClasses(true).build();
+		String code = generate(InnerTypes24b.class, config);
+		assertCodeContains(code, "return new (InnerTypes24b.InnerTypes24b$1 || (InnerTypes24b.InnerTypes24b$1 = "
+				+ "stjs.extend(function InnerTypes24b$1(value){this.val$value = value;");
+		assertCodeContains(code, "var value = this.val$value; return value;");
+		assertCodeContains(code, ")))(value);");
+		assertEquals(5, (int) executeAndReturnNumber(InnerTypes24b.class, config));
+	}
+
+	@Test
+	public void testHoistCapturingAnonymousClassInLoop() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().hoistAnonymousClasses(true).build();
+		String code = generate(InnerTypes25.class, config);
+		assertCodeContains(code, "handlers.push(new (InnerTypes25.InnerTypes25$1 || (InnerTypes25.InnerTypes25$1 = stjs.extend(");
+		assertCodeContains(code, "this.val$factor = factor;");
+		assertCodeContains(code, "var factor = this.val$factor; return this.base + event * factor;");
+		assertCodeContains(code, ")))(100, factor));");
+		// each handler keeps the value of factor it was created with
+		assertEquals(360, (int) executeAndReturnNumber(InnerTypes25.class, config));
+		GeneratorConfiguration stringBuilder = new GeneratorConfigurationBuilder(config).stringJavaScriptBuilder(true).build();
+		assertEquals(code, generate(InnerTypes25.class, stringBuilder));
+	}
+
+	@Test
+	public void testHoistAnonymousClassSinglePass() {
+		// the hoisting writers look at the parents of the anonymous classes, reached by the writers without visiting the nodes in between
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().hoistAnonymousClasses(true).build();
+		GeneratorConfiguration singlePass = new GeneratorConfigurationBuilder(config).singlePass(true).build();
+		assertEquals(generate(InnerTypes24b.class, config), generate(InnerTypes24b.class, singlePass));
+		assertEquals(generate(InnerTypes25.class, config), generate(InnerTypes25.class, singlePass));
+	}
+
+	@Test
+	public void testDoNotHoistAnonymousClassUsingVariablesInFields() {
+		// the field initializers run when the class is defined
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().hoistAnonymousClasses(true).build();
+		assertCodeContains(InnerTypes25b.class, "return new (stjs.extend(function InnerTypes25b$1(){}", config);
+		assertEquals(10, (int) executeAndReturnNumber(InnerTypes25b.class, config));
+	}
 }
@@ -0,0 +1,20 @@
+package org.stjs.generator.writer.operators;
+
+public class Operator3 {
+	public static int main(String[] args) {
+		int max = 2147483647;
+		int big = 65536;
+		int seven = 7;
+		int two = 2;
+		int zero = 0;
+		double d = 3.9;
+
+		int sum = max + 1;
+		int product = big * big;
+		int quotient = -seven / two;
+		int cast = (int) -d;
+		int shift = -seven >>> zero;
+		sum += max;
+		return sum + product + quotient + cast + shift;
+	}
+}
@@ -0,0 +1,16 @@
+package org.stjs.generator.writer.operators;
+
+public class Operator4 {
+	public static int main(String[] args) {
+		double big = 1e10;
+		double small = -1e10;
+		float zero = 0;
+		long wide = 4294967297L;
+
+		int max = (int) big;
+		int min = (int) small;
+		int nan = (int) (zero / zero);
+		int low = (int) wide;
+		return max + min + nan + low;
+	}
+}
@@ -0,0 +1,19 @@
+package org.stjs.generator.writer.operators;
+
+public class Operator5 {
+	public int value = 2147483647;
+	public int calls;
+
+	public Operator5 self() {
+		calls++;
+		return this;
+	}
+
+	public static int main(String[] args) {
+		Operator5 o = new Operator5();
+		o.value += 1;
+		o.self().value -= 1;
+		o.self().value *= 2;
+		return o.calls;
+	}
+}
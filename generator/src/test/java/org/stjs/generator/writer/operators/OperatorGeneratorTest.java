@@ -1,6 +1,10 @@
 package org.stjs.generator.writer.operators;
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.utils.AbstractStjsTest;
 
 public class OperatorGeneratorTest extends AbstractStjsTest {
@@ -13,4 +17,40 @@ public class OperatorGeneratorTest extends AbstractStjsTest {
 	public void testBugNot() {
 		assertCodeContains(Operator2.class, "if (!this.func())");
 	}
+
+	@Test
+	public void testIntPrecise() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().intPrecise(true).build();
+		String code = generate(Operator3.class, config);
+		assertCodeContains(code, "var sum = (max + 1) | 0;");
+		assertCodeContains(code, "var product = Math.imul(big, big);");
+		assertCodeContains(code, "var quotient = (-seven / two) | 0;");
+		assertCodeContains(code, "var cast = stjs.toInt(-d);");
+		assertCodeContains(code, "var shift = (-seven >>> zero) | 0;");
+		assertCodeContains(code, "sum = (sum + (max)) | 0;");
+		assertCodeContains(code, "return (sum + product + quotient + cast + shift) | 0;");
+		assertEquals(-14, executeAndReturnNumber(Operator3.class, config), 0);
+		assertEquals(code, generate(Operator3.class, new GeneratorConfigurationBuilder(config).stringJavaScriptBuilder(true).build()));
+	}
+
+	@Test
+	public void testIntPreciseCastSaturates() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().intPrecise(true).build();
+		String code = generate(Operator4.class, config);
+		assertCodeContains(code, "var max = stjs.toInt(big);");
+		assertCodeContains(code, "var low = wide | 0;");
+		// (int) 1e10 is Integer.MAX_VALUE and (int) -1e10 is Integer.MIN_VALUE in Java, (int) NaN is 0, (int) (2^32 + 1) is 1
+		assertEquals(0, executeAndReturnNumber(Operator4.class, config), 0);
+	}
+
+	@Test
+	public void testIntPreciseCompoundAssignmentSideEffect() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().intPrecise(true).build();
+		String code = generate(Operator5.class, config);
+		assertCodeContains(code, "o.value = (o.value + (1)) | 0;");
+		assertCodeContains(code, "o.self().value -= 1;");
+		assertCodeContains(code, "o.self().value *= 2;");
+		// each call to self() is done once
+		assertEquals(2, executeAndReturnNumber(Operator5.class, config), 0);
+	}
 }
@@ -1,6 +1,10 @@
 package org.stjs.generator.writer.plugins;
 
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
 import org.junit.Test;
+import org.stjs.generator.plugin.GenerationPlugins;
 import org.stjs.generator.utils.AbstractStjsTest;
 
 public class PluginGeneratorTest extends AbstractStjsTest {
@@ -13,4 +17,12 @@ public class PluginGeneratorTest extends AbstractStjsTest {
 	public void testFilter() {
 		assertCodeContains(Plugins2.class, "return ((a + 10) + 20)");
 	}
+
+	@Test
+	public void testPluginsAreBuiltOnce() {
+		GenerationPlugins<Object> plugins = new GenerationPlugins<Object>();
+		assertSame(plugins, plugins.forClass(PluginGeneratorTest.class));
+		assertSame(plugins.forClass(Plugins1.class), plugins.forClass(Plugins1.class));
+		assertNotSame(plugins.forClass(Plugins1.class), plugins.forClass(Plugins2.class));
+	}
 }
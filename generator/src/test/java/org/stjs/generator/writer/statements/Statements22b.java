@@ -0,0 +1,20 @@
+package org.stjs.generator.writer.statements;
+
+import static org.stjs.javascript.JSCollections.$array;
+import static org.stjs.javascript.JSGlobal.parseInt;
+
+import org.stjs.javascript.Array;
+
+public class Statements22b {
+
+	public static int main(String[] args) {
+		Array<Integer> a = $array(1, 2);
+		int sum = 0;
+		for (String i : a) {
+			// the index is a string: "0" + 1 is "01"
+			sum += parseInt(i + 1) + a.$get(i);
+		}
+		return sum;
+	}
+
+}
@@ -5,6 +5,8 @@ import static org.junit.Assert.assertEquals;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.stjs.generator.utils.AbstractStjsTest;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.JavascriptFileGenerationException;
 
 public class StatementsGeneratorTest extends AbstractStjsTest {
@@ -156,4 +158,19 @@ public class StatementsGeneratorTest extends AbstractStjsTest {
 	public void testStaticBlock() {
 		assertCodeContains(Statements21.class, "new (stjs.extend(function Statements21$1(){}");
 	}
+
+	@Test
+	public void testForEachArrayIndexed() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().generateArrayIndexedLoops(true).build();
+		assertCodeContains(Statements22.class, "for (var i = 0, i$length = (a).length; i < i$length; i++) {sum += a[i];}", config);
+		assertEquals(6, executeAndReturnNumber(Statements22.class, config), 0);
+	}
+
+	@Test
+	public void testForEachArrayIndexedWithStringIndex() {
+		GeneratorConfiguration config = new GeneratorConfigurationBuilder().generateArrayIndexedLoops(true).build();
+		assertCodeContains(Statements22b.class, "for (var i$index = 0, i$length = (a).length; i$index < i$length; i$index++) {"
+				+ "var i = String(i$index);", config);
+		assertEquals(15, executeAndReturnNumber(Statements22b.class, config), 0);
+	}
 }
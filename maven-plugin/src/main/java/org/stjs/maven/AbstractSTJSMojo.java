@@ -12,25 +12,22 @@
  */
 package org.stjs.maven;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.Writer;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,21 +48,21 @@ import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.traverse.TopologicalOrderIterator;
 import org.sonatype.plexus.build.incremental.BuildContext;
 import org.stjs.generator.BridgeClass;
+import org.stjs.generator.BuildDatabase;
+import org.stjs.generator.ClasspathCache;
 import org.stjs.generator.ClassWithJavascript;
 import org.stjs.generator.GenerationDirectory;
 import org.stjs.generator.Generator;
 import org.stjs.generator.GeneratorConfiguration;
 import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.JavascriptClassGenerationException;
 import org.stjs.generator.JavascriptFileGenerationException;
 import org.stjs.generator.MultipleFileGenerationException;
 import org.stjs.generator.STJSClass;
 import org.stjs.generator.name.DependencyType;
 
 import com.google.common.io.Closeables;
-import com.google.common.io.Files;
-import com.google.debugging.sourcemap.SourceMapFormat;
-import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
-import com.google.debugging.sourcemap.SourceMapGeneratorV3;
+import com.google.debugging.sourcemap.SourceMapParseException;
 
 /**
  * This is the Maven plugin that launches the Javascript generator. The plugin needs a list of packages containing the Java classes that will
@@ -118,6 +115,40 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 	 */
 	protected boolean generateArrayHasOwnProperty;
 
+	/**
+	 * If true, the "for" iterations on arrays are generated as loops on the indexes, for(var i = 0, i$length = array.length; i &lt;
+	 * i$length; i++), that are much faster than for-in loops. The arrays must not have holes, as these loops visit them.
+	 * @parameter expression="${generateArrayIndexedLoops}" default-value="false"
+	 */
+	protected boolean generateArrayIndexedLoops;
+
+	/**
+	 * If true, the anonymous classes that do not use the variables of their enclosing methods are defined only once, when they are first
+	 * created, instead of each time the "new" expression is executed.
+	 * @parameter expression="${hoistAnonymousClasses}" default-value="false"
+	 */
+	protected boolean hoistAnonymousClasses;
+
+	/**
+	 * If true, the operations on int values are generated so their result is an int that overflows as in Java, e.g. (a + b) | 0 or
+	 * Math.imul(a, b), which also lets the JavaScript engines keep them as small integers.
+	 * @parameter expression="${intPrecise}" default-value="false"
+	 */
+	protected boolean intPrecise;
+
+	/**
+	 * If true, the constructors assign all the instance fields of the class, so all its objects get their properties in the same order.
+	 * @parameter expression="${initializeFieldsInConstructor}" default-value="false"
+	 */
+	protected boolean initializeFieldsInConstructor;
+
+	/**
+	 * If true, the references to the static final fields of primitive or String type are replaced by their value, e.g. 100 instead of
+	 * my.pkg.Constants.MAX_ROWS, and the operations on constants are computed at build time.
+	 * @parameter expression="${inlineConstants}" default-value="false"
+	 */
+	protected boolean inlineConstants;
+
 	/**
 	 * If true, it generates for each JavaScript the corresponding source map back to the corresponding Java file. It also copies the Java source
 	 * file in the same folder as the generated Javascript file.
@@ -125,6 +156,12 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 	 */
 	protected boolean generateSourceMap;
 
+	/**
+	 * The format of the source map of the pack file, if source maps are generated: MERGED, INDEX or FLAT (see {@link PackSourceMapFormat}).
+	 * @parameter expression="${packSourceMapFormat}" default-value="MERGED"
+	 */
+	protected PackSourceMapFormat packSourceMapFormat;
+
 	/**
 	 * If true, it packs all the generated Javascript file (using the correct dependency order) into a single file named
 	 * ${project.artifactName}.js
@@ -132,6 +169,45 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 	 */
 	protected boolean pack;
 
+	/**
+	 * If not NONE, the pack file is also minified by the closure compiler in ${project.artifactName}.min.js, with WHITESPACE_ONLY or
+	 * SIMPLE_OPTIMIZATIONS (see {@link PackMinification}). With source maps, the source map of the minified file,
+	 * ${project.artifactName}.min.js.map, points to the Java sources.
+	 * @parameter expression="${minify}" default-value="NONE"
+	 */
+	protected PackMinification minify;
+
+	/**
+	 * The entry points of the pack file. If set, only these classes and the classes they need, directly or not, are packed. The classes that
+	 * are dropped are listed in the build log.
+	 * @parameter
+	 */
+	protected Set<String> packEntryPoints = new HashSet<String>();
+
+	/**
+	 * If true, the classes having a main method are also entry points of the pack file (see packEntryPoints).
+	 * @parameter expression="${packMainClasses}" default-value="false"
+	 */
+	protected boolean packMainClasses;
+
+	/**
+	 * The number of threads used to generate the Javascript files. Each thread parses and generates its own share of the stale sources.
+	 * @parameter expression="${threads}" default-value="1"
+	 */
+	protected int threads;
+
+	/**
+	 * If true, the Java code is checked while the JavaScript code is written, in a single traversal of each source file.
+	 * @parameter expression="${singlePass}" default-value="false"
+	 */
+	protected boolean singlePass;
+
+	/**
+	 * If true, the JavaScript code is built directly as text instead of being built as a rhino AST. The generated code is the same.
+	 * @parameter expression="${stringJavaScriptBuilder}" default-value="false"
+	 */
+	protected boolean stringJavaScriptBuilder;
+
 	/**
 	 * @parameter expression="${sourceEncoding}" default-value="${project.build.sourceEncoding}"
 	 */
@@ -143,6 +219,17 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 	 */
 	protected Set<String> annotations = new HashSet<String>();
 
+	/**
+	 * the class loader of the project for the current execution
+	 */
+	private ClassLoader builtProjectClassLoader;
+
+	/**
+	 * the information about the generated classes, kept up to date during the current execution. It gives to the packer the
+	 * dependencies of all the classes.
+	 */
+	private BuildDatabase buildDatabase;
+
 	abstract protected List<String> getCompileSourceRoots();
 
 	abstract protected GenerationDirectory getGeneratedSourcesDirectory();
@@ -151,22 +238,40 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 
 	abstract protected List<String> getClasspathElements() throws DependencyResolutionRequiredException;
 
+	/**
+	 * @return the file keeping the information about the previous generation, used to find the classes to generate again. It is not
+	 *         stored with the generated files, to not have it packed with them.
+	 */
+	protected File getBuildDatabaseFile() {
+		return new File(project.getBuild().getDirectory(), "stjs-build.properties");
+	}
+
+	/**
+	 * @return the file keeping the segments of the pack file, used to update the pack file when only a few files change. Like the build
+	 *         database, it is not stored with the generated files.
+	 */
+	protected File getPackIndexFile() {
+		return new File(project.getBuild().getDirectory(), "stjs-pack-index.properties");
+	}
+
 	abstract protected boolean getCopyStjsSupportFile();
 
+	protected String getSourceEncoding() {
+		return sourceEncoding;
+	}
+
+	/**
+	 * @return the class loader of the project. The jars of the classpath are loaded by a class loader kept between the executions of
+	 *         the plugin, to not open and index them again for each module of the build.
+	 */
 	private ClassLoader getBuiltProjectClassLoader() throws MojoExecutionException {
-		try {
-			List<String> runtimeClasspathElements = getClasspathElements();
-			URL[] runtimeUrls = new URL[runtimeClasspathElements.size()];
-			for (int i = 0; i < runtimeClasspathElements.size(); i++) {
-				String element = runtimeClasspathElements.get(i);
+		List<File> classpath = getClasspathFiles();
+		if (getLog().isDebugEnabled()) {
+			for (File element : classpath) {
 				getLog().debug("Classpath:" + element);
-				runtimeUrls[i] = new File(element).toURI().toURL();
 			}
-			return new URLClassLoader(runtimeUrls, Thread.currentThread().getContextClassLoader().getParent());
-		}
-		catch (Exception ex) {
-			throw new MojoExecutionException("Cannot get builtProjectClassLoader " + ex, ex);
 		}
+		return ClasspathCache.getShared().newProjectClassLoader(classpath, Thread.currentThread().getContextClassLoader().getParent());
 	}
 
 	@Override
@@ -176,10 +281,15 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		long t1 = System.currentTimeMillis();
 		getLog().info("Generating JavaScript files to " + gendir.getGeneratedSourcesAbsolutePath());
 
-		ClassLoader builtProjectClassLoader = getBuiltProjectClassLoader();
+		builtProjectClassLoader = getBuiltProjectClassLoader();
 
 		GeneratorConfigurationBuilder configBuilder = new GeneratorConfigurationBuilder();
 		configBuilder.generateArrayHasOwnProperty(generateArrayHasOwnProperty);
+		configBuilder.generateArrayIndexedLoops(generateArrayIndexedLoops);
+		configBuilder.hoistAnonymousClasses(hoistAnonymousClasses);
+		configBuilder.intPrecise(intPrecise);
+		configBuilder.initializeFieldsInConstructor(initializeFieldsInConstructor);
+		configBuilder.inlineConstants(inlineConstants);
 		configBuilder.generateSourceMap(generateSourceMap);
 		if (sourceEncoding != null) {
 			configBuilder.sourceEncoding(sourceEncoding);
@@ -205,19 +315,27 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		configBuilder.stjsClassLoader(builtProjectClassLoader);
 		configBuilder.targetFolder(getBuildOutputDirectory());
 		configBuilder.generationFolder(gendir);
+		configBuilder.threads(threads);
+		configBuilder.singlePass(singlePass);
+		configBuilder.stringJavaScriptBuilder(stringJavaScriptBuilder);
 
 		GeneratorConfiguration configuration = configBuilder.build();
 		Generator generator = new Generator(configuration);
 
-		int generatedFiles = 0;
+		buildDatabase = BuildDatabase.load(getBuildDatabaseFile(), configuration, getClasspathFiles());
+		// without a build database nothing is known about the existing files, so all of them are generated
+		int stale = buildDatabase.isEmpty() ? Integer.MIN_VALUE : staleMillis;
+
 		boolean hasFailures = false;
 		// scan the modified sources
+		Map<File, List<String>> classNamesBySourceRoot = new LinkedHashMap<File, List<String>>();
 		for (String sourceRoot : getCompileSourceRoots()) {
 			File sourceDir = new File(sourceRoot);
 			SourceMapping mapping = new SuffixMapping(".java", ".js");
 			SourceMapping stjsMapping = new SuffixMapping(".java", ".stjs");
 
-			List<File> sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, staleMillis);
+			List<File> sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, stale);
+			List<String> classNames = new ArrayList<String>();
 			for (File source : sources) {
 				if (source.getName().equals(PACKAGE_INFO_JAVA)) {
 					getLog().debug("Skipping " + source);
@@ -227,6 +345,12 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 				try {
 					File absoluteTarget =
 							(File) mapping.getTargetFiles(gendir.getGeneratedSourcesAbsolutePath(), source.getPath()).iterator().next();
+					File stjsTarget = (File) stjsMapping.getTargetFiles(getBuildOutputDirectory(), source.getPath()).iterator().next();
+					String className = getClassNameForSource(source.getPath());
+					if (absoluteTarget.exists() && stjsTarget.exists() && buildDatabase.isUpToDate(className, absoluteSource)) {
+						getLog().debug("Skipping " + source + " as it did not change since the last generation");
+						continue;
+					}
 					if (getLog().isDebugEnabled()) {
 						getLog().debug("Generating " + absoluteTarget);
 					}
@@ -236,39 +360,50 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 						getLog().error("Cannot create output directory:" + absoluteTarget.getParentFile());
 						continue;
 					}
-					String className = getClassNameForSource(source.getPath());
-					ClassWithJavascript stjsClass = generator.generateJavascript(className, sourceDir);
-					if (!(stjsClass instanceof BridgeClass)) {
-						++generatedFiles;
-					}
-
+					classNames.add(className);
 				}
 				catch (InclusionScanException e) {
 					throw new MojoExecutionException("Cannot scan the source directory:" + e, e);
 				}
-				catch (MultipleFileGenerationException e) {
-					for (JavascriptFileGenerationException jse : e.getExceptions()) {
-						buildContext.addMessage(jse.getSourcePosition().getFile(), jse.getSourcePosition().getLine(),
-								jse.getSourcePosition().getColumn(), jse.getMessage(), BuildContext.SEVERITY_ERROR, null);
-					}
-					hasFailures = true;
-					// continue with the next file
-				}
-				catch (JavascriptFileGenerationException e) {
-					buildContext.addMessage(e.getSourcePosition().getFile(), e.getSourcePosition().getLine(), e.getSourcePosition().getColumn(),
-							e.getMessage(), BuildContext.SEVERITY_ERROR, null);
-					hasFailures = true;
-					// continue with the next file
-				}
-				catch (Exception e) {
-					// TODO - maybe should filter more here
-					buildContext.addMessage(absoluteSource, 1, 1, e.toString(), BuildContext.SEVERITY_ERROR, e);
-					hasFailures = true;
-					// throw new MojoExecutionException("Error generating javascript:" + e, e);
+				catch (IOException e) {
+					throw new MojoExecutionException("Cannot read the source file " + absoluteSource + ":" + e, e);
 				}
 			}
+			if (!classNames.isEmpty()) {
+				classNamesBySourceRoot.put(sourceDir, classNames);
+			}
+		}
+
+		// generate the modified classes, then the classes depending on the ones whose fingerprint changed
+		List<ClassWithJavascript> generatedClasses = new ArrayList<ClassWithJavascript>();
+		Set<String> generatedClassNames = new HashSet<String>();
+		while (!classNamesBySourceRoot.isEmpty()) {
+			Set<String> invalidatedClasses = new LinkedHashSet<String>();
+			for (Map.Entry<File, List<String>> entry : classNamesBySourceRoot.entrySet()) {
+				hasFailures |= generate(generator, buildDatabase, entry.getKey(), entry.getValue(), generatedClasses, invalidatedClasses);
+				generatedClassNames.addAll(entry.getValue());
+			}
+			invalidatedClasses.removeAll(generatedClassNames);
+			classNamesBySourceRoot = groupBySourceRoot(invalidatedClasses);
 		}
-		generator.close();
+		int generatedFiles = 0;
+		for (ClassWithJavascript stjsClass : generatedClasses) {
+			if (!(stjsClass instanceof BridgeClass)) {
+				++generatedFiles;
+			}
+		}
+
+		try {
+			// the generated files are written in the background, so the write errors come only now
+			generator.close();
+		}
+		catch (MultipleFileGenerationException e) {
+			addErrorMessages(e);
+			forgetFailedWrites(buildDatabase, e);
+			hasFailures = true;
+		}
+
+		saveBuildDatabase(buildDatabase);
 		long t2 = System.currentTimeMillis();
 		getLog().info("Generated " + generatedFiles + " JavaScript files in " + (t2 - t1) + " ms");
 		if (generatedFiles > 0) {
@@ -280,6 +415,151 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		}
 	}
 
+	/**
+	 * generates the given classes of a source root and updates the build database with the result.
+	 * @return true if the generation failed for at least one class
+	 */
+	private boolean generate(Generator generator, BuildDatabase buildDatabase, File sourceDir, List<String> classNames,
+			List<ClassWithJavascript> allGeneratedClasses, Set<String> invalidatedClasses) {
+		// all the stale files of this source root are parsed and analyzed together
+		List<ClassWithJavascript> generatedClasses;
+		boolean hasFailures = false;
+		try {
+			generatedClasses = generator.generateJavascript(classNames, sourceDir);
+		}
+		catch (MultipleFileGenerationException e) {
+			addErrorMessages(e);
+			generatedClasses = e.getGeneratedClasses();
+			hasFailures = true;
+		}
+		catch (JavascriptFileGenerationException e) {
+			buildContext.addMessage(e.getSourcePosition().getFile(), e.getSourcePosition().getLine(), e.getSourcePosition().getColumn(),
+					e.getMessage(), BuildContext.SEVERITY_ERROR, e);
+			generatedClasses = Collections.emptyList();
+			hasFailures = true;
+		}
+		catch (JavascriptClassGenerationException e) {
+			// the errors of the nested classes are reported on the source of their top level class
+			String className = e.getClassName().split("\\$")[0];
+			buildContext.addMessage(new File(sourceDir, getSourceForClassName(className)), 1, 1, e.toString(), BuildContext.SEVERITY_ERROR, e);
+			generatedClasses = Collections.emptyList();
+			hasFailures = true;
+		}
+		catch (Exception e) {
+			// the failing class is not known, so the error is reported on the source root
+			buildContext.addMessage(sourceDir, 1, 1, e.toString(), BuildContext.SEVERITY_ERROR, e);
+			generatedClasses = Collections.emptyList();
+			hasFailures = true;
+		}
+
+		// the classes that failed are removed from the database, to have them generated again by the next build
+		Set<String> failedClasses = new HashSet<String>(classNames);
+		for (ClassWithJavascript stjsClass : generatedClasses) {
+			String className = stjsClass.getJavaClassName();
+			failedClasses.remove(className);
+			if (!(stjsClass instanceof STJSClass)) {
+				continue;
+			}
+			try {
+				if (buildDatabase.update((STJSClass) stjsClass, new File(sourceDir, getSourceForClassName(className)))) {
+					invalidatedClasses.addAll(buildDatabase.getDependents(className));
+				}
+			}
+			catch (IOException e) {
+				getLog().warn("Cannot read the source of " + className + ":" + e);
+				buildDatabase.remove(className);
+			}
+		}
+		for (String className : failedClasses) {
+			buildDatabase.remove(className);
+		}
+		allGeneratedClasses.addAll(generatedClasses);
+		return hasFailures;
+	}
+
+	/**
+	 * @return the given classes grouped by the source root containing them. The classes that are not found in any source root are
+	 *         dropped.
+	 */
+	private Map<File, List<String>> groupBySourceRoot(Collection<String> classNames) {
+		Map<File, List<String>> classNamesBySourceRoot = new LinkedHashMap<File, List<String>>();
+		for (String className : classNames) {
+			File sourceDir = findSourceRoot(className);
+			if (sourceDir == null) {
+				continue;
+			}
+			List<String> sourceRootClassNames = classNamesBySourceRoot.get(sourceDir);
+			if (sourceRootClassNames == null) {
+				sourceRootClassNames = new ArrayList<String>();
+				classNamesBySourceRoot.put(sourceDir, sourceRootClassNames);
+			}
+			sourceRootClassNames.add(className);
+		}
+		return classNamesBySourceRoot;
+	}
+
+	private File findSourceRoot(String className) {
+		for (String sourceRoot : getCompileSourceRoots()) {
+			if (new File(sourceRoot, getSourceForClassName(className)).exists()) {
+				return new File(sourceRoot);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * removes from the database the classes whose files could not be written, so the next build generates them again instead of keeping
+	 * a partial or an older file
+	 */
+	private void forgetFailedWrites(BuildDatabase buildDatabase, MultipleFileGenerationException e) {
+		Set<File> failedSources = new HashSet<File>();
+		for (JavascriptFileGenerationException jse : e.getExceptions()) {
+			failedSources.add(jse.getSourcePosition().getFile().getAbsoluteFile());
+		}
+		for (String className : new ArrayList<String>(buildDatabase.getClassNames())) {
+			for (String sourceRoot : getCompileSourceRoots()) {
+				if (failedSources.contains(new File(sourceRoot, getSourceForClassName(className)).getAbsoluteFile())) {
+					buildDatabase.remove(className);
+				}
+			}
+		}
+	}
+
+	private void saveBuildDatabase(BuildDatabase buildDatabase) {
+		// forget the classes whose source was deleted
+		for (String className : new ArrayList<String>(buildDatabase.getClassNames())) {
+			if (findSourceRoot(className) == null) {
+				buildDatabase.remove(className);
+			}
+		}
+		try {
+			buildDatabase.save();
+		}
+		catch (IOException e) {
+			getLog().warn("Cannot save the build database. The next build will generate all the files again:" + e);
+		}
+	}
+
+	private List<File> getClasspathFiles() throws MojoExecutionException {
+		try {
+			List<File> files = new ArrayList<File>();
+			for (String element : getClasspathElements()) {
+				files.add(new File(element));
+			}
+			return files;
+		}
+		catch (DependencyResolutionRequiredException e) {
+			throw new MojoExecutionException("Cannot get the classpath " + e, e);
+		}
+	}
+
+	private void addErrorMessages(MultipleFileGenerationException e) {
+		for (JavascriptFileGenerationException jse : e.getExceptions()) {
+			buildContext.addMessage(jse.getSourcePosition().getFile(), jse.getSourcePosition().getLine(), jse.getSourcePosition().getColumn(),
+					jse.getMessage(), BuildContext.SEVERITY_ERROR, null);
+		}
+	}
+
 	private void detectCycles(DirectedGraph<String, DefaultEdge> dependencyGraph) throws Exception {
 		StrongConnectivityInspector<String, DefaultEdge> inspector = new StrongConnectivityInspector<String, DefaultEdge>(dependencyGraph);
 		List<Set<String>> components = inspector.stronglyConnectedSets();
@@ -308,51 +588,25 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		if (!pack) {
 			return;
 		}
-		OutputStream allSourcesFile = null;
-		Writer packMapStream = null;
-		ClassLoader builtProjectClassLoader = getBuiltProjectClassLoader();
-		Map<String, File> currentProjectsFiles = new HashMap<String, File>();
-
 		// pack the files
 		try {
+			Map<String, File> currentProjectsFiles = getPackedFiles(gendir);
+			if (!packEntryPoints.isEmpty() || packMainClasses) {
+				currentProjectsFiles = getReachableFiles(currentProjectsFiles);
+			}
 			DirectedGraph<String, DefaultEdge> dependencyGraph = new DefaultDirectedGraph<String, DefaultEdge>(DefaultEdge.class);
-			File outputFile = new File(gendir.getGeneratedSourcesAbsolutePath(), project.getArtifactId() + ".js");
-			allSourcesFile = new BufferedOutputStream(new FileOutputStream(outputFile));
-			for (String sourceRoot : getCompileSourceRoots()) {
-				File sourceDir = new File(sourceRoot);
-				List<File> sources = new ArrayList<File>();
-				SourceMapping mapping = new SuffixMapping(".java", ".js");
-				SourceMapping stjsMapping = new SuffixMapping(".java", ".stjs");
-
-				// take all the files
-				sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, Integer.MIN_VALUE);
-				for (File source : sources) {
-
-					File absoluteTarget =
-							(File) mapping.getTargetFiles(gendir.getGeneratedSourcesAbsolutePath(), source.getPath()).iterator().next();
-
-					String className = getClassNameForSource(source.getPath());
-					if (!absoluteTarget.exists()) {
-						getLog().debug(className + " is a bridge. Don't add it to the pack file");
-						continue;
-					}
-					// add this file to the hashmap to know that this class is part of the project
-					currentProjectsFiles.put(className, absoluteTarget);
-					if (getLog().isDebugEnabled()) {
-						getLog().debug("Packing " + absoluteTarget);
-					}
-					ClassWithJavascript cjs =
-							generator.getExistingStjsClass(builtProjectClassLoader, builtProjectClassLoader.loadClass(className));
-					dependencyGraph.addVertex(className);
-					for (Map.Entry<ClassWithJavascript, DependencyType> dep : cjs.getDirectDependencyMap().entrySet()) {
-						if (dep.getKey() instanceof STJSClass) {
-							dependencyGraph.addVertex(dep.getKey().getJavaClassName());
-							if (dep.getValue() != DependencyType.OTHER) {
-								dependencyGraph.addEdge(dep.getKey().getJavaClassName(), className);
-							}
-						}
+			for (Map.Entry<String, File> entry : currentProjectsFiles.entrySet()) {
+				String className = entry.getKey();
+				if (getLog().isDebugEnabled()) {
+					getLog().debug("Packing " + entry.getValue());
+				}
+				dependencyGraph.addVertex(className);
+				// only the order between the classes of the project matters
+				for (Map.Entry<String, DependencyType> dep : buildDatabase.getDependencies(className).entrySet()) {
+					if (currentProjectsFiles.containsKey(dep.getKey()) && dep.getValue() != DependencyType.OTHER) {
+						dependencyGraph.addVertex(dep.getKey());
+						dependencyGraph.addEdge(dep.getKey(), className);
 					}
-
 				}
 			}
 
@@ -360,56 +614,138 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 			detectCycles(dependencyGraph);
 
 			// dump all the files in the dependency order in the pack file
-			SourceMapGeneratorV3 packSourceMap = (SourceMapGeneratorV3) SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3);
-
-			int currentLine = 0;
+			List<File> orderedFiles = new ArrayList<File>(currentProjectsFiles.size());
 			Iterator<String> it = new TopologicalOrderIterator<String, DefaultEdge>(dependencyGraph);
 			while (it.hasNext()) {
-				File targetFile = currentProjectsFiles.get(it.next());
-				// target file is absolute
-				if (targetFile != null) {
-					// for this project's files
-					if (generateSourceMap) {
-						currentLine = SourceMapUtils
-								.appendFileSkipSourceMap(gendir.getGeneratedSourcesAbsolutePath(), allSourcesFile, targetFile, currentLine,
-										packSourceMap, sourceEncoding);
-					} else {
-						Files.copy(targetFile, allSourcesFile);
-					}
-					allSourcesFile.flush();
-				}
-			}
-
-			if (generateSourceMap) {
-				File packMapFile = new File(gendir.getGeneratedSourcesAbsolutePath(), project.getArtifactId() + ".map");
-				packMapStream = new BufferedWriter(new FileWriter(packMapFile));
-				packSourceMap.appendTo(packMapStream, project.getArtifactId() + ".js");
-
-				allSourcesFile.write(("//@ sourceMappingURL=" + project.getArtifactId() + ".map\n").getBytes());
-				allSourcesFile.flush();
+				orderedFiles.add(currentProjectsFiles.get(it.next()));
 			}
 
+			writePackFile(gendir, orderedFiles);
 		}
 		catch (Exception ex) {
 			throw new MojoFailureException("Error when packing files:" + ex.getMessage(), ex);
 		}
-		finally {
+	}
 
-			try {
-				Closeables.close(allSourcesFile, true);
+	/**
+	 * @return the files of the entry points of the pack file and of the classes they need. The other classes are reported as dropped.
+	 */
+	private Map<String, File> getReachableFiles(Map<String, File> packedFiles) throws MojoFailureException {
+		Set<String> entryPoints = new TreeSet<String>();
+		for (String entryPoint : packEntryPoints) {
+			if (!packedFiles.containsKey(entryPoint)) {
+				throw new MojoFailureException("The entry point " + entryPoint + " of the pack file is not a generated class of the project");
 			}
-			catch (IOException e) {
-				LOG.log(Level.SEVERE, "IOException should not have been thrown.", e);
+			entryPoints.add(entryPoint);
+		}
+		if (packMainClasses) {
+			for (String className : packedFiles.keySet()) {
+				if (buildDatabase.hasMainMethod(className)) {
+					entryPoints.add(className);
+				}
 			}
+		}
 
+		PackTreeShaker treeShaker = new PackTreeShaker(buildDatabase, packedFiles.keySet());
+		Set<String> reachableClasses = treeShaker.getReachableClasses(entryPoints);
+		Map<String, String> droppedClasses = treeShaker.getDroppedClasses(reachableClasses);
+		getLog().info(
+				"Packing the " + reachableClasses.size() + " classes reachable from the entry points " + entryPoints + ". "
+						+ droppedClasses.size() + " classes are dropped");
+		for (Map.Entry<String, String> entry : droppedClasses.entrySet()) {
+			getLog().info("Dropped " + entry.getKey() + ": " + entry.getValue());
+		}
+
+		Map<String, File> reachableFiles = new TreeMap<String, File>(packedFiles);
+		reachableFiles.keySet().retainAll(reachableClasses);
+		return reachableFiles;
+	}
+
+	/**
+	 * writes the pack file and its index. If the files to pack are the ones of the previous pack file, in the same order, only the files
+	 * that changed are copied, the other ones are taken from the previous pack file.
+	 */
+	private void writePackFile(GenerationDirectory gendir, List<File> orderedFiles) throws IOException, SourceMapParseException {
+		// the generated files are written in the source encoding, and so is the pack file
+		Charset charset = sourceEncoding != null ? Charset.forName(sourceEncoding) : Charset.defaultCharset();
+		File outputFile = new File(gendir.getGeneratedSourcesAbsolutePath(), project.getArtifactId() + ".js");
+		File sourceMapFile = new File(gendir.getGeneratedSourcesAbsolutePath(), project.getArtifactId() + ".map");
+		PackSourceMapFormat sourceMapFormat = generateSourceMap ? packSourceMapFormat : null;
+		String packOptions = "sourceMapFormat=" + sourceMapFormat + ",encoding=" + charset.name();
+		File indexFile = getPackIndexFile();
+		PackIndex previousIndex = PackIndex.load(indexFile);
+		// the index is removed while the pack file changes, to never describe another pack file
+		java.nio.file.Files.deleteIfExists(indexFile.toPath());
+
+		List<PackIndex.Segment> segments = null;
+		if (previousIndex != null && previousIndex.isIndexOf(outputFile, packOptions)) {
+			segments = updatePackFile(gendir, orderedFiles, charset, sourceMapFormat, outputFile, previousIndex);
+		}
+		if (segments == null) {
+			PackFileWriter packWriter =
+					new PackFileWriter(outputFile, gendir.getGeneratedSourcesAbsolutePath(), charset, sourceMapFormat, threads);
 			try {
-				Closeables.close(packMapStream, true);
+				packWriter.append(orderedFiles);
+				packWriter.writeSourceMap(sourceMapFile, outputFile.getName());
+				packWriter.close();
 			}
-			catch (IOException e) {
-				LOG.log(Level.SEVERE, "IOException should not have been thrown.", e);
+			finally {
+				Closeables.close(packWriter, true);
+			}
+			segments = packWriter.getSegments();
+		}
+		new PackIndex(segments, packOptions, outputFile).save(indexFile);
+
+		if (minify != PackMinification.NONE) {
+			File minFile = new File(gendir.getGeneratedSourcesAbsolutePath(), project.getArtifactId() + ".min.js");
+			new PackMinifier(minify, charset, threads).minify(outputFile, segments, generateSourceMap ? sourceMapFile : null, minFile,
+					new File(minFile.getPath() + ".map"));
+		}
+	}
+
+	/**
+	 * @return the segments of the updated pack file, or null if the previous pack file cannot be used
+	 */
+	private List<PackIndex.Segment> updatePackFile(GenerationDirectory gendir, List<File> orderedFiles, Charset charset,
+			PackSourceMapFormat sourceMapFormat, File outputFile, PackIndex previousIndex) throws IOException, SourceMapParseException {
+		File tempFile = new File(outputFile.getParentFile(), outputFile.getName() + ".tmp");
+		PackFileWriter packWriter = new PackFileWriter(tempFile, gendir.getGeneratedSourcesAbsolutePath(), charset, sourceMapFormat, threads);
+		boolean updated = false;
+		try {
+			updated = packWriter.appendChanged(orderedFiles, previousIndex, outputFile);
+			packWriter.close();
+		}
+		finally {
+			Closeables.close(packWriter, true);
+			if (!updated) {
+				java.nio.file.Files.deleteIfExists(tempFile.toPath());
 			}
 		}
+		if (!updated) {
+			getLog().debug("The files to pack changed. The pack file is written again");
+			return null;
+		}
+		java.nio.file.Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return packWriter.getSegments();
+	}
 
+	/**
+	 * @return the JavaScript file of each class to pack, sorted by class name to always build the same pack file. The build database
+	 *         knows all the classes generated from the sources of the project: the ones generated by this execution, with their
+	 *         dependencies as computed by the generator, and the ones that did not change since the previous executions. So the classes
+	 *         don't need to be loaded again. The bridges have no JavaScript file and are not packed.
+	 */
+	private Map<String, File> getPackedFiles(GenerationDirectory gendir) {
+		Map<String, File> files = new TreeMap<String, File>();
+		for (String className : buildDatabase.getClassNames()) {
+			File targetFile = new File(gendir.getGeneratedSourcesAbsolutePath(), className.replace('.', File.separatorChar) + ".js");
+			if (targetFile.exists()) {
+				files.put(className, targetFile);
+			} else {
+				getLog().debug(className + " has no JavaScript file. Don't add it to the pack file");
+			}
+		}
+		return files;
 	}
 
 	protected void filesGenerated(Generator generator, GenerationDirectory gendir) throws MojoFailureException, MojoExecutionException {
@@ -462,6 +798,10 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		return sourcePath.substring(0, sourcePath.length() - 5).replace(File.separatorChar, '.');
 	}
 
+	private String getSourceForClassName(String className) {
+		return className.replace('.', File.separatorChar) + ".java";
+	}
+
 	/**
 	 * @return the list of Java source files to processed (those which are older than the corresponding Javascript file). The returned files are
 	 *         relative to the given source directory.
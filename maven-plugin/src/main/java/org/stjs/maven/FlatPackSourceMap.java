@@ -0,0 +1,267 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.debugging.sourcemap.SourceMapParseException;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * This class builds a single source map by copying the mappings of the source maps of the packed files, without building them again. See
+ * {@link PackSourceMapFormat#FLAT}.
+ * <p>
+ * In the mappings of a source map, the lines are separated by ';' and the mappings of a line by ','. Each mapping is a group of Base64 VLQ
+ * values: its column, then, if it has a source, the index of the source, the line and the column in the source and, maybe, the index of a
+ * name. The column is relative to the previous mapping on the same line, so it is copied as is. The other values are relative to the
+ * previous mapping, that may come from the previous file, so they are decoded and written again relative to the previous mapping written.
+ */
+final class FlatPackSourceMap extends PackSourceMap {
+	private static final String BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+	private static final int[] BASE64_VALUES = buildBase64Values();
+	private static final int VLQ_SHIFT = 5;
+	private static final int VLQ_CONTINUATION = 1 << VLQ_SHIFT;
+	private static final int VLQ_MASK = VLQ_CONTINUATION - 1;
+
+	private final StringBuilder mappings = new StringBuilder();
+	private final Map<String, Integer> sources = new LinkedHashMap<String, Integer>();
+	private final Map<String, Integer> names = new LinkedHashMap<String, Integer>();
+
+	// the line of the pack file whose mappings are written and the number of lines with mappings
+	private int currentLine;
+	private int lineCount;
+
+	// the values of the last mapping written
+	private int lastSource;
+	private int lastSourceLine;
+	private int lastSourceColumn;
+	private int lastName;
+
+	private static int[] buildBase64Values() {
+		int[] values = new int[128];
+		Arrays.fill(values, -1);
+		for (int i = 0; i < BASE64_DIGITS.length(); ++i) {
+			values[BASE64_DIGITS.charAt(i)] = i;
+		}
+		return values;
+	}
+
+	@Override
+	Section parse(String jsPath, String contents) throws SourceMapParseException {
+		JsonObject sourceMap = parseJson(contents);
+		JsonElement sectionMappings = sourceMap.get("mappings");
+		if (sectionMappings == null || !sectionMappings.isJsonPrimitive()) {
+			throw new SourceMapParseException("Invalid source map: missing mappings");
+		}
+		return new FlatSection(getSourcePaths(jsPath, sourceMap), getStrings(sourceMap, "names"), sectionMappings.getAsString());
+	}
+
+	/**
+	 * copies the mappings of the given section. The mappings after the lines of the file, if any, are dropped, as these lines belong to the
+	 * next file.
+	 */
+	private void add(FlatSection section, int line, int lines) throws SourceMapParseException {
+		if (lines == 0) {
+			return;
+		}
+		int[] sourceIndexes = getIndexes(sources, section.sourcePaths);
+		int[] nameIndexes = getIndexes(names, section.symbolNames);
+		while (currentLine < line) {
+			mappings.append(';');
+			currentLine++;
+		}
+
+		// the values of the section are relative to the previous mapping of the section
+		int[] sectionValues = new int[4];
+		VlqReader reader = new VlqReader(section.encodedMappings);
+		for (int sectionLine = 0; reader.hasNext();) {
+			char c = reader.peek();
+			if (c == ';') {
+				if (++sectionLine == lines) {
+					break;
+				}
+				currentLine++;
+			}
+			if (c == ';' || c == ',') {
+				mappings.append(c);
+				reader.skip();
+			} else {
+				copyMapping(reader, sectionValues, sourceIndexes, nameIndexes);
+			}
+		}
+		lineCount = line + lines;
+	}
+
+	private void copyMapping(VlqReader reader, int[] sectionValues, int[] sourceIndexes, int[] nameIndexes)
+			throws SourceMapParseException {
+		encode(reader.read());
+		if (reader.atMappingEnd()) {
+			return;
+		}
+		sectionValues[0] += reader.read();
+		sectionValues[1] += reader.read();
+		sectionValues[2] += reader.read();
+		int source = getIndex(sourceIndexes, sectionValues[0]);
+		encode(source - lastSource);
+		encode(sectionValues[1] - lastSourceLine);
+		encode(sectionValues[2] - lastSourceColumn);
+		lastSource = source;
+		lastSourceLine = sectionValues[1];
+		lastSourceColumn = sectionValues[2];
+		if (reader.atMappingEnd()) {
+			return;
+		}
+		sectionValues[3] += reader.read();
+		int name = getIndex(nameIndexes, sectionValues[3]);
+		encode(name - lastName);
+		lastName = name;
+	}
+
+	/**
+	 * @return the indexes in the pack source map of the given values of a section, adding the new ones
+	 */
+	private static int[] getIndexes(Map<String, Integer> packValues, String[] sectionValues) {
+		int[] indexes = new int[sectionValues.length];
+		for (int i = 0; i < sectionValues.length; ++i) {
+			Integer index = packValues.get(sectionValues[i]);
+			if (index == null) {
+				index = packValues.size();
+				packValues.put(sectionValues[i], index);
+			}
+			indexes[i] = index;
+		}
+		return indexes;
+	}
+
+	private static int getIndex(int[] indexes, int sectionIndex) throws SourceMapParseException {
+		if (sectionIndex < 0 || sectionIndex >= indexes.length) {
+			throw new SourceMapParseException("Invalid source map: wrong index " + sectionIndex);
+		}
+		return indexes[sectionIndex];
+	}
+
+	private void encode(int value) {
+		// the sign is the lowest bit
+		int vlq = value < 0 ? (-value << 1) + 1 : value << 1;
+		do {
+			int digit = vlq & VLQ_MASK;
+			vlq >>>= VLQ_SHIFT;
+			if (vlq > 0) {
+				digit |= VLQ_CONTINUATION;
+			}
+			mappings.append(BASE64_DIGITS.charAt(digit));
+		} while (vlq > 0);
+	}
+
+	@Override
+	void appendTo(Appendable out, String packFileName) throws IOException {
+		// the same layout as the source maps written by the closure compiler
+		out.append("{\n");
+		out.append("\"version\":3,\n");
+		out.append("\"file\":").append(new JsonPrimitive(packFileName).toString()).append(",\n");
+		out.append("\"lineCount\":").append(Integer.toString(lineCount)).append(",\n");
+		out.append("\"mappings\":\"").append(mappings).append("\",\n");
+		out.append("\"sources\":");
+		appendArray(out, sources);
+		out.append(",\n\"names\":");
+		appendArray(out, names);
+		out.append("\n}\n");
+	}
+
+	private static void appendArray(Appendable out, Map<String, Integer> values) throws IOException {
+		out.append('[');
+		boolean first = true;
+		for (String value : values.keySet()) {
+			if (!first) {
+				out.append(',');
+			}
+			out.append(new JsonPrimitive(value).toString());
+			first = false;
+		}
+		out.append(']');
+	}
+
+	/**
+	 * the parsed source map of a file, whose mappings are not decoded yet
+	 */
+	private final class FlatSection implements Section {
+		private final String[] sourcePaths;
+		private final String[] symbolNames;
+		private final String encodedMappings;
+
+		public FlatSection(String[] sourcePaths, String[] symbolNames, String encodedMappings) {
+			this.sourcePaths = sourcePaths;
+			this.symbolNames = symbolNames;
+			this.encodedMappings = encodedMappings;
+		}
+
+		@Override
+		public void addAt(int line, int lines) throws SourceMapParseException {
+			add(this, line, lines);
+		}
+	}
+
+	/**
+	 * reads the Base64 VLQ values of the mappings
+	 */
+	private static final class VlqReader {
+		private final String mappings;
+		private int position;
+
+		public VlqReader(String mappings) {
+			this.mappings = mappings;
+		}
+
+		public boolean hasNext() {
+			return position < mappings.length();
+		}
+
+		public char peek() {
+			return mappings.charAt(position);
+		}
+
+		public void skip() {
+			position++;
+		}
+
+		public boolean atMappingEnd() {
+			return !hasNext() || peek() == ',' || peek() == ';';
+		}
+
+		public int read() throws SourceMapParseException {
+			int vlq = 0;
+			for (int shift = 0;; shift += VLQ_SHIFT) {
+				int digit = hasNext() ? getBase64Value(mappings.charAt(position++)) : -1;
+				if (digit < 0) {
+					throw new SourceMapParseException("Invalid source map: wrong mappings at " + position);
+				}
+				vlq |= (digit & VLQ_MASK) << shift;
+				if ((digit & VLQ_CONTINUATION) == 0) {
+					break;
+				}
+			}
+			// the sign is the lowest bit
+			int value = vlq >>> 1;
+			return (vlq & 1) == 0 ? value : -value;
+		}
+
+		private static int getBase64Value(char c) {
+			return c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+		}
+	}
+}
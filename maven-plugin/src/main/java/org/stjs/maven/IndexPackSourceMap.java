@@ -0,0 +1,54 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.debugging.sourcemap.SourceMapGeneratorV3;
+import com.google.debugging.sourcemap.SourceMapParseException;
+import com.google.debugging.sourcemap.SourceMapSection;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * This class builds an index map, where the source map of each packed file is embedded in a section. Only the paths of the sources are
+ * changed in the embedded source maps, so they are relative to the pack file. See {@link PackSourceMapFormat#INDEX}.
+ */
+final class IndexPackSourceMap extends PackSourceMap {
+	private final List<SourceMapSection> sections = new ArrayList<SourceMapSection>();
+
+	@Override
+	Section parse(String jsPath, String contents) throws SourceMapParseException {
+		JsonObject sourceMap = parseJson(contents);
+		JsonArray sources = new JsonArray();
+		for (String path : getSourcePaths(jsPath, sourceMap)) {
+			sources.add(new JsonPrimitive(path));
+		}
+		sourceMap.add("sources", sources);
+		final String section = sourceMap.toString();
+		return new Section() {
+			@Override
+			public void addAt(int line, int lines) {
+				sections.add(SourceMapSection.forMap(section, line, 0));
+			}
+		};
+	}
+
+	@Override
+	void appendTo(Appendable out, String packFileName) throws IOException {
+		new SourceMapGeneratorV3().appendIndexMapTo(out, packFileName, sections);
+	}
+}
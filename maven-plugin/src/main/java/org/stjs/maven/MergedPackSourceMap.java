@@ -0,0 +1,47 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.debugging.sourcemap.SourceMapConsumerV3;
+import com.google.debugging.sourcemap.SourceMapFormat;
+import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
+import com.google.debugging.sourcemap.SourceMapGeneratorV3;
+import com.google.debugging.sourcemap.SourceMapParseException;
+
+/**
+ * This class builds the source map of the pack file by merging the mappings of the source maps of the packed files. See
+ * {@link PackSourceMapFormat#MERGED}.
+ */
+final class MergedPackSourceMap extends PackSourceMap {
+	private final SourceMapGeneratorV3 generator = (SourceMapGeneratorV3) SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3);
+
+	@Override
+	Section parse(final String jsPath, String contents) throws SourceMapParseException {
+		final SourceMapConsumerV3 sourceMap = new SourceMapConsumerV3();
+		sourceMap.parse(contents);
+		return new Section() {
+			@Override
+			public void addAt(int line, int lines) {
+				SourceMapUtils.mergeMapSection(new File(jsPath), generator, line, 1, sourceMap);
+			}
+		};
+	}
+
+	@Override
+	void appendTo(Appendable out, String packFileName) throws IOException {
+		generator.appendTo(out, packFileName);
+	}
+}
@@ -0,0 +1,462 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.debugging.sourcemap.SourceMapParseException;
+
+/**
+ * This class writes the pack file. The JavaScript files are appended one after the other as bytes, so their content is never decoded: the
+ * pack file has the encoding of the generated files. The small files are gathered in a direct buffer written in large blocks, the large
+ * ones are copied by channel transfers.
+ * <p>
+ * Background threads work ahead of the files being appended: they read the small files, scan the bytes of each file to find its lines, hash
+ * it and, with source maps, parse its source map. With source maps, the last line of each file, that points to its source map, is left out
+ * and the source maps of the files are added to the source map of the pack file, in the given {@link PackSourceMapFormat}.
+ * <p>
+ * The part of the pack file taken by each JavaScript file is recorded as a {@link PackIndex.Segment}, so the next pack file can be built
+ * from this one when only a few files change.
+ */
+public class PackFileWriter implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int FILES_PER_TASK = 16;
+	private static final int PREPARED_TASKS_PER_THREAD = 4;
+
+	private final FileOutputStream output;
+	private final FileChannel outputChannel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final File gendir;
+	private final Charset charset;
+	private final int threads;
+	private final PackSourceMap packSourceMap;
+	private ExecutorService executor;
+
+	private final List<PackIndex.Segment> segments = new ArrayList<PackIndex.Segment>();
+	private long currentOffset;
+	private int currentLine;
+
+	/**
+	 * @param gendir
+	 *            the folder of the generated files, used to find the path of the Java sources in the source map of the pack
+	 * @param sourceMapFormat
+	 *            the format of the source map of the pack file, or null if the JavaScript files have no source maps
+	 * @param threads
+	 *            the number of threads preparing the files
+	 */
+	public PackFileWriter(File packFile, File gendir, Charset charset, PackSourceMapFormat sourceMapFormat, int threads)
+			throws IOException {
+		if (sourceMapFormat != null && !isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("Cannot pack the files with their source maps in the encoding " + charset
+					+ ", as the lines do not end with single bytes");
+		}
+		this.gendir = gendir;
+		this.charset = charset;
+		this.threads = Math.max(1, threads);
+		this.packSourceMap = sourceMapFormat != null ? sourceMapFormat.newPackSourceMap() : null;
+		this.output = new FileOutputStream(packFile);
+		this.outputChannel = output.getChannel();
+	}
+
+	/**
+	 * @return true if the line ends are encoded like in ASCII, so the lines of the files can be found in their bytes
+	 */
+	private static boolean isAsciiCompatible(Charset charset) {
+		return Arrays.equals("\r\n".getBytes(charset), new byte[] { '\r', '\n' });
+	}
+
+	/**
+	 * appends the given JavaScript files, in the given order
+	 */
+	public void append(List<File> jsFiles) throws IOException, SourceMapParseException {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads);
+		}
+		// the files are prepared in parallel, by groups, but they are appended in order. Only a few files are prepared in advance, to
+		// limit the memory taken by their content and their source maps
+		Queue<Future<List<PackedFile>>> preparedFiles = new ArrayDeque<Future<List<PackedFile>>>();
+		int next = 0;
+		while (next < jsFiles.size() || !preparedFiles.isEmpty()) {
+			while (next < jsFiles.size() && preparedFiles.size() < threads * PREPARED_TASKS_PER_THREAD) {
+				int end = Math.min(jsFiles.size(), next + FILES_PER_TASK);
+				preparedFiles.add(executor.submit(new PrepareFilesTask(jsFiles.subList(next, end))));
+				next = end;
+			}
+			for (PackedFile file : get(preparedFiles.remove())) {
+				append(file);
+			}
+		}
+	}
+
+	/**
+	 * appends the given JavaScript files, taking from the previous pack file the segments of the files whose content did not change. This
+	 * is possible only without source maps, and if the files are the ones of the previous pack file, in the same order.
+	 *
+	 * @return false if the previous pack file cannot be used. Nothing is appended then.
+	 */
+	public boolean appendChanged(List<File> jsFiles, PackIndex previousIndex, File previousPackFile) throws IOException,
+			SourceMapParseException {
+		List<PackIndex.Segment> previousSegments = previousIndex.getSegments();
+		if (packSourceMap != null || !haveSamePaths(jsFiles, previousSegments)) {
+			return false;
+		}
+
+		FileInputStream previousPack = new FileInputStream(previousPackFile);
+		try {
+			FileChannel previousPackChannel = previousPack.getChannel();
+			// consecutive segments that did not change are copied together
+			long copyStart = -1;
+			long copyEnd = -1;
+			for (int i = 0; i < jsFiles.size(); ++i) {
+				PackIndex.Segment segment = previousSegments.get(i);
+				PackedFile changedFile = getChangedFile(jsFiles.get(i), previousIndex, segment);
+				if (changedFile != null) {
+					transfer(previousPackChannel, copyStart, copyEnd - copyStart);
+					copyStart = -1;
+					copyEnd = -1;
+					append(changedFile);
+					continue;
+				}
+				if (copyStart < 0) {
+					copyStart = segment.getOffset();
+				}
+				copyEnd = segment.getOffset() + segment.getLength();
+				segments.add(new PackIndex.Segment(segment.getPath(), currentOffset + segment.getOffset() - copyStart, segment.getLength(),
+						segment.getLines(), segment.getHash(), jsFiles.get(i).length(), jsFiles.get(i).lastModified()));
+			}
+			transfer(previousPackChannel, copyStart, copyEnd - copyStart);
+		}
+		finally {
+			Closeables.close(previousPack, true);
+		}
+		return true;
+	}
+
+	private boolean haveSamePaths(List<File> jsFiles, List<PackIndex.Segment> previousSegments) {
+		if (jsFiles.size() != previousSegments.size()) {
+			return false;
+		}
+		for (int i = 0; i < jsFiles.size(); ++i) {
+			if (!getRelativePath(jsFiles.get(i), gendir).equals(previousSegments.get(i).getPath())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the prepared file, if its content is not the one of the given segment, or null otherwise
+	 */
+	private PackedFile getChangedFile(File jsFile, PackIndex previousIndex, PackIndex.Segment segment) throws IOException,
+			SourceMapParseException {
+		if (previousIndex.isUnchanged(segment, jsFile)) {
+			return null;
+		}
+		// the file was written again, maybe with the same content
+		PackedFile file = new PrepareFilesTask(Collections.singletonList(jsFile)).call().get(0);
+		return file.hash.equals(segment.getHash()) ? null : file;
+	}
+
+	private void append(PackedFile file) throws IOException, SourceMapParseException {
+		if (file.content != null) {
+			copyToBuffer(file.content, (int) file.length);
+		} else {
+			copy(file.jsFile, file.length);
+		}
+		String path = getRelativePath(file.jsFile, gendir);
+		if (file.sourceMap != null) {
+			file.sourceMap.addAt(currentLine, file.lines);
+		}
+		segments.add(new PackIndex.Segment(path, currentOffset, file.length, file.lines, file.hash, file.fileLength, file.fileLastModified));
+		currentOffset += file.length;
+		currentLine += file.lines;
+	}
+
+	private void copy(File file, long length) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			transfer(input.getChannel(), 0, length);
+		}
+		finally {
+			Closeables.close(input, true);
+		}
+	}
+
+	private void copyToBuffer(byte[] content, int length) throws IOException {
+		for (int copied = 0; copied < length;) {
+			if (!buffer.hasRemaining()) {
+				flushBuffer();
+			}
+			int count = Math.min(buffer.remaining(), length - copied);
+			buffer.put(content, copied, count);
+			copied += count;
+		}
+	}
+
+	private void transfer(FileChannel inputChannel, long start, long length) throws IOException {
+		if (length <= 0) {
+			return;
+		}
+		flushBuffer();
+		// a transfer may copy less than asked
+		for (long position = start; position < start + length;) {
+			long count = inputChannel.transferTo(position, start + length - position, outputChannel);
+			if (count == 0 && position >= inputChannel.size()) {
+				throw new IOException("The file is shorter than expected:" + length + " bytes from " + start);
+			}
+			position += count;
+		}
+		currentOffset += length;
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			outputChannel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static List<PackedFile> get(Future<List<PackedFile>> future) throws IOException, SourceMapParseException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while packing the files");
+		}
+		catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			Throwables.propagateIfInstanceOf(e.getCause(), SourceMapParseException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * writes the source map of the pack file, if any, in the given file and adds the line pointing to it at the end of the pack file
+	 */
+	public void writeSourceMap(File sourceMapFile, String packFileName) throws IOException {
+		if (packSourceMap == null) {
+			return;
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(sourceMapFile), charset));
+		try {
+			packSourceMap.appendTo(writer, packFileName);
+		}
+		finally {
+			Closeables.close(writer, false);
+		}
+		ByteBuffer line = charset.encode("//@ sourceMappingURL=" + sourceMapFile.getName() + "\n");
+		if (line.remaining() > buffer.remaining()) {
+			flushBuffer();
+		}
+		buffer.put(line);
+	}
+
+	/**
+	 * @return the segments of the JavaScript files appended so far
+	 */
+	public List<PackIndex.Segment> getSegments() {
+		return Collections.unmodifiableList(segments);
+	}
+
+	/**
+	 * writes the last appended bytes and closes the pack file
+	 */
+	@Override
+	public void close() throws IOException {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		try {
+			flushBuffer();
+		}
+		finally {
+			output.close();
+		}
+	}
+
+	private static String getRelativePath(File file, File folder) {
+		// remove the common folder name from the target file name
+		return file.getAbsolutePath().substring(folder.getAbsolutePath().length() + 1);
+	}
+
+	/**
+	 * the part of a JavaScript file to append to the pack file, with its parsed source map
+	 */
+	private static final class PackedFile {
+		private final File jsFile;
+		private final long fileLength;
+		private final long fileLastModified;
+		private final String hash;
+		// the content of the small files, null for the other ones
+		private final byte[] content;
+		private final long length;
+		private final int lines;
+		private final PackSourceMap.Section sourceMap;
+
+		public PackedFile(File jsFile, long fileLength, long fileLastModified, String hash, byte[] content, long length, int lines,
+				PackSourceMap.Section sourceMap) {
+			this.jsFile = jsFile;
+			this.fileLength = fileLength;
+			this.fileLastModified = fileLastModified;
+			this.hash = hash;
+			this.content = content;
+			this.length = length;
+			this.lines = lines;
+			this.sourceMap = sourceMap;
+		}
+	}
+
+	/**
+	 * prepares a group of files: reads the small ones, finds the lines of each JavaScript file (without the last one pointing to its source
+	 * map, if any), hashes it and parses its source map, if any
+	 */
+	private final class PrepareFilesTask implements Callable<List<PackedFile>> {
+		private final List<File> jsFiles;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		// the number of line ends found so far in the current file and the start of its last two lines
+		private int lineEnds;
+		private long lastLineStart;
+		private long previousLineStart;
+		private boolean afterCarriageReturn;
+
+		public PrepareFilesTask(List<File> jsFiles) {
+			this.jsFiles = jsFiles;
+		}
+
+		@Override
+		public List<PackedFile> call() throws IOException, SourceMapParseException {
+			List<PackedFile> files = new ArrayList<PackedFile>(jsFiles.size());
+			for (File jsFile : jsFiles) {
+				files.add(prepare(jsFile));
+			}
+			return files;
+		}
+
+		private PackedFile prepare(File jsFile) throws IOException, SourceMapParseException {
+			lineEnds = 0;
+			lastLineStart = 0;
+			previousLineStart = 0;
+			afterCarriageReturn = false;
+			// the date is taken before reading the file, to read it again if it changes in the meantime
+			long lastModified = jsFile.lastModified();
+			Hasher hasher = Hashing.sha1().newHasher();
+			byte[] content = null;
+			long length;
+			FileInputStream input = new FileInputStream(jsFile);
+			try {
+				length = input.getChannel().size();
+				if (length < BUFFER_SIZE) {
+					content = new byte[(int) length];
+					length = readContent(input, content, hasher);
+				} else {
+					length = read(input, buffer, hasher);
+				}
+			}
+			finally {
+				Closeables.close(input, true);
+			}
+
+			long copiedLength = length;
+			int lines = lineEnds;
+			PackSourceMap.Section sourceMap = null;
+			if (packSourceMap != null) {
+				// like for the lines read by a reader, a line end at the end of the file does not start a new line
+				boolean endsWithLineEnd = lastLineStart == length && lineEnds > 0;
+				copiedLength = endsWithLineEnd ? previousLineStart : lastLineStart;
+				lines = endsWithLineEnd ? lineEnds - 1 : lineEnds;
+				sourceMap = parseSourceMap(jsFile);
+			}
+			return new PackedFile(jsFile, length, lastModified, hasher.hash().toString(), content, copiedLength, lines, sourceMap);
+		}
+
+		/**
+		 * reads the whole file, scanning its lines and hashing its content
+		 *
+		 * @return the length of the file
+		 */
+		private long read(FileInputStream input, byte[] bytes, Hasher hasher) throws IOException {
+			long offset = 0;
+			for (int count = input.read(bytes); count >= 0; count = input.read(bytes)) {
+				scanLineEnds(bytes, count, offset);
+				hasher.putBytes(bytes, 0, count);
+				offset += count;
+			}
+			return offset;
+		}
+
+		/**
+		 * reads the small file in the given array, scanning its lines and hashing its content
+		 *
+		 * @return the length of the file, that may be smaller than the array if the file changed after its length was taken
+		 */
+		private int readContent(FileInputStream input, byte[] content, Hasher hasher) throws IOException {
+			int length = 0;
+			for (int count = 0; count >= 0 && length < content.length; count = input.read(content, length, content.length - length)) {
+				length += count;
+			}
+			scanLineEnds(content, length, 0);
+			hasher.putBytes(content, 0, length);
+			return length;
+		}
+
+		private PackSourceMap.Section parseSourceMap(File jsFile) throws IOException, SourceMapParseException {
+			File sourceMapFile = new File(jsFile.getParentFile(), Files.getNameWithoutExtension(jsFile.getName()) + ".map");
+			return packSourceMap.parse(getRelativePath(jsFile, gendir), Files.toString(sourceMapFile, charset));
+		}
+
+		private void scanLineEnds(byte[] bytes, int count, long offset) {
+			for (int i = 0; i < count; ++i) {
+				byte b = bytes[i];
+				if (b == '\n' && afterCarriageReturn) {
+					// the end of a \r\n line end
+					lastLineStart = offset + i + 1;
+				} else if (b == '\n' || b == '\r') {
+					lineEnds++;
+					previousLineStart = lastLineStart;
+					lastLineStart = offset + i + 1;
+				}
+				afterCarriageReturn = b == '\r';
+			}
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * This class keeps between two builds the segments of the pack file: for each packed JavaScript file, the range of bytes and the number of
+ * lines it takes in the pack file, with the hash of its content. When the files to pack are the same, in the same order, the pack file is
+ * updated by copying the segments of the files that did not change from the previous pack file.
+ * <p>
+ * The index is stored as a properties file, with the length and the date of the pack file it describes, so a pack file changed by someone
+ * else is built again from scratch.
+ */
+public final class PackIndex {
+	private static final String OPTIONS_PROP = "options";
+	private static final String PACK_LENGTH_PROP = "pack.length";
+	private static final String PACK_LAST_MODIFIED_PROP = "pack.lastModified";
+	private static final String SEGMENT_COUNT_PROP = "segments";
+	private static final String SEGMENT_PREFIX = "segment.";
+	private static final int SEGMENT_FIELDS = 7;
+	// the dates of the files may be rounded to the second
+	private static final long FILE_DATE_PRECISION = 1000;
+
+	private final List<Segment> segments;
+	private final String options;
+	private final long packLength;
+	private final long packLastModified;
+
+	/**
+	 * @param options
+	 *            the options used to build the pack file. The index cannot be used to build a pack file with other options
+	 */
+	public PackIndex(List<Segment> segments, String options, File packFile) {
+		this(segments, options, packFile.length(), packFile.lastModified());
+	}
+
+	private PackIndex(List<Segment> segments, String options, long packLength, long packLastModified) {
+		this.segments = Collections.unmodifiableList(new ArrayList<Segment>(segments));
+		this.options = options;
+		this.packLength = packLength;
+		this.packLastModified = packLastModified;
+	}
+
+	/**
+	 * @return the index saved in the given file, or null if the file does not exist or cannot be read
+	 */
+	public static PackIndex load(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		Properties props = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			props.load(in);
+			int count = Integer.parseInt(props.getProperty(SEGMENT_COUNT_PROP));
+			List<Segment> segments = new ArrayList<Segment>(count);
+			for (int i = 0; i < count; ++i) {
+				segments.add(Segment.parse(props.getProperty(SEGMENT_PREFIX + i)));
+			}
+			return new PackIndex(segments, props.getProperty(OPTIONS_PROP), Long.parseLong(props.getProperty(PACK_LENGTH_PROP)),
+					Long.parseLong(props.getProperty(PACK_LAST_MODIFIED_PROP)));
+		}
+		catch (IOException e) {
+			return null;
+		}
+		catch (RuntimeException e) {
+			// a missing or a malformed property
+			return null;
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * writes the index to the given file
+	 */
+	public void save(File file) throws IOException {
+		Properties props = new Properties();
+		props.setProperty(OPTIONS_PROP, options);
+		props.setProperty(PACK_LENGTH_PROP, Long.toString(packLength));
+		props.setProperty(PACK_LAST_MODIFIED_PROP, Long.toString(packLastModified));
+		props.setProperty(SEGMENT_COUNT_PROP, Integer.toString(segments.size()));
+		for (int i = 0; i < segments.size(); ++i) {
+			props.setProperty(SEGMENT_PREFIX + i, segments.get(i).toString());
+		}
+
+		// write a temporary file first, to never leave a half written index behind
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		OutputStream out = null;
+		try {
+			Files.createParentDirs(file);
+			out = new FileOutputStream(tempFile);
+			props.store(out, "Generated by STJS");
+		}
+		finally {
+			Closeables.close(out, true);
+		}
+		java.nio.file.Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @return true if the index describes the given pack file, built with the given options
+	 */
+	public boolean isIndexOf(File packFile, String packOptions) {
+		return options.equals(packOptions) && packFile.length() == packLength && packFile.lastModified() == packLastModified;
+	}
+
+	public List<Segment> getSegments() {
+		return segments;
+	}
+
+	/**
+	 * @return true if the given file has the length and the date of the file of the segment, so its content did not change. As the dates
+	 *         are not precise, a file written just before the pack file could have been written again after, so it is not known to be
+	 *         unchanged.
+	 */
+	public boolean isUnchanged(Segment segment, File file) {
+		long lastModified = file.lastModified();
+		return file.length() == segment.fileLength && lastModified == segment.fileLastModified
+				&& lastModified + FILE_DATE_PRECISION < packLastModified;
+	}
+
+	/**
+	 * the part of the pack file coming from a JavaScript file
+	 */
+	public static final class Segment {
+		private final String path;
+		private final long offset;
+		private final long length;
+		private final int lines;
+		private final String hash;
+		private final long fileLength;
+		private final long fileLastModified;
+
+		/**
+		 * @param path
+		 *            the path of the JavaScript file, relative to the folder of the generated files
+		 * @param offset
+		 *            the position of the segment in the pack file
+		 * @param length
+		 *            the number of bytes of the segment
+		 * @param lines
+		 *            the number of lines of the segment
+		 * @param hash
+		 *            the hash of the JavaScript file
+		 * @param fileLength
+		 *            the length of the JavaScript file, to find quickly the files that did not change
+		 * @param fileLastModified
+		 *            the date of the JavaScript file, to find quickly the files that did not change
+		 */
+		public Segment(String path, long offset, long length, int lines, String hash, long fileLength, long fileLastModified) {
+			this.path = path;
+			this.offset = offset;
+			this.length = length;
+			this.lines = lines;
+			this.hash = hash;
+			this.fileLength = fileLength;
+			this.fileLastModified = fileLastModified;
+		}
+
+		private static Segment parse(String s) {
+			// the path is the last field, as it could contain the separator
+			String[] fields = s.split(",", SEGMENT_FIELDS);
+			return new Segment(fields[6], Long.parseLong(fields[0]), Long.parseLong(fields[1]), Integer.parseInt(fields[2]), fields[3],
+					Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public int getLines() {
+			return lines;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return offset + "," + length + "," + lines + "," + hash + "," + fileLength + "," + fileLastModified + "," + path;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import com.google.javascript.jscomp.CompilationLevel;
+
+/**
+ * The minification of the pack file by the closure compiler. The advanced optimizations are not available, as they need the whole program
+ * and they rename the public names of the classes.
+ */
+public enum PackMinification {
+	/**
+	 * the pack file is not minified
+	 */
+	NONE(null),
+	/**
+	 * the comments and the white spaces are removed
+	 */
+	WHITESPACE_ONLY(CompilationLevel.WHITESPACE_ONLY),
+	/**
+	 * the local variables are also renamed and the code of the functions is simplified
+	 */
+	SIMPLE_OPTIMIZATIONS(CompilationLevel.SIMPLE_OPTIMIZATIONS);
+
+	private final CompilationLevel compilationLevel;
+
+	private PackMinification(CompilationLevel compilationLevel) {
+		this.compilationLevel = compilationLevel;
+	}
+
+	public CompilationLevel getCompilationLevel() {
+		return compilationLevel;
+	}
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.debugging.sourcemap.FilePosition;
+import com.google.debugging.sourcemap.SourceMapConsumerV3;
+import com.google.debugging.sourcemap.SourceMapConsumerV3.EntryVisitor;
+import com.google.debugging.sourcemap.SourceMapFormat;
+import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
+import com.google.debugging.sourcemap.SourceMapGeneratorV3;
+import com.google.debugging.sourcemap.SourceMapParseException;
+import com.google.debugging.sourcemap.proto.Mapping.OriginalMapping;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.CompilerOptions.LanguageMode;
+import com.google.javascript.jscomp.JSError;
+import com.google.javascript.jscomp.Result;
+import com.google.javascript.jscomp.SourceFile;
+import com.google.javascript.jscomp.SourceMap;
+import com.google.javascript.jscomp.WarningLevel;
+
+/**
+ * This class minifies the pack file with the closure compiler. The pack file is cut in chunks, between the packed JavaScript files, that are
+ * compiled in parallel: as neither the white space removal nor the simple optimizations change the global names, each chunk can be
+ * compiled alone. The minified chunks are written one after the other, each one on its own line.
+ * <p>
+ * If the pack file has a source map, the source map built by the closure compiler for each chunk, that points to the pack file, is chained
+ * with the source map of the pack file, so the source map of the minified file points to the Java sources.
+ */
+public class PackMinifier {
+	private static final int CHUNK_SIZE = 1024 * 1024;
+
+	private final PackMinification minification;
+	private final Charset charset;
+	private final int threads;
+
+	/**
+	 * @param charset
+	 *            the encoding of the pack file, also used for the minified file
+	 * @param threads
+	 *            the number of threads compiling the chunks
+	 */
+	public PackMinifier(PackMinification minification, Charset charset, int threads) {
+		this.minification = minification;
+		this.charset = charset;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * writes the minified pack file and, if the pack file has a source map, its source map
+	 * 
+	 * @param segments
+	 *            the segments of the files in the pack file
+	 * @param packSourceMapFile
+	 *            the source map of the pack file, or null if it has none
+	 */
+	public void minify(File packFile, List<PackIndex.Segment> segments, File packSourceMapFile, File minFile, File minSourceMapFile)
+			throws IOException, SourceMapParseException {
+		SourceMapConsumerV3 packSourceMap = null;
+		if (packSourceMapFile != null) {
+			packSourceMap = new SourceMapConsumerV3();
+			packSourceMap.parse(Files.toString(packSourceMapFile, charset));
+		}
+
+		List<Future<MinifiedChunk>> chunks = new ArrayList<Future<MinifiedChunk>>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Chunk chunk : getChunks(segments)) {
+				chunks.add(executor.submit(new MinifyChunkTask(packFile, chunk, packSourceMap)));
+			}
+			writeMinifiedFile(chunks, minFile, packSourceMap != null ? minSourceMapFile : null);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * cuts the pack file in chunks of whole JavaScript files
+	 */
+	private static List<Chunk> getChunks(List<PackIndex.Segment> segments) {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		Chunk chunk = null;
+		int line = 0;
+		for (PackIndex.Segment segment : segments) {
+			if (chunk == null || chunk.length >= CHUNK_SIZE) {
+				chunk = new Chunk(segment.getOffset(), line);
+				chunks.add(chunk);
+			}
+			chunk.length += segment.getLength();
+			line += segment.getLines();
+		}
+		return chunks;
+	}
+
+	private void writeMinifiedFile(List<Future<MinifiedChunk>> chunks, File minFile, File minSourceMapFile) throws IOException,
+			SourceMapParseException {
+		SourceMapGeneratorV3 minSourceMap =
+				minSourceMapFile != null ? (SourceMapGeneratorV3) SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3) : null;
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(minFile), charset));
+		try {
+			int line = 0;
+			for (Future<MinifiedChunk> future : chunks) {
+				MinifiedChunk chunk = get(future);
+				writer.append(chunk.code).append('\n');
+				if (minSourceMap != null) {
+					minSourceMap.setStartingPosition(line, 0);
+					for (ChainedMapping mapping : chunk.mappings) {
+						minSourceMap.addMapping(mapping.sourceName, mapping.symbolName, mapping.sourceStartPosition, mapping.startPosition,
+								mapping.endPosition);
+					}
+				}
+				line += countLines(chunk.code);
+			}
+			if (minSourceMap != null) {
+				writer.append("//@ sourceMappingURL=").append(minSourceMapFile.getName()).append('\n');
+				writeSourceMap(minSourceMap, minSourceMapFile, minFile.getName());
+			}
+		}
+		finally {
+			Closeables.close(writer, false);
+		}
+	}
+
+	private void writeSourceMap(SourceMapGeneratorV3 sourceMap, File sourceMapFile, String fileName) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(sourceMapFile), charset));
+		try {
+			sourceMap.appendTo(writer, fileName);
+		}
+		finally {
+			Closeables.close(writer, false);
+		}
+	}
+
+	private static int countLines(String code) {
+		int lines = 1;
+		for (int i = code.indexOf('\n'); i >= 0; i = code.indexOf('\n', i + 1)) {
+			lines++;
+		}
+		return lines;
+	}
+
+	private static MinifiedChunk get(Future<MinifiedChunk> future) throws IOException, SourceMapParseException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while minifying the pack file");
+		}
+		catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			Throwables.propagateIfInstanceOf(e.getCause(), SourceMapParseException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * a part of the pack file, starting at the given line
+	 */
+	private static final class Chunk {
+		private final long offset;
+		private final int line;
+		private long length;
+
+		public Chunk(long offset, int line) {
+			this.offset = offset;
+			this.line = line;
+		}
+	}
+
+	private static final class MinifiedChunk {
+		private final String code;
+		private final List<ChainedMapping> mappings;
+
+		public MinifiedChunk(String code, List<ChainedMapping> mappings) {
+			this.code = code;
+			this.mappings = mappings;
+		}
+	}
+
+	/**
+	 * a mapping from the minified chunk to the Java sources
+	 */
+	private static final class ChainedMapping {
+		private final String sourceName;
+		private final String symbolName;
+		private final FilePosition sourceStartPosition;
+		private final FilePosition startPosition;
+		private final FilePosition endPosition;
+
+		public ChainedMapping(String sourceName, String symbolName, FilePosition sourceStartPosition, FilePosition startPosition,
+				FilePosition endPosition) {
+			this.sourceName = sourceName;
+			this.symbolName = symbolName;
+			this.sourceStartPosition = sourceStartPosition;
+			this.startPosition = startPosition;
+			this.endPosition = endPosition;
+		}
+	}
+
+	/**
+	 * compiles a chunk and, if needed, chains its source map with the source map of the pack file
+	 */
+	private final class MinifyChunkTask implements Callable<MinifiedChunk>, EntryVisitor {
+		private final File packFile;
+		private final Chunk chunk;
+		private final SourceMapConsumerV3 packSourceMap;
+		private final List<ChainedMapping> mappings = new ArrayList<ChainedMapping>();
+
+		public MinifyChunkTask(File packFile, Chunk chunk, SourceMapConsumerV3 packSourceMap) {
+			this.packFile = packFile;
+			this.chunk = chunk;
+			this.packSourceMap = packSourceMap;
+		}
+
+		@Override
+		public MinifiedChunk call() throws IOException, SourceMapParseException {
+			CompilerOptions options = new CompilerOptions();
+			minification.getCompilationLevel().setOptionsForCompilationLevel(options);
+			WarningLevel.QUIET.setOptionsForWarningLevel(options);
+			options.setLanguageIn(LanguageMode.ECMASCRIPT5);
+			if (packSourceMap != null) {
+				// the source map is built only if it has an output path, that is not used here
+				options.setSourceMapOutputPath(packFile.getName() + ".map");
+				options.setSourceMapFormat(SourceMap.Format.V3);
+			}
+
+			com.google.javascript.jscomp.Compiler compiler = new com.google.javascript.jscomp.Compiler();
+			Result result = compiler.compile(Collections.<SourceFile> emptyList(),
+					Collections.singletonList(SourceFile.fromCode(packFile.getName(), readChunk())), options);
+			if (!result.success) {
+				throw new IllegalArgumentException("Cannot minify the pack file " + packFile + ":" + getErrorMessage(result));
+			}
+			String code = compiler.toSource();
+			if (packSourceMap != null) {
+				StringBuilder chunkSourceMap = new StringBuilder();
+				compiler.getSourceMap().appendTo(chunkSourceMap, packFile.getName());
+				SourceMapConsumerV3 consumer = new SourceMapConsumerV3();
+				consumer.parse(chunkSourceMap.toString());
+				consumer.visitMappings(this);
+			}
+			return new MinifiedChunk(code, mappings);
+		}
+
+		private String readChunk() throws IOException {
+			ByteBuffer bytes = ByteBuffer.allocate((int) chunk.length);
+			FileInputStream input = new FileInputStream(packFile);
+			try {
+				FileChannel channel = input.getChannel();
+				while (bytes.hasRemaining() && channel.read(bytes, chunk.offset + bytes.position()) >= 0) {
+					// read until the end of the chunk
+				}
+			}
+			finally {
+				Closeables.close(input, true);
+			}
+			bytes.flip();
+			return charset.decode(bytes).toString();
+		}
+
+		private String getErrorMessage(Result result) {
+			StringBuilder message = new StringBuilder();
+			for (JSError error : result.errors) {
+				// the lines are the ones of the pack file
+				message.append('\n').append(error.description).append(" at line ").append(chunk.line + error.lineNumber);
+			}
+			return message.toString();
+		}
+
+		@Override
+		public void visit(String sourceName, String symbolName, FilePosition sourceStartPosition, FilePosition startPosition,
+				FilePosition endPosition) {
+			// the positions of the source map consumer start at 1
+			OriginalMapping original =
+					packSourceMap.getMappingForLine(chunk.line + sourceStartPosition.getLine() + 1, sourceStartPosition.getColumn() + 1);
+			if (original != null) {
+				mappings.add(new ChainedMapping(original.getOriginalFile(), symbolName, new FilePosition(original.getLineNumber() - 1,
+						original.getColumnPosition() - 1), startPosition, endPosition));
+			}
+		}
+	}
+}
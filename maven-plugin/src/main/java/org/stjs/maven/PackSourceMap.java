@@ -0,0 +1,90 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.debugging.sourcemap.SourceMapParseException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * This class builds the source map of the pack file from the source maps of the packed JavaScript files. The source maps of the files are
+ * parsed by the threads preparing the files, then they are added in the order of the files.
+ */
+abstract class PackSourceMap {
+	/**
+	 * parses the source map of a JavaScript file. This method is called by several threads at the same time.
+	 * 
+	 * @param jsPath
+	 *            the path of the JavaScript file, relative to the folder of the generated files
+	 */
+	abstract Section parse(String jsPath, String contents) throws SourceMapParseException;
+
+	/**
+	 * writes the source map of the pack file
+	 */
+	abstract void appendTo(Appendable out, String packFileName) throws IOException;
+
+	/**
+	 * the parsed source map of a JavaScript file
+	 */
+	interface Section {
+		/**
+		 * adds the source map of the file to the source map of the pack file. The file takes the given number of lines in the pack file,
+		 * starting at the given line.
+		 */
+		void addAt(int line, int lines) throws SourceMapParseException;
+	}
+
+	static JsonObject parseJson(String contents) throws SourceMapParseException {
+		try {
+			return new JsonParser().parse(contents).getAsJsonObject();
+		}
+		catch (JsonParseException e) {
+			throw new SourceMapParseException("Invalid source map:" + e.getMessage());
+		}
+		catch (IllegalStateException e) {
+			throw new SourceMapParseException("Invalid source map:" + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the sources of the given source map, with their path relative to the folder of the generated files
+	 */
+	static String[] getSourcePaths(String jsPath, JsonObject sourceMap) throws SourceMapParseException {
+		String[] paths = getStrings(sourceMap, "sources");
+		File jsFile = new File(jsPath);
+		for (int i = 0; i < paths.length; ++i) {
+			paths[i] = SourceMapUtils.getPackSourcePath(jsFile, paths[i]);
+		}
+		return paths;
+	}
+
+	static String[] getStrings(JsonObject sourceMap, String property) throws SourceMapParseException {
+		JsonElement element = sourceMap.get(property);
+		if (element == null || !element.isJsonArray()) {
+			throw new SourceMapParseException("Invalid source map: missing " + property);
+		}
+		JsonArray array = element.getAsJsonArray();
+		String[] strings = new String[array.size()];
+		for (int i = 0; i < strings.length; ++i) {
+			strings[i] = array.get(i).getAsString();
+		}
+		return strings;
+	}
+}
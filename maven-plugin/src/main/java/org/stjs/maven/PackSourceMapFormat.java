@@ -0,0 +1,51 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+/**
+ * The format of the source map of the pack file.
+ */
+public enum PackSourceMapFormat {
+	/**
+	 * a single source map, where the mappings of all the source maps of the packed files are decoded and added one by one. It is the
+	 * slowest format.
+	 */
+	MERGED {
+		@Override
+		PackSourceMap newPackSourceMap() {
+			return new MergedPackSourceMap();
+		}
+	},
+	/**
+	 * an index map, having a section for each packed file, where the source map of the file is embedded at the line of the file in the pack
+	 * file. The mappings are not decoded at all. Most of the browsers and the tools read index maps, but not all of them.
+	 */
+	INDEX {
+		@Override
+		PackSourceMap newPackSourceMap() {
+			return new IndexPackSourceMap();
+		}
+	},
+	/**
+	 * a single source map, where the mappings of the source maps of the packed files are copied one after the other. Only the values that
+	 * are relative to the previous mapping of another file are changed.
+	 */
+	FLAT {
+		@Override
+		PackSourceMap newPackSourceMap() {
+			return new FlatPackSourceMap();
+		}
+	};
+
+	abstract PackSourceMap newPackSourceMap();
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.stjs.generator.BuildDatabase;
+import org.stjs.generator.name.DependencyType;
+
+/**
+ * This class finds the classes to pack from the entry points of the pack file: the entry points themselves and the classes they need,
+ * directly or not, through any type of dependency known by the build database. The other classes are dropped, and the reason why each one
+ * is not needed is given.
+ * <p>
+ * The dependencies to inner classes are dependencies to the file of their top-level class, that is the one packed.
+ */
+public final class PackTreeShaker {
+	private final Set<String> classNames;
+	// the packed classes needed by each class, and the classes needing each class
+	private final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+	private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+
+	/**
+	 * @param classNames
+	 *            the top-level classes that can be packed
+	 */
+	public PackTreeShaker(BuildDatabase buildDatabase, Set<String> classNames) {
+		this.classNames = classNames;
+		for (String className : classNames) {
+			dependencies.put(className, new TreeSet<String>());
+			dependents.put(className, new TreeSet<String>());
+		}
+		for (String className : classNames) {
+			Map<String, DependencyType> deps = buildDatabase.getDependencies(className);
+			if (deps == null) {
+				continue;
+			}
+			for (String dep : deps.keySet()) {
+				String packedClass = getPackedClass(dep);
+				if (packedClass != null && !packedClass.equals(className)) {
+					dependencies.get(className).add(packedClass);
+					dependents.get(packedClass).add(className);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the class whose file contains the given class, or null if the class is not packed
+	 */
+	private String getPackedClass(String className) {
+		String name = className;
+		while (!classNames.contains(name)) {
+			int innerClassSeparator = name.lastIndexOf('$');
+			if (innerClassSeparator < 0) {
+				return null;
+			}
+			name = name.substring(0, innerClassSeparator);
+		}
+		return name;
+	}
+
+	/**
+	 * @return the given entry points and the classes they need, directly or not
+	 */
+	public Set<String> getReachableClasses(Collection<String> entryPoints) {
+		Set<String> reachable = new TreeSet<String>();
+		Deque<String> toVisit = new ArrayDeque<String>(entryPoints);
+		while (!toVisit.isEmpty()) {
+			String className = toVisit.pop();
+			if (reachable.add(className)) {
+				toVisit.addAll(dependencies.get(className));
+			}
+		}
+		return reachable;
+	}
+
+	/**
+	 * @return for each class that is not reachable, the reason why it is not packed
+	 */
+	public Map<String, String> getDroppedClasses(Set<String> reachableClasses) {
+		Map<String, String> dropped = new TreeMap<String, String>();
+		for (String className : classNames) {
+			if (reachableClasses.contains(className)) {
+				continue;
+			}
+			Set<String> users = dependents.get(className);
+			// all the users of an unreachable class are unreachable too
+			dropped.put(className, users.isEmpty() ? "no class uses it" : "it is only used by classes that are not packed " + users);
+		}
+		return dropped;
+	}
+}
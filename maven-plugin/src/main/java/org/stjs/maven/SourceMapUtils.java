@@ -1,12 +1,7 @@
 package org.stjs.maven;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.Charset;
-import java.util.List;
 
-import com.google.common.io.Files;
 import com.google.debugging.sourcemap.FilePosition;
 import com.google.debugging.sourcemap.SourceMapConsumerV3;
 import com.google.debugging.sourcemap.SourceMapConsumerV3.EntryVisitor;
@@ -20,35 +15,26 @@ import com.google.debugging.sourcemap.SourceMapParseException;
  */
 public class SourceMapUtils {
 
-	public static int appendFileSkipSourceMap(File gendir, OutputStream allSourcesFile, File jsFile, int currentLine,
-			SourceMapGeneratorV3 packSourcemap, String charsetName) throws IOException, SourceMapParseException {
-		Charset charset = charsetName != null ? Charset.forName(charsetName) : Charset.defaultCharset();
-		List<String> lines = Files.readLines(jsFile, charset);
-		// remove the @SourceMap stuff
-		for (int i = 0; i < lines.size() - 1; ++i) {
-			allSourcesFile.write(lines.get(i).getBytes());
-			allSourcesFile.write('\n');
-		}
-
-		File sourcemapFile = new File(jsFile.getParentFile(), Files.getNameWithoutExtension(jsFile.getName()) + ".map");
-		String relSourceMapFile = getRelativePath(jsFile, gendir);
-		mergeMapSection(new File(relSourceMapFile), packSourcemap, currentLine, 1, Files.toString(sourcemapFile, charset));
-		return currentLine + lines.size() - 1;
-	}
-
-	private static String getRelativePath(File file, File folder) {
-		// remove the common folder name from the target file name
-		return file.getAbsolutePath().substring(folder.getAbsolutePath().length() + 1);
-	}
-
 	public static void mergeMapSection(File sourceMapFile, SourceMapGeneratorV3 packSourcemap, int line, int column, String mapSectionContents)
 			throws SourceMapParseException {
-		packSourcemap.setStartingPosition(line, column);
 		SourceMapConsumerV3 section = new SourceMapConsumerV3();
 		section.parse(mapSectionContents);
+		mergeMapSection(sourceMapFile, packSourcemap, line, column, section);
+	}
+
+	public static void mergeMapSection(File sourceMapFile, SourceMapGeneratorV3 packSourcemap, int line, int column,
+			SourceMapConsumerV3 section) {
+		packSourcemap.setStartingPosition(line, column);
 		section.visitMappings(new ConsumerEntryVisitor(packSourcemap, sourceMapFile));
 	}
 
+	/**
+	 * @return the path of a source of the source map of the given file, relative to the folder of the generated files (and of the pack file)
+	 */
+	public static String getPackSourcePath(File jsFile, String sourceName) {
+		return new File(jsFile.getParentFile(), sourceName).getPath().replace(File.separatorChar, '/');
+	}
+
 	static class ConsumerEntryVisitor implements EntryVisitor {
 		private final SourceMapGeneratorV3 packSourcemap;
 		private final File sourceMapFile;
@@ -61,8 +47,8 @@ public class SourceMapUtils {
 		@Override
 		public void visit(String sourceName, String symbolName, FilePosition sourceStartPosition, FilePosition startPosition,
 				FilePosition endPosition) {
-			packSourcemap.addMapping(new File(sourceMapFile.getParentFile(), sourceName).getPath().replace(File.separatorChar, '/'), symbolName,
-					sourceStartPosition, startPosition, endPosition);
+			packSourcemap.addMapping(getPackSourcePath(sourceMapFile, sourceName), symbolName, sourceStartPosition, startPosition,
+					endPosition);
 		}
 	}
 }
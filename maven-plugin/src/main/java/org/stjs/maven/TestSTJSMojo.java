@@ -63,6 +63,16 @@ public class TestSTJSMojo extends AbstractSTJSMojo {
 		return gendir;
 	}
 
+	@Override
+	protected File getBuildDatabaseFile() {
+		return new File(project.getBuild().getDirectory(), "stjs-test-build.properties");
+	}
+
+	@Override
+	protected File getPackIndexFile() {
+		return new File(project.getBuild().getDirectory(), "stjs-test-pack-index.properties");
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	protected List<String> getClasspathElements() throws DependencyResolutionRequiredException {
@@ -0,0 +1,120 @@
+package org.stjs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.StringUtils;
+import org.stjs.generator.utils.SourceWatcher;
+
+import com.sun.tools.javac.api.JavacTool;
+
+/**
+ * Generates the JavaScript files like the generate goal, then watches the source folders. Each time some Java files are saved, they are
+ * compiled and only they and the classes depending on them are generated again (with the pack, if enabled). The goal runs until Maven is
+ * stopped.
+ * @goal watch
+ * @requiresDependencyResolution compile
+ */
+public class WatchSTJSMojo extends MainSTJSMojo {
+
+	/**
+	 * The time in milliseconds without any new change after which the saved files are compiled and generated.
+	 * @parameter expression="${watchDebounce}" default-value="200"
+	 */
+	private long watchDebounce;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		generate();
+
+		List<File> sourceRoots = new ArrayList<File>();
+		for (String sourceRoot : getCompileSourceRoots()) {
+			sourceRoots.add(new File(sourceRoot));
+		}
+		try {
+			SourceWatcher watcher = new SourceWatcher(sourceRoots, watchDebounce);
+			try {
+				getLog().info("Watching " + sourceRoots + " for changes. Press Ctrl-C to stop");
+				while (true) {
+					List<File> changedFiles = new ArrayList<File>();
+					for (File file : watcher.awaitChanges()) {
+						if (file.exists()) {
+							changedFiles.add(file);
+						}
+					}
+					// the deleted files are only removed from the build database by the generation
+					if (changedFiles.isEmpty() || compile(changedFiles)) {
+						generate();
+					}
+				}
+			}
+			finally {
+				watcher.close();
+			}
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Cannot watch the source folders:" + e, e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * generates the stale files. A generation error does not stop the watch, as it is likely fixed by one of the next changes.
+	 */
+	private void generate() throws MojoExecutionException {
+		try {
+			super.execute();
+		}
+		catch (MojoFailureException e) {
+			getLog().error(e.getMessage());
+		}
+	}
+
+	/**
+	 * compiles the given files in the build output directory, where the generator looks for the classes.
+	 * @return true if the files were compiled without errors
+	 */
+	private boolean compile(List<File> files) throws MojoExecutionException, IOException {
+		// create it directly to avoid ClassLoader problems
+		JavaCompiler compiler = JavacTool.create();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+		try {
+			List<String> options = new ArrayList<String>(Arrays.asList("-d", getBuildOutputDirectory().getAbsolutePath(), //
+					"-classpath", StringUtils.join(getClasspathElements().iterator(), File.pathSeparator), //
+					"-sourcepath", StringUtils.join(getCompileSourceRoots().iterator(), File.pathSeparator)));
+			if (getSourceEncoding() != null) {
+				options.add("-encoding");
+				options.add(getSourceEncoding());
+			}
+			boolean success =
+					compiler.getTask(null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjectsFromFiles(files)).call();
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+				if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+					getLog().error(diagnostic.toString());
+				}
+			}
+			return success;
+		}
+		catch (DependencyResolutionRequiredException e) {
+			throw new MojoExecutionException("Cannot get the classpath " + e, e);
+		}
+		finally {
+			fileManager.close();
+		}
+	}
+}